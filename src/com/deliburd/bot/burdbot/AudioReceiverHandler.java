@@ -6,17 +6,18 @@ import java.io.IOException;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.Timer;
-import java.util.TimerTask;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.BiFunction;
 import java.util.function.Consumer;
@@ -31,9 +32,15 @@ import com.deliburd.util.MessageResponse;
 import com.deliburd.util.MessageResponseQueue;
 import com.deliburd.util.NumberUtil;
 import com.deliburd.util.ServerConfig;
+import com.deliburd.util.scheduling.TaskScheduler;
 import com.deliburd.recorder.RecorderConstant;
+import com.deliburd.recorder.util.RecordingUploadPipeline;
+import com.deliburd.recorder.util.audio.AudioPartition;
 import com.deliburd.recorder.util.audio.AudioCompression;
+import com.deliburd.recorder.util.audio.AudioFrameRingBuffer;
 import com.deliburd.recorder.util.audio.AudioWriter;
+import com.deliburd.recorder.util.audio.EncoderScheduler;
+import com.deliburd.recorder.util.audio.EncoderScheduler.EncoderQueue;
 import com.fasterxml.jackson.databind.JsonNode;
 
 import net.dv8tion.jda.api.JDA;
@@ -76,12 +83,6 @@ public class AudioReceiverHandler extends ListenerAdapter implements AudioReceiv
 	 */
 	private final Set<Long> serverRecordingList;
 	
-	/**
-	 * A timer containing a task that runs periodically to delete merged files after 24 hours.
-	 * It also runs a task periodically adding silence to files that have been inactive for too long.
-	 */
-	private final Timer fileUpdateTimer;
-	
 	/**
 	 * The command that the user can type in DMs to start the file sending process
 	 */
@@ -92,6 +93,11 @@ public class AudioReceiverHandler extends ListenerAdapter implements AudioReceiv
 	 */
 	private final String CANCEL_SEND_COMMAND = "cancelsend";
 	
+	/**
+	 * The ID of the continuation that resumes the file sending process after a restart. Its argument is the server's ID.
+	 */
+	private final String FILE_SEND_CONTINUATION = "filesend";
+	
 	/**
 	 * The message to send when the user's file has been deleted.
 	 */
@@ -104,8 +110,8 @@ public class AudioReceiverHandler extends ListenerAdapter implements AudioReceiv
 	private AudioReceiverHandler() {
 		userToAudioInfo = new ConcurrentHashMap<Long, AudioServerInfo>();
 		serverRecordingList = ConcurrentHashMap.newKeySet();
-		fileUpdateTimer = new Timer(true);
 		
+		MessageResponseQueue.getQueue().registerContinuation(FILE_SEND_CONTINUATION, this::resumeFileSending);
 		scheduleSilenceUpdates();
 	}
 	
@@ -113,28 +119,34 @@ public class AudioReceiverHandler extends ListenerAdapter implements AudioReceiv
 	public void onReady(ReadyEvent event) {
 		emptyUserSplitFiles(event.getJDA());
 		scheduleMergedFileDeletion(event.getJDA());
-
-		var memberFiles = getAllMemberFiles();
+	}
+	
+	/**
+	 * Resumes the file sending process after a restart at channel selection. The steps after it are kept in memory,
+	 * so they start over from there.
+	 * 
+	 * @param event The event of the user's first message after the restart
+	 * @param serverIDString The ID of the server the recording is from
+	 */
+	private void resumeFileSending(MessageReceivedEvent event, String serverIDString) {
+		if(!event.isFromType(ChannelType.PRIVATE)) {
+			return;
+		}
 		
-		for(var memberFile : memberFiles) {
-			String fileName = memberFile.getName();
-			Matcher userIDMatcher = ID_PATTERN.matcher(memberFile.getName());
-			
-			if(userIDMatcher.find()) {
-				Long possibleUserID = NumberUtil.stringToLong(fileName.substring(userIDMatcher.start(), userIDMatcher.end()));
-				
-				if(possibleUserID == null) {
-					continue;
-				}
-				
-				BotUtil.getUser(possibleUserID, event.getJDA(), user -> {
-					if(user != null) {
-						BotUtil.sendDM(user, "It appears that I've restarted. It appears I still have an audio file of yours "
-								+ "stored. If you still want to send it somewhere, please type ``sendfile``.\nI apologize if this "
-								+ "has caused you any inconvienience.");
-					}
-				});
-			}
+		PrivateChannel privateChannel = event.getPrivateChannel();
+		Long serverID = NumberUtil.stringToLong(serverIDString);
+		Guild server = serverID == null ? null : event.getJDA().getGuildById(serverID);
+		
+		if(server == null) {
+			BotUtil.sendMessage(privateChannel, "It appears that I've restarted and I can't find the server to send your file to "
+					+ "anymore. If you believe this to be an error, please contact DELIBURD.");
+		} else if(getMemberFile(server, event.getAuthor().getIdLong()) == null) {
+			BotUtil.sendMessage(privateChannel, "It appears that I've restarted and your file has been deleted. If you believe "
+					+ "this is a mistake. Please contact DELIBURD.");
+		} else {
+			BotUtil.sendMessage(privateChannel, "It appears that I've restarted. I apologize if this has caused you any "
+					+ "inconvienience. Picking up from where you choose the channel to send your file to...");
+			addListener(event.getAuthor().getIdLong(), privateChannel, server);
 		}
 	}
 
@@ -341,7 +353,7 @@ public class AudioReceiverHandler extends ListenerAdapter implements AudioReceiv
 		
 		try {
 			audioFileWriter = new AudioWriter(audioFolder, audioSubfolder, member.getId(), 
-					BotUtil.getFileSizeLimit(), BotUtil.getFileSizeLimit(server), compression, OUTPUT_FORMAT);
+					BotUtil.getFileSizeLimit(), BotUtil.getFileSizeLimit(server), compression, OUTPUT_FORMAT, true);
 		} catch (FileNotFoundException e) {
 			ErrorLogger.LogException(e);
 			audioSubfolder.delete();
@@ -373,13 +385,12 @@ public class AudioReceiverHandler extends ListenerAdapter implements AudioReceiv
 		});
 	}
 	
+	/**
+	 * Periodically queues tasks on the encoder pool adding silence to files that have been inactive for too long.
+	 */
 	private void scheduleSilenceUpdates() {
-		fileUpdateTimer.schedule(new TimerTask() {
-			@Override
-			public void run() {
-				addSilence();
-			}
-		}, RecorderConstant.AUDIO_FILE_SILENCE_CHECK_DELAY, RecorderConstant.AUDIO_FILE_SILENCE_CHECK_DELAY);
+		TaskScheduler.getScheduler().scheduleAtFixedRate(this::addSilence, RecorderConstant.AUDIO_FILE_SILENCE_CHECK_DELAY, 
+				RecorderConstant.AUDIO_FILE_SILENCE_CHECK_DELAY, TimeUnit.MILLISECONDS);
 	}
 	
 	private void emptyUserSplitFiles(JDA JDA) {
@@ -431,7 +442,7 @@ public class AudioReceiverHandler extends ListenerAdapter implements AudioReceiv
 			userFile.finalizeFile();
 		}
 
-		deleteAllUserFiles(userFile.getSeparateFiles(), userFile.getFile());
+		userFile.getFile().delete();
 	}
 
 	private void stopRecording(User user, Guild server) {
@@ -454,9 +465,10 @@ public class AudioReceiverHandler extends ListenerAdapter implements AudioReceiv
 				return;
 			}
 	
+			serverInfo.writeBufferedAudio();
 			currentTime = Instant.now().toEpochMilli();
-			userFile = userToAudioInfo.get(userID).getAudioWriter();
-			lastAudioGap = currentTime - userFile.getLastWriteTime();
+			userFile = serverInfo.getAudioWriter();
+			lastAudioGap = currentTime - serverInfo.getLastAudioTime();
 	
 			removeData(userID, serverID);
 		} finally {
@@ -477,7 +489,7 @@ public class AudioReceiverHandler extends ListenerAdapter implements AudioReceiv
 			leftoverBytes = userFile.finalizeFile();
 
 			if (Duration.between(creationTime, Instant.now()).abs().toSeconds() < 1) {
-				deleteAllUserFiles(userFile.getSeparateFiles(), userFile.getFile());
+				userFile.getFile().delete();
 				BotUtil.sendDM(user,"Your recording was less than a second. " 
 						+ "Because of this, your recording was not sent. "
 						+ "Please record for a longer period of time.");
@@ -490,10 +502,19 @@ public class AudioReceiverHandler extends ListenerAdapter implements AudioReceiv
 		}
 
 		File audioFile = userFile.getFile();
-		File[] separateAudioFiles = userFile.getSeparateFiles();
+		List<AudioPartition> partitions = userFile.getPartitions();
 		String message;
+		
+		if(partitions.isEmpty()) { // Everything got truncated
+			audioFile.delete();
+			BotUtil.sendDM(user, "It appears your recording didn't have any audio that could fit the file size limit of the server. "
+					+ "Because of this, your recording was not sent.");
+
+			AudioManager audioManager = server.getAudioManager();
+			audioManager.closeAudioConnection();
 
-		if (separateAudioFiles.length == 1) {
+			return;
+		} else if (partitions.size() == 1) {
 			message = "Here is your audio file.";
 		} else {
 			message = "Here are your audio files. They have been split into approximately 8 MiB chunks, but will be "
@@ -508,32 +529,20 @@ public class AudioReceiverHandler extends ListenerAdapter implements AudioReceiv
 		final String finalMessage = message;
 
 		user.openPrivateChannel().queue((channel) -> {
-			RestAction<Message> messageAction = channel.sendMessage(finalMessage).addFile(separateAudioFiles[0]);
-
-			for (int i = 1; i < separateAudioFiles.length; i++) {
-				final int fileIndex = i;
-
-				messageAction = messageAction.flatMap((msg) -> channel.sendFile(separateAudioFiles[fileIndex]));
-			}
-
-			messageAction.queue(msg -> deleteAndAddListener(separateAudioFiles, userID, channel, server), error -> {
+			RecordingUploadPipeline.getPipeline().upload(channel, finalMessage, audioFile, partitions, user.getId(), 
+					() -> addListener(userID, channel, server), error -> {
 				ErrorLogger.LogException(error, channel);
-				deleteAllUserFiles(separateAudioFiles, audioFile);
+				audioFile.delete();
 			});
 		}, (error) -> {
 			ErrorLogger.LogException(error);
-			deleteAllUserFiles(separateAudioFiles, audioFile);
+			audioFile.delete();
 		});
 		
 		AudioManager audioManager = server.getAudioManager();
 		audioManager.closeAudioConnection();
 	}
 	
-	private void deleteAndAddListener(File[] separateAudioFiles, long userID, PrivateChannel channel, Guild server) {
-		deleteSplitFiles(separateAudioFiles);
-		addListener(userID, channel, server);
-	}
-	
 	private void addListener(long userID, PrivateChannel channel, Guild server) {
 		JsonNode templateNode;
 		try {
@@ -632,7 +641,8 @@ public class AudioReceiverHandler extends ListenerAdapter implements AudioReceiv
 				.setTimeoutMessage(FILE_DELETED_MESSAGE)
 				.setCancelResponses(CANCEL_SEND_COMMAND)
 				.setCancelMessage(CANCEL_SEND_MESSAGE)
-				.setCancelCallback((event, selfResponse) -> onFileSendCancel(event, selfResponse, server.getIdLong()));
+				.setCancelCallback((event, selfResponse) -> onFileSendCancel(event, selfResponse, server.getIdLong()))
+				.setContinuation(FILE_SEND_CONTINUATION, server.getId());
 		listener.build();
 		
 		MessageResponseQueue.getQueue().addMessageResponse(listener);
@@ -808,7 +818,8 @@ public class AudioReceiverHandler extends ListenerAdapter implements AudioReceiv
 					.setTimeoutMessage(FILE_DELETED_MESSAGE)
 					.setCancelResponses("notemplate", "cancel")
 					.setCancelMessage(CANCEL_SEND_MESSAGE)
-					.setCancelCallback((e, response) -> onTemplateCancel(e, response, serverID, foundChannel.getIdLong()));
+					.setCancelCallback((e, response) -> onTemplateCancel(e, response, serverID, foundChannel.getIdLong()))
+					.setContinuation(FILE_SEND_CONTINUATION, server.getId());
 			
 			// adds the template questions
 			var questionIterator = questions.iterator();
@@ -846,6 +857,7 @@ public class AudioReceiverHandler extends ListenerAdapter implements AudioReceiv
 						.setTimeoutMessage(FILE_DELETED_MESSAGE)
 						.setCancelResponses("canceltemplate")
 						.setCancelCallback(cancelCallback)
+						.setContinuation(FILE_SEND_CONTINUATION, server.getId())
 						.build();
 				
 				templateGuide.chainResponse(templateQuestion);
@@ -885,6 +897,7 @@ public class AudioReceiverHandler extends ListenerAdapter implements AudioReceiv
 				.setCancelResponses("cancel")
 				.setCancelMessage(CANCEL_SEND_MESSAGE)
 				.setCancelCallback((e, response) -> onFileSendCancel(e, response, serverID))
+				.setContinuation(FILE_SEND_CONTINUATION, Long.toString(serverID))
 				.build();
 		MessageResponseQueue.getQueue().addMessageResponse(noTemplateResponse);
 	}
@@ -1026,58 +1039,43 @@ public class AudioReceiverHandler extends ListenerAdapter implements AudioReceiv
 	}
 	
 	private void addData(long userID, long serverID, AudioWriter audioFileWriter, JDA JDA) {
-		userToAudioInfo.put(userID, new AudioServerInfo(audioFileWriter, serverID, JDA));
+		userToAudioInfo.put(userID, new AudioServerInfo(audioFileWriter, userID, serverID, JDA));
 		serverRecordingList.add(serverID);
 	}
 	
 	private void removeData(long userID, long serverID) {
 		serverRecordingList.remove(serverID);
-		userToAudioInfo.remove(userID);
-	}
-	
-	private void deleteAllUserFiles(File[] separateAudioFiles, File mergedFile) {
-		deleteSplitFiles(separateAudioFiles);
-		mergedFile.delete();
-	}
-
-	private void deleteSplitFiles(File[] separateAudioFiles) {
-		if(separateAudioFiles == null) {
-			return;
-		}
-		
-		File parentDirectory = separateAudioFiles[0].getParentFile();
+		AudioServerInfo serverInfo = userToAudioInfo.remove(userID);
 		
-		for(var file : separateAudioFiles) {
-			file.delete();
+		if(serverInfo != null) {
+			serverInfo.stop();
 		}
-		
-		parentDirectory.delete();
 	}
 	
+	/**
+	 * Periodically deletes merged files after 24 hours.
+	 */
 	private void scheduleMergedFileDeletion(JDA JDA) {
-		fileUpdateTimer.scheduleAtFixedRate(new TimerTask() {
-			@Override
-			public void run() {
-				var serverDirectories = new File(RecorderConstant.RECORDER_DIR).listFiles();
-				
-				if(serverDirectories != null) {
-					for(var serverDirectory : new File(RecorderConstant.RECORDER_DIR).listFiles()) {
-						String serverDirectoryName = serverDirectory.getName();
-						if(!serverDirectory.isDirectory() || !ID_PATTERN.matcher(serverDirectoryName).find()) {
-							continue;
-						}
-						
-						long serverID = NumberUtil.stringToLong(serverDirectoryName);
-						
-						if(JDA.getGuildById(serverID) == null) {
-							continue;
-						}
-						
-						FileUtil.deleteFiles(serverDirectory, audioReceiver::delete24HourConditionAndIsUserFile);
+		TaskScheduler.getScheduler().scheduleAtFixedRate(() -> {
+			var serverDirectories = new File(RecorderConstant.RECORDER_DIR).listFiles();
+			
+			if(serverDirectories != null) {
+				for(var serverDirectory : new File(RecorderConstant.RECORDER_DIR).listFiles()) {
+					String serverDirectoryName = serverDirectory.getName();
+					if(!serverDirectory.isDirectory() || !ID_PATTERN.matcher(serverDirectoryName).find()) {
+						continue;
+					}
+					
+					long serverID = NumberUtil.stringToLong(serverDirectoryName);
+					
+					if(JDA.getGuildById(serverID) == null) {
+						continue;
 					}
+					
+					FileUtil.deleteFiles(serverDirectory, audioReceiver::delete24HourConditionAndIsUserFile);
 				}
 			}
-		}, RecorderConstant.AUDIO_FILE_DELETION_CHECK_DELAY, RecorderConstant.AUDIO_FILE_DELETION_CHECK_DELAY);
+		}, RecorderConstant.AUDIO_FILE_DELETION_CHECK_DELAY, RecorderConstant.AUDIO_FILE_DELETION_CHECK_DELAY, TimeUnit.MILLISECONDS);
 	}
 	
 	private boolean delete24HourConditionAndIsUserFile(File file) {
@@ -1097,93 +1095,24 @@ public class AudioReceiverHandler extends ListenerAdapter implements AudioReceiv
 	}
 	
 	private void addSilence() {
-		var infoMap = userToAudioInfo.entrySet().iterator();
-		
-		while(infoMap.hasNext()) {
-			var infoEntry = infoMap.next();
-			AudioServerInfo serverInfo = infoEntry.getValue();
-			
-			AudioWriter writer = infoEntry.getValue().getAudioWriter();
-
-			if (writer.isFinalized()) {
-				return;
-			}
-
-			long lastAudioGap = Instant.now().toEpochMilli() - writer.getLastWriteTime();
-
-			if (lastAudioGap > RecorderConstant.AUDIO_FILE_SILENCE_CHECK_DELAY) {
-				if(!serverInfo.getLock().tryLock()) {
-					return;
-				}
-				
-				if (writer.isFinalized()) {
-					serverInfo.getLock().unlock();
-					return;
-				}
-				
-				try {
-					writer.writeSilence(lastAudioGap);
-				} catch (IOException e) {
-					ErrorLogger.LogException(e);
-				} finally {
-					serverInfo.getLock().unlock();
-				}
-
-				if (writer.isFinalized()) {
-					File separatedFile = writer.getSeparateFiles()[0];
-					long userID = Long.parseLong(separatedFile.getParentFile().getName());
-					stopRecording(userID, userToAudioInfo.get(userID).getJDA());
-					return;
-				}
-			}
+		for(AudioServerInfo serverInfo : userToAudioInfo.values()) {
+			serverInfo.getEncoderQueue().execute(serverInfo::writeInactiveSilence);
 		}
 	}
 
+	/**
+	 * Copies the 20 millisecond PCM frame into the recording's frame buffer.
+	 * The encoder worker for the recording does all of the encoding and file writing.
+	 */
 	@Override
 	public void handleUserAudio(UserAudio audio) {
-		long userID = audio.getUser().getIdLong();
-		var serverInfo = userToAudioInfo.get(userID);
+		var serverInfo = userToAudioInfo.get(audio.getUser().getIdLong());
 		
-		if(serverInfo == null || !serverInfo.getLock().tryLock()) {
+		if(serverInfo == null) {
 			return;
 		}
 
-		try {
-			AudioWriter userFile = serverInfo.getAudioWriter();
-	
-			if (userFile.isFinalized()) {
-				return;
-			}
-	
-			long lastAudioGap = Instant.now().toEpochMilli() - userFile.getLastWriteTime() - 20;
-	
-			if (lastAudioGap > 0) {
-				try {
-					userFile.writeSilence(lastAudioGap);
-				} catch (IOException e) {
-					ErrorLogger.LogException(e);
-				}
-			}
-	
-			if (userFile.isFinalized()) {
-				stopRecording(userID, audio.getUser().getJDA());
-				return;
-			}
-	
-			try {
-				userFile.writePCMAudio(audio.getAudioData(1));
-			} catch (IOException e) {
-				ErrorLogger.LogException(e);
-			}
-	
-			if (userFile.isFinalized()) {
-				stopRecording(userID, audio.getUser().getJDA());
-				return;
-			}
-		} finally {
-			serverInfo.getLock().unlock();
-		}
-
+		serverInfo.queueAudio(audio.getAudioData(1), Instant.now().toEpochMilli());
 	}
 	
 	@Override
@@ -1257,15 +1186,164 @@ public class AudioReceiverHandler extends ListenerAdapter implements AudioReceiv
 		private final JDA JDA;
 		private final AudioWriter audioWriter;
 		private final ReentrantLock lock;
+		private final long userID;
 		private final long serverID;
-		
-		private AudioServerInfo(AudioWriter writer, long serverID, JDA JDA) {
+		private final AudioFrameRingBuffer frameBuffer;
+		private final byte[] pcmFrame;
+		private final EncoderQueue encoderQueue;
+		private volatile boolean isStopped;
+		private final AtomicBoolean isStopScheduled;
+		
+		/**
+		 * The time since the epoch in milliseconds up to which audio has been written. Only accessed with the lock held.
+		 */
+		private long lastAudioTime;
+		
+		private AudioServerInfo(AudioWriter writer, long userID, long serverID, JDA JDA) {
 			this.JDA = JDA;
+			this.userID = userID;
 			this.serverID = serverID;
 			audioWriter = writer;
 			lock = new ReentrantLock();
+			isStopScheduled = new AtomicBoolean();
+			lastAudioTime = writer.getLastWriteTime();
+			
+			// 20 milliseconds of audio in the output format
+			int frameSize = (int) (OUTPUT_FORMAT.getFrameRate() * OUTPUT_FORMAT.getFrameSize() / 50);
+			frameBuffer = new AudioFrameRingBuffer(frameSize, RecorderConstant.AUDIO_FRAME_BUFFER_CAPACITY);
+			pcmFrame = new byte[frameSize];
+			encoderQueue = EncoderScheduler.getScheduler().createQueue(this::encodeBufferedAudio);
 		}
-
+		
+		/**
+		 * Copies a PCM frame into the frame buffer and requests the encoder to drain it.
+		 * Must only be called from the audio receiving thread.
+		 * 
+		 * @param frame The PCM frame
+		 * @param time The time since the epoch in milliseconds that the frame was received
+		 */
+		private void queueAudio(byte[] frame, long time) {
+			if(frameBuffer.offer(frame, time)) {
+				encoderQueue.requestDrain();
+			}
+		}
+		
+		/**
+		 * Writes all of the buffered frames into the audio writer, filling any gaps between them with silence.
+		 * The lock must be held when calling this.
+		 */
+		private void writeBufferedAudio() {
+			int frameLength;
+			
+			while(!audioWriter.isFinalized() && (frameLength = frameBuffer.poll(pcmFrame)) != -1) {
+				long frameTime = frameBuffer.getLastPolledTime();
+				long lastAudioGap = frameTime - lastAudioTime - 20;
+				
+				try {
+					if (lastAudioGap > 0) {
+						audioWriter.writeSilence(lastAudioGap);
+					}
+					
+					if (!audioWriter.isFinalized()) {
+						audioWriter.writePCMAudio(frameLength == pcmFrame.length ? pcmFrame : Arrays.copyOf(pcmFrame, frameLength));
+					}
+				} catch (IOException e) {
+					ErrorLogger.LogException(e);
+				}
+				
+				lastAudioTime = frameTime;
+			}
+		}
+		
+		/**
+		 * Drains the frame buffer on the encoder pool, stopping the recording if the file gets full
+		 */
+		private void encodeBufferedAudio() {
+			boolean isFinalized;
+			lock.lock();
+			
+			try {
+				if(isStopped) {
+					return;
+				}
+				
+				writeBufferedAudio();
+				isFinalized = audioWriter.isFinalized();
+			} finally {
+				lock.unlock();
+			}
+			
+			if(isFinalized) {
+				scheduleStop();
+			}
+		}
+		
+		/**
+		 * Writes silence into the audio writer if nothing has been written for longer than the silence check delay
+		 */
+		private void writeInactiveSilence() {
+			boolean isFinalized;
+			lock.lock();
+			
+			try {
+				if(isStopped || audioWriter.isFinalized()) {
+					return;
+				}
+				
+				writeBufferedAudio(); // Makes sure the silence goes after any audio that hasn't been written yet
+				long currentTime = Instant.now().toEpochMilli();
+				long lastAudioGap = currentTime - lastAudioTime;
+				
+				if (lastAudioGap > RecorderConstant.AUDIO_FILE_SILENCE_CHECK_DELAY && !audioWriter.isFinalized()) {
+					try {
+						audioWriter.writeSilence(lastAudioGap);
+					} catch (IOException e) {
+						ErrorLogger.LogException(e);
+					}
+					
+					lastAudioTime = currentTime;
+				}
+				
+				isFinalized = audioWriter.isFinalized();
+			} finally {
+				lock.unlock();
+			}
+			
+			if(isFinalized) {
+				scheduleStop();
+			}
+		}
+		
+		/**
+		 * Stops the recording once its file is full. Stopping it finalizes and uploads the file, so it's handed off to the
+		 * TaskScheduler instead of tying up an encoder pool worker. Only the first call schedules the stop.
+		 */
+		private void scheduleStop() {
+			if(isStopScheduled.compareAndSet(false, true)) {
+				TaskScheduler.getScheduler().schedule(() -> {
+					// The recording could have been stopped some other way in the meantime
+					if(!isStopped) {
+						stopRecording(userID, JDA);
+					}
+				}, 0, TimeUnit.MILLISECONDS);
+			}
+		}
+		
+		/**
+		 * Stops any further encoding from happening for this recording
+		 */
+		private void stop() {
+			isStopped = true;
+		}
+		
+		public EncoderQueue getEncoderQueue() {
+			return encoderQueue;
+		}
+		
+		public long getLastAudioTime() {
+			return lastAudioTime;
+		}
+		
 		public JDA getJDA() {
 			return JDA;
 		}
@@ -30,6 +30,36 @@ public class Constant {
 	 */
 	public static final long DEFAULT_COOLDOWN = 5;
 	
+	/**
+	 * The amount of rate limited actions the whole bot can run in a burst
+	 */
+	public static final int GLOBAL_RATE_LIMIT = 30;
+	
+	/**
+	 * The amount of rate limited actions the whole bot can run per second after a burst
+	 */
+	public static final double GLOBAL_RATE_LIMIT_REFILL = 2;
+	
+	/**
+	 * The amount of rate limited actions a single guild can run in a burst
+	 */
+	public static final int GUILD_RATE_LIMIT = 10;
+	
+	/**
+	 * The amount of rate limited actions a single guild can run per second after a burst
+	 */
+	public static final double GUILD_RATE_LIMIT_REFILL = 0.5;
+	
+	/**
+	 * The time in milliseconds between removals of the guild rate limit budgets that are full
+	 */
+	public static final long GUILD_RATE_LIMIT_PRUNE_PERIOD = 600000;
+	
+	/**
+	 * The amount of actions a rate limited command can queue before it starts rejecting them
+	 */
+	public static final int RATE_LIMIT_QUEUE_CAPACITY = 20;
+	
 	/**
 	 * The base command for help.
 	 */
@@ -45,11 +75,56 @@ public class Constant {
 	 */
 	public static final String LOG_FILE = System.getProperty("user.dir") + File.separator + "log.txt";
 	
+	/**
+	 * The size in bytes the log file can reach before it's rotated into LOG_FILE.1
+	 */
+	public static final long MAX_LOG_FILE_SIZE = 10 * 1024 * 1024; // 10 MiB
+	
+	/**
+	 * The amount of log entries that can wait to be written before new ones are dropped
+	 */
+	public static final int LOG_QUEUE_CAPACITY = 1024;
+	
+	/**
+	 * The window in milliseconds in which only the first error with the same fingerprint is written to the log in full
+	 */
+	public static final long LOG_FINGERPRINT_WINDOW = 60 * 1000; // 1 minute
+	
+	/**
+	 * The amount of error fingerprints that are tracked. Errors with new fingerprints past this are always written in full.
+	 */
+	public static final int MAX_LOG_FINGERPRINTS = 4096;
+	
+	/**
+	 * The path leading to the journal of pending MessageResponses
+	 */
+	public static final String RESPONSE_JOURNAL_FILE = CONFIG_PATH + "responses.journal";
+	
 	/**
 	 * The path leading to the folder for forvo recordings
 	 */
 	public static final String FORVO_FOLDER = System.getProperty("user.dir") + File.separator + "forvo";
 	
+	/**
+	 * The amount of threads that fetch pronunciations from forvo
+	 */
+	public static final int PRONUNCIATION_FETCHER_THREADS = 8;
+	
+	/**
+	 * The amount of pronunciation fetches that can wait for a thread before new ones are rejected
+	 */
+	public static final int PRONUNCIATION_FETCHER_QUEUE_CAPACITY = 32;
+	
+	/**
+	 * The approximate amount of memory in bytes that cached forvo pronunciations can take up
+	 */
+	public static final long PRONUNCIATION_CACHE_MAX_WEIGHT = 4 * 1024 * 1024; // 4 MiB
+	
+	/**
+	 * How long forvo pronunciations are cached for in milliseconds
+	 */
+	public static final long PRONUNCIATION_CACHE_EXPIRY = 10 * 60 * 1000; // 10 minutes
+	
 	/**
 	 * The message to give users when an internal error occurs
 	 */
@@ -2,12 +2,11 @@ package com.deliburd.bot.burdbot;
 
 import java.io.File;
 import java.io.IOException;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.ConcurrentModificationException;
 import java.util.Iterator;
 import java.util.Objects;
-import java.util.Timer;
-import java.util.TimerTask;
 import java.util.Map.Entry;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -38,6 +37,8 @@ import com.deliburd.util.ErrorLogger;
 import com.deliburd.util.FileUtil;
 import com.deliburd.util.MessageResponseQueue;
 import com.deliburd.util.ServerConfig;
+import com.deliburd.util.ratelimit.RateLimiter;
+import com.deliburd.util.scheduling.TaskScheduler;
 import com.deliburd.util.ActivitySwitcher;
 import com.deliburd.util.StringUtil;
 import com.fasterxml.jackson.databind.JsonNode;
@@ -69,6 +70,7 @@ public class Main extends ListenerAdapter {
         FileUtil.deleteFolder(new File(Constant.FORVO_FOLDER));
         
 		ServerConfig.registerTable("templates");
+		ServerConfig.loadAll();
 		JDABuilder burdRecorder = JDABuilder.createDefault(BotConstant.BOT_TOKEN_STRING);
 		String helpDescription = "Displays a list of commands and their descriptions.";
         CommandManager commandManager = new CommandManager(Constant.COMMAND_PREFIX, helpDescription, burdRecorder);
@@ -113,6 +115,7 @@ public class Main extends ListenerAdapter {
 		fetchTextCommand.setArgumentDescriptions("The language of the text", "The difficulty of the text")
 				.addCommandNames("fetchtxt", "ftxt", "ftext")
 				.setCooldown(10)
+				.setRateLimiter(new RateLimiter(10, 1))
 				.finalizeCommand();
 		
 		String startRecordDescription = "Starts recording your voice in the voice channel you are in "
@@ -129,6 +132,7 @@ public class Main extends ListenerAdapter {
 				.addFinalArgumentPath("uncompressed")
 				.setArgumentDescriptions("Sets whether or not the audio is compressed (default, recommended) or uncompressed.")
 				.addCommandNames("startrecord", "srecord", "startrec", "srec", "sr")
+				.setRateLimiter(new RateLimiter(4, 0.2))
 				.finalizeCommand();
 		
 		String stopRecordDescription = "Stops recording your voice and DMs the audio file back for review. "
@@ -172,6 +176,14 @@ public class Main extends ListenerAdapter {
 				.addCommandNames("listwchannels", "listwcs")
 				.finalizeCommand();
 		
+		String topErrorsCommandDescription = "Lists the errors that have occurred the most since the bot started. Only usable by DELIBURD.";
+		commandManager.addCommand("toperrors", topErrorsCommandDescription, Main::showTopErrors)
+				.finalizeCommand();
+		
+		String botStatsCommandDescription = "Shows how busy the bot's worker threads and task scheduler are. Only usable by DELIBURD.";
+		commandManager.addCommand("botstats", botStatsCommandDescription, Main::showBotStats)
+				.finalizeCommand();
+		
 		String getTemplateInfoCommandDescription = "Gets info on the template for a whitelisted channel.";
 		commandManager.addCommand("gettemplateinfo", getTemplateInfoCommandDescription)
 				.setMinArguments(1)
@@ -207,6 +219,7 @@ public class Main extends ListenerAdapter {
 						+ "You can also specify a country instead of a language. If a country is specified, a pronunciation available "
 						+ "that is as similar as possible to the given country's accent(s) will be provided. This argument is optional.")
 				.setCooldown(10)
+				.setRateLimiter(new RateLimiter(6, 0.5))
 				.finalizeCommand();
 		
 		ActivitySwitcher.addState(",help | Making AOTW/VC recordings", 3, TimeUnit.DAYS);
@@ -280,10 +293,16 @@ public class Main extends ListenerAdapter {
 			
 			if(englishCountry != null) {
 				onEnglishSuccess = (file, prettyName) -> uploadFile(word, file, channel, prettyName, false);
-				PronunciationFetcher.fetchEnglishPronunciation(word, englishCountry, onEnglishSuccess, onFailure);
+				
+				if(!PronunciationFetcher.fetchEnglishPronunciation(word, englishCountry, onEnglishSuccess, onFailure)) {
+					onPronunciationFetcherBusy(channel);
+				}
 			} else if(spanishCountry != null) {
 				onSpanishSuccess = (file, prettyName) -> uploadFile(word, file, channel, prettyName, true);
-				PronunciationFetcher.fetchSpanishPronunciation(word, spanishCountry, onSpanishSuccess, onFailure);
+				
+				if(!PronunciationFetcher.fetchSpanishPronunciation(word, spanishCountry, onSpanishSuccess, onFailure)) {
+					onPronunciationFetcherBusy(channel);
+				}
 			} else {
 				ErrorLogger.LogIssue("Could not resolve any country for the pronunciation command", channel);
 			}
@@ -292,8 +311,16 @@ public class Main extends ListenerAdapter {
 			onEnglishSuccess = (file, prettyName) -> uploadFile(word, file, channel, prettyName, false);
 			onSpanishSuccess = (file, prettyName) -> uploadFile(word, file, channel, prettyName, true);
 			Runnable onFailure = () -> onPronunciationFetcherFailure(channel, failureCounter);
-			PronunciationFetcher.fetchEnglishPronunciation(word, defaultEnglishCountry, onEnglishSuccess, onFailure);
-			PronunciationFetcher.fetchSpanishPronunciation(word, defaultSpanishCountry, onSpanishSuccess, onFailure);
+			
+			boolean isEnglishQueued = PronunciationFetcher.fetchEnglishPronunciation(word, defaultEnglishCountry, onEnglishSuccess, onFailure);
+			boolean isSpanishQueued = PronunciationFetcher.fetchSpanishPronunciation(word, defaultSpanishCountry, onSpanishSuccess, onFailure);
+			
+			if(!isEnglishQueued && !isSpanishQueued) {
+				onPronunciationFetcherBusy(channel);
+			} else if(!isEnglishQueued || !isSpanishQueued) {
+				// The rejected language counts as a failure so the failure message still comes if the other one fails too
+				onFailure.run();
+			}
 		}
 	}
 	
@@ -328,6 +355,10 @@ public class Main extends ListenerAdapter {
 		BotUtil.sendMessage(channel, "Could not find any audio file for the given word.");
 	}
 	
+	private static void onPronunciationFetcherBusy(MessageChannel channel) {
+		BotUtil.sendMessage(channel, "I'm fetching too many pronunciations right now. Please try again in a moment.");
+	}
+	
 	private static void onPronunciationFetcherFailure(MessageChannel channel, AtomicInteger counter) {
 		int failureCounter = counter.incrementAndGet();
 		
@@ -342,17 +373,13 @@ public class Main extends ListenerAdapter {
      * @param interval The interval to reload texts in seconds
      */
     private static void reloadTexts(int interval) {
-		Timer reloadTextsTimer = new Timer();
-		reloadTextsTimer.scheduleAtFixedRate(new TimerTask() {
-			@Override
-			public void run() {
-				try {
-					ReadingManager.regenerateTexts();
-				} catch(ConcurrentModificationException e) {
-					ErrorLogger.LogException(e);
-				}
+		TaskScheduler.getScheduler().scheduleAtFixedRate(() -> {
+			try {
+				ReadingManager.regenerateTexts();
+			} catch(ConcurrentModificationException e) {
+				ErrorLogger.LogException(e);
 			}
-		}, 0, interval * 1000);
+		}, 0, interval, TimeUnit.SECONDS);
 	}
     
     @Override
@@ -645,6 +672,76 @@ public class Main extends ListenerAdapter {
 		return channelInfoBuilder.getStringBuilder().toString();
 	}
 	
+	/**
+	 * Runs when someone calls the command to list the most frequent errors
+	 * 
+	 * @param event The MessageReceivedEvent associated when the command was run
+	 */
+	private static void showBotStats(MessageReceivedEvent event) {
+		MessageChannel channel = event.getChannel();
+		
+		if(event.getAuthor().getIdLong() != Constant.DELIBURD_ID) {
+			BotUtil.sendMessage(channel, "Only DELIBURD can use this command.");
+			return;
+		}
+		
+		MessageBuilder botStatsBuilder = new MessageBuilder();
+		
+		botStatsBuilder.append("**Pronunciation fetcher**\n")
+				.append("Queued: " + PronunciationFetcher.getQueuedFetchCount())
+				.append(", running: " + PronunciationFetcher.getActiveFetchCount())
+				.append(", finished: " + PronunciationFetcher.getCompletedFetchCount() + "\n")
+				.append("Latency: " + PronunciationFetcher.getAverageFetchLatency(TimeUnit.MILLISECONDS) + " ms average, ")
+				.append(PronunciationFetcher.getMaxFetchLatency(TimeUnit.MILLISECONDS) + " ms max\n");
+		
+		TaskScheduler scheduler = TaskScheduler.getScheduler();
+		
+		botStatsBuilder.append("**Task scheduler**\n")
+				.append("Tasks run: " + scheduler.getExecutedTaskCount() + "\n")
+				.append("Lag: " + scheduler.getAverageLag(TimeUnit.MILLISECONDS) + " ms average, ")
+				.append(scheduler.getMaxLag(TimeUnit.MILLISECONDS) + " ms max\n");
+		
+		BotUtil.sendMessage(channel, botStatsBuilder);
+	}
+	
+	private static void showTopErrors(MessageReceivedEvent event) {
+		MessageChannel channel = event.getChannel();
+		
+		if(event.getAuthor().getIdLong() != Constant.DELIBURD_ID) {
+			BotUtil.sendMessage(channel, "Only DELIBURD can use this command.");
+			return;
+		}
+		
+		var fingerprints = ErrorLogger.getTopFingerprints(10);
+		
+		if(fingerprints.isEmpty()) {
+			BotUtil.sendMessage(channel, "No errors have occurred.");
+			return;
+		}
+		
+		MessageBuilder topErrorsBuilder = new MessageBuilder();
+		
+		for(var fingerprint : fingerprints) {
+			String description = fingerprint.getDescription();
+			
+			if(description.length() > 150) {
+				description = description.substring(0, 150) + "...";
+			}
+			
+			String errorEntry = "``" + fingerprint.getID() + "`` - " + fingerprint.getCount() + " time(s), last at " 
+					+ Instant.ofEpochMilli(fingerprint.getLastOccurrence()) + "\n```" + description + "```\n";
+			
+			// The rest of the errors are left out once they won't fit in one message
+			if(topErrorsBuilder.length() + errorEntry.length() > Message.MAX_CONTENT_LENGTH) {
+				break;
+			}
+			
+			topErrorsBuilder.append(errorEntry);
+		}
+		
+		BotUtil.sendMessage(channel, topErrorsBuilder);
+	}
+	
 	/**
 	 * Runs when someone calls the command to remove a whitelisted channel
 	 * 
@@ -664,12 +761,11 @@ public class Main extends ListenerAdapter {
 		}
 		
 		try {
-			if (ServerConfig.getNode("templates", serverID, channelString) == null) {
+			if (!ServerConfig.removeNode("templates", serverID, channelString)) {
 				command.giveInvalidArgumentMessage(channel, "This channel is not whitelisted.");
 				return;
 			}
 
-			ServerConfig.removeNode("templates", serverID, channelString);
 			BotUtil.sendMessage(event.getChannel(), "Channel removed from the whitelist.");
 		} catch (IOException e) {
 			ErrorLogger.LogException(e, channel);
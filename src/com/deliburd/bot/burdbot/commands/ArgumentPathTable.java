@@ -0,0 +1,237 @@
+package com.deliburd.bot.burdbot.commands;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An immutable decision table compiled from a MultiCommand's arguments and argument paths.
+ * Each state is an array indexed by the base argument at the current position, so a command's
+ * arguments are resolved and matched to an action in a single pass.
+ *
+ * @author MelonShooter
+ *
+ */
+final class ArgumentPathTable {
+	private static final int NO_STATE = -1;
+	private static final int NO_INDEX = -1;
+	private static final int VARIABLE_INDEX = 0;
+
+	/**
+	 * The arguments that can be given at each position
+	 */
+	private final Position[] positions;
+
+	/**
+	 * The next state for each state and base argument index. The root state is 0.
+	 */
+	private final int[][] transitions;
+
+	/**
+	 * The action for each state. Null if no path ends at the state.
+	 */
+	private final MultiCommandAction[] actions;
+
+	/**
+	 * Compiles a decision table
+	 *
+	 * @param argumentAliasLookup The map of aliases to base arguments for each position. An empty map means the argument is variable.
+	 * @param argumentPaths The argument paths mapped to their actions. A blank string matches a variable argument.
+	 */
+	ArgumentPathTable(List<HashMap<String, String>> argumentAliasLookup, Map<List<String>, MultiCommandAction> argumentPaths) {
+		positions = new Position[argumentAliasLookup.size()];
+
+		for(int i = 0; i < positions.length; i++) {
+			positions[i] = new Position(argumentAliasLookup.get(i));
+		}
+
+		var transitionList = new ArrayList<int[]>();
+		var actionList = new ArrayList<MultiCommandAction>();
+
+		transitionList.add(newState(0));
+		actionList.add(null);
+
+		pathLoop:
+		for(var path : argumentPaths.entrySet()) {
+			var arguments = path.getKey();
+
+			// Paths longer than the declared arguments can never be typed
+			if(arguments.size() > positions.length) {
+				continue;
+			}
+
+			int[] argumentIndexes = new int[arguments.size()];
+
+			for(int i = 0; i < argumentIndexes.length; i++) {
+				argumentIndexes[i] = positions[i].getPathIndex(arguments.get(i));
+
+				if(argumentIndexes[i] == NO_INDEX) {
+					continue pathLoop;
+				}
+			}
+
+			int state = 0;
+
+			for(int i = 0; i < argumentIndexes.length; i++) {
+				int[] stateTransitions = transitionList.get(state);
+
+				if(stateTransitions[argumentIndexes[i]] == NO_STATE) {
+					stateTransitions[argumentIndexes[i]] = transitionList.size();
+					transitionList.add(newState(i + 1));
+					actionList.add(null);
+				}
+
+				state = stateTransitions[argumentIndexes[i]];
+			}
+
+			actionList.set(state, path.getValue());
+		}
+
+		transitions = transitionList.toArray(new int[transitionList.size()][]);
+		actions = actionList.toArray(new MultiCommandAction[actionList.size()]);
+	}
+
+	/**
+	 * Gets the number of argument positions
+	 *
+	 * @return The number of argument positions
+	 */
+	int getPositionCount() {
+		return positions.length;
+	}
+
+	/**
+	 * Replaces the aliases in the arguments with their base arguments and finds the action for them.
+	 * The arguments are modified in place.
+	 *
+	 * @param args The arguments. There must not be more of these than there are positions.
+	 * @return The action. Null if an argument is invalid or no action is linked to the arguments.
+	 */
+	MultiCommandAction resolve(String[] args) {
+		int state = 0;
+
+		for(int i = 0; i < args.length; i++) {
+			var position = positions[i];
+			int argumentIndex = VARIABLE_INDEX;
+
+			if(!position.isVariable()) {
+				argumentIndex = position.getAliasIndex(args[i]);
+
+				if(argumentIndex == NO_INDEX) {
+					return null;
+				}
+
+				args[i] = position.getBaseArgument(argumentIndex);
+			}
+
+			if(state != NO_STATE) {
+				state = transitions[state][argumentIndex];
+			}
+		}
+
+		return state == NO_STATE ? null : actions[state];
+	}
+
+	/**
+	 * Creates the transitions for a new state
+	 *
+	 * @param depth The number of arguments that lead to the state
+	 * @return The transitions, which all lead nowhere
+	 */
+	private int[] newState(int depth) {
+		int width = depth < positions.length ? positions[depth].getWidth() : 0;
+		int[] stateTransitions = new int[width];
+
+		for(int i = 0; i < width; i++) {
+			stateTransitions[i] = NO_STATE;
+		}
+
+		return stateTransitions;
+	}
+
+	/**
+	 * The arguments that can be given at a position
+	 */
+	private static final class Position {
+		/**
+		 * The base arguments by index. Null if the argument is variable.
+		 */
+		private final String[] baseArguments;
+
+		/**
+		 * Maps every base argument and alias to the base argument's index
+		 */
+		private final HashMap<String, Integer> aliasIndexes;
+
+		private Position(HashMap<String, String> aliasLookup) {
+			if(aliasLookup.isEmpty()) {
+				baseArguments = null;
+				aliasIndexes = null;
+				return;
+			}
+
+			var baseIndexes = new HashMap<String, Integer>();
+			var baseArgumentList = new ArrayList<String>();
+			aliasIndexes = new HashMap<String, Integer>(aliasLookup.size() * 4 / 3 + 1);
+
+			for(var alias : aliasLookup.entrySet()) {
+				Integer index = baseIndexes.get(alias.getValue());
+
+				if(index == null) {
+					index = baseArgumentList.size();
+					baseIndexes.put(alias.getValue(), index);
+					baseArgumentList.add(alias.getValue().intern());
+				}
+
+				aliasIndexes.put(alias.getKey().intern(), index);
+			}
+
+			baseArguments = baseArgumentList.toArray(new String[baseArgumentList.size()]);
+		}
+
+		private boolean isVariable() {
+			return baseArguments == null;
+		}
+
+		private int getWidth() {
+			return isVariable() ? 1 : baseArguments.length;
+		}
+
+		private String getBaseArgument(int index) {
+			return baseArguments[index];
+		}
+
+		/**
+		 * Gets the index of a typed argument
+		 *
+		 * @param argument The typed argument
+		 * @return The index of its base argument. -1 if it isn't a valid argument.
+		 */
+		private int getAliasIndex(String argument) {
+			Integer index = aliasIndexes.get(argument);
+
+			return index == null ? NO_INDEX : index;
+		}
+
+		/**
+		 * Gets the index of an argument in an argument path
+		 *
+		 * @param pathArgument The argument in the path
+		 * @return The index of the base argument. -1 if the path can never match it.
+		 */
+		private int getPathIndex(String pathArgument) {
+			if(isVariable()) {
+				return pathArgument.isEmpty() ? VARIABLE_INDEX : NO_INDEX;
+			}
+
+			for(int i = 0; i < baseArguments.length; i++) {
+				if(baseArguments[i].equals(pathArgument)) {
+					return i;
+				}
+			}
+
+			return NO_INDEX;
+		}
+	}
+}
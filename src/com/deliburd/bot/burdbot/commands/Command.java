@@ -6,6 +6,8 @@ import java.util.Objects;
 import com.deliburd.bot.burdbot.Constant;
 import com.deliburd.util.BotUtil;
 import com.deliburd.util.Cooldown;
+import com.deliburd.util.ratelimit.RateLimiter;
+import com.deliburd.util.ratelimit.SubmissionResult;
 
 import net.dv8tion.jda.api.Permission;
 import net.dv8tion.jda.api.entities.MessageChannel;
@@ -20,6 +22,7 @@ public abstract class Command {
 	private final String shortCommandDescription;
 	private final String commandPrefix;
 	private Permission[] permissionRestrictions;
+	private RateLimiter rateLimiter;
 
 	/**
 	 * A bot command
@@ -83,6 +86,21 @@ public abstract class Command {
 		return this;
 	}
 	
+	/**
+	 * Sets a rate limiter that the command's actions run through. Actions over the limiter's budget are queued.
+	 * 
+	 * @param limiter The rate limiter
+	 * @return The modified command
+	 */
+	public Command setRateLimiter(RateLimiter limiter) {
+		if(isFinalized) {
+			throw new IllegalStateException("This command has already been finalized.");
+		}
+		
+		rateLimiter = limiter;
+		return this;
+	}
+	
 	/**
 	 * Finalizes the command meaning it can't be modified anymore.
 	 */
@@ -129,6 +147,17 @@ public abstract class Command {
 		
 		commandDescription = description.toString();
 		isFinalized = !isOverriden;
+		
+		if(isFinalized) {
+			compileCommand();
+		}
+	}
+	
+	/**
+	 * Makes the finalized command callable by adding it to its manager's dispatch table
+	 */
+	protected void compileCommand() {
+		CommandManager.getManager(commandPrefix).compileCommand(this);
 	}
 	
 	/**
@@ -231,6 +260,38 @@ public abstract class Command {
 		return permissionRestrictions;
 	}
 	
+	/**
+	 * Gets the rate limiter the command's actions run through. Null if there is none
+	 * 
+	 * @return The rate limiter
+	 */
+	public RateLimiter getRateLimiter() {
+		return rateLimiter;
+	}
+	
+	/**
+	 * Runs one of the command's actions through its rate limiter if it has one
+	 * 
+	 * @param action The action
+	 * @param event The message received event
+	 */
+	protected void runAction(Runnable action, MessageReceivedEvent event) {
+		if(rateLimiter == null) {
+			action.run();
+			return;
+		}
+		
+		SubmissionResult result = rateLimiter.submit(event.getGuild().getIdLong(), action);
+		
+		if(result == SubmissionResult.QUEUED) {
+			BotUtil.sendMessage(event.getChannel(), "A lot of people are using this command right now. " 
+					+ "Yours will run as soon as possible. (" + rateLimiter.getQueuedActionCount() + " waiting)");
+		} else if(result == SubmissionResult.REJECTED) {
+			BotUtil.sendMessage(event.getChannel(), "Too many people are using this command right now. " 
+					+ "Please try again in a bit.");
+		}
+	}
+	
 	/**
 	 * Gives a message for insufficient permissions
 	 * 
@@ -5,6 +5,7 @@ import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.regex.Pattern;
 
 import com.deliburd.bot.burdbot.Constant;
 import com.deliburd.util.BotUtil;
@@ -24,6 +25,11 @@ import net.dv8tion.jda.api.hooks.ListenerAdapter;
  *
  */
 public class CommandManager extends ListenerAdapter {	
+	/**
+	 * Splits a command message into its command and arguments
+	 */
+	private final static Pattern ARGUMENT_SEPARATOR = Pattern.compile(" +");
+	
 	/**
 	 * Links each command manager's prefix to the manager itself.
 	 */
@@ -43,6 +49,12 @@ public class CommandManager extends ListenerAdapter {
 	 * Maps all command aliases to the base command
 	 */
 	private final ConcurrentHashMap<String, String> commandAliasLookup;
+	
+	/**
+	 * Maps the names and aliases of every finalized command directly to the command.
+	 * This is what messages are dispatched with.
+	 */
+	private final ConcurrentHashMap<String, Command> commandDispatchTable;
 
 	private final String prefix;
 	private final JDA JDA;
@@ -65,6 +77,7 @@ public class CommandManager extends ListenerAdapter {
 		commandNameMap = new ConcurrentSkipListMap<String, Command>();
 		commandSet = ConcurrentHashMap.newKeySet();
 		commandAliasLookup = new ConcurrentHashMap<String, String>();
+		commandDispatchTable = new ConcurrentHashMap<String, Command>();
 	}
 	
 	/**
@@ -82,6 +95,7 @@ public class CommandManager extends ListenerAdapter {
 		commandNameMap = new ConcurrentSkipListMap<String, Command>();
 		commandSet = ConcurrentHashMap.newKeySet();
 		commandAliasLookup = new ConcurrentHashMap<String, String>();
+		commandDispatchTable = new ConcurrentHashMap<String, Command>();
 	}
 	
 	/**
@@ -161,45 +175,39 @@ public class CommandManager extends ListenerAdapter {
 	 */
 	@Override
 	public void onMessageReceived(MessageReceivedEvent event) {
-		boolean canWrite = BotUtil.hasWritePermission(event);
-		if(event.getChannelType() == ChannelType.TEXT && canWrite && !event.getAuthor().isBot()) {
-			String prefix = Constant.COMMAND_PREFIX;
-			int minCommandLength = prefix.length() + 1;
-			String message = event.getMessage().getContentRaw();
-			User user = event.getAuthor();
-			
-			if(message.length() < minCommandLength || !message.startsWith(prefix)) {
-				return;
-			}
-
-			String[] messageArgs = message.split(" +");
-			String baseCommand = messageArgs[0].substring(prefix.length());
-			String parsedBaseCommand = commandAliasLookup.get(baseCommand);
-
-			if (parsedBaseCommand == null) {
-				return;
-			}
-
-			Command command = commandNameMap.get(parsedBaseCommand);
+		if(event.getChannelType() != ChannelType.TEXT || event.getAuthor().isBot()) {
+			return;
+		}
+		
+		String message = event.getMessage().getContentRaw();
+		int prefixLength = prefix.length();
+		
+		// Most messages aren't commands, so reject them before allocating anything
+		if(message.length() <= prefixLength || !message.startsWith(prefix) || message.charAt(prefixLength) == ' ') {
+			return;
+		}
+		
+		int commandEnd = message.indexOf(' ', prefixLength);
+		String baseCommand = message.substring(prefixLength, commandEnd == -1 ? message.length() : commandEnd);
+		Command command = commandDispatchTable.get(baseCommand);
 
-			if (command == null) {
-				return;
-			}
+		if (command == null || !BotUtil.hasWritePermission(event)) {
+			return;
+		}
 
-			Cooldown cooldown = command.commandCooldown;
-			if (command.isFinalized() && cooldown.isCooldownOver(user)) {
-				if(hasPermission(command, event)) {
-					String[] commandArguments = messageArgs.length == 1 ? null : Arrays.copyOfRange(messageArgs, 1, messageArgs.length);
-					command.onCommandCalled(commandArguments, event);
-				} else {
-					command.giveInsufficientPermissionsMessage(event.getChannel());
-				}
-				
-				cooldown.resetCooldown(user);
-			} else if (!command.isFinalized()) {
-				throw new RuntimeException("Tried to call a command that wasn't finalized");
+		User user = event.getAuthor();
+		Cooldown cooldown = command.commandCooldown;
+		
+		if (cooldown.isCooldownOver(user)) {
+			if(hasPermission(command, event)) {
+				String[] messageArgs = ARGUMENT_SEPARATOR.split(message);
+				String[] commandArguments = messageArgs.length == 1 ? null : Arrays.copyOfRange(messageArgs, 1, messageArgs.length);
+				command.onCommandCalled(commandArguments, event);
+			} else {
+				command.giveInsufficientPermissionsMessage(event.getChannel());
 			}
 			
+			cooldown.resetCooldown(user);
 		}
 	}
 	
@@ -231,11 +239,30 @@ public class CommandManager extends ListenerAdapter {
 		commandAliasLookup.put(alias, command.getCommandName());
 	}
 	
+	/**
+	 * Adds a finalized command and all of its aliases to the dispatch table so it can be called.
+	 * A command that lost its name to an earlier command is never added.
+	 * 
+	 * @param command The finalized command
+	 */
+	void compileCommand(Command command) {
+		if(!command.isFinalized()) {
+			throw new RuntimeException("Tried to compile a command that wasn't finalized");
+		} else if(commandNameMap.get(command.getCommandName()) != command) {
+			return;
+		}
+		
+		for(String name : command.getCommandNames()) {
+			commandDispatchTable.put(name, command);
+		}
+	}
+	
 	/**
 	 * Initializes the manager and sets it up to receive event calls for messages
 	 */
 	private void initializeManager() {
 		isInitialized = true;
+		prefixToCommandManagerMap.put(prefix, this);
 		
 		addCommand(Constant.HELP_COMMAND, helpDescription)
 				.setArgumentDescriptions("A command.")
@@ -243,8 +270,6 @@ public class CommandManager extends ListenerAdapter {
 				.addFinalArgumentPath(this::helpWithCommandArgument, "")
 				.setBaseAction(this::sendHelp)
 				.finalizeCommand();
-
-		prefixToCommandManagerMap.put(prefix, this);
 		
 		if(JDA != null) {
 			JDA.addEventListener(this);
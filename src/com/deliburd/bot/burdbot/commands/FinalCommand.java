@@ -21,7 +21,7 @@ public class FinalCommand extends Command {
 	@Override
 	void onCommandCalled(String[] args, MessageReceivedEvent event) {
 		if(commandCooldown.isCooldownOver(event.getAuthor())) {
-			commandAction.OnCommandRun(event);
+			runAction(() -> commandAction.OnCommandRun(event), event);
 			commandCooldown.resetCooldown(event.getAuthor());
 		}
 	}
@@ -1,13 +1,14 @@
 package com.deliburd.bot.burdbot.commands;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.List;
 
 import com.deliburd.bot.burdbot.Constant;
 import com.deliburd.util.ArrayUtil;
 import com.deliburd.util.BotUtil;
-import com.deliburd.util.NodeTreeMap;
 
 import net.dv8tion.jda.api.entities.MessageChannel;
 import net.dv8tion.jda.api.entities.User;
@@ -27,13 +28,20 @@ public class MultiCommand extends Command {
 	/**
 	 * Used to match aliases up to their base argument
 	 * An empty HashMap means that that argument is variable
+	 * Is null after the command is finalized.
 	 */
 	private ArrayList<HashMap<String, String>> argumentAliasLookup;
 	
 	/**
-	 * Holds base command arguments in a tree, linking the ends to a MultiCommandAction
+	 * Links each series of base arguments to a MultiCommandAction
+	 * Is null after the command is finalized.
+	 */
+	private HashMap<List<String>, MultiCommandAction> argumentPaths;
+	
+	/**
+	 * The argument aliases and paths compiled when the command is finalized
 	 */
-	private NodeTreeMap<String, MultiCommandAction> commandArgumentMap;
+	private ArgumentPathTable argumentPathTable;
 	private MultiCommandAction baseAction;
 	private MultiCommandAction defaultAction;
 	private String[] argumentDescriptions;
@@ -54,7 +62,7 @@ public class MultiCommand extends Command {
 		normalCooldown = commandCooldown.getTotalCooldown();
 		argumentList = new ArrayList<LinkedHashMap<String, String[]>>();
 		argumentAliasLookup = new ArrayList<HashMap<String, String>>();
-		commandArgumentMap = new NodeTreeMap<String, MultiCommandAction>();
+		argumentPaths = new HashMap<List<String>, MultiCommandAction>();
 	}
 	
 	@Override
@@ -138,10 +146,8 @@ public class MultiCommand extends Command {
 	public MultiCommand addFinalArgumentPath(MultiCommandAction action, String... arguments) {
 		if(isFinalized) {
 			throw new IllegalArgumentException("This command has already been finalized.");
-		} else if(arguments == null) {
-			throw new IllegalArgumentException("The arguments for a path cannot be null.");
-		} else if(commandArgumentMap.findValue(arguments) != null) {
-			throw new IllegalArgumentException("This argument path has already been filled.");
+		} else if(arguments == null || arguments.length == 0) {
+			throw new IllegalArgumentException("The arguments for a path cannot be null or empty.");
 		}
 		
 		for(String arg : arguments) {
@@ -149,8 +155,10 @@ public class MultiCommand extends Command {
 				throw new IllegalArgumentException("No argument in the argument path can be null.");
 			}
 		}
-
-		commandArgumentMap.addValue(arguments, action);
+		
+		if(argumentPaths.putIfAbsent(Arrays.asList(arguments.clone()), action) != null) {
+			throw new IllegalArgumentException("This argument path has already been filled.");
+		}
 		
 		return this;
 	}
@@ -336,8 +344,12 @@ public class MultiCommand extends Command {
 		
 		fullDescription.append("```");
 		commandDescription = fullDescription.toString();
-		argumentList = null; //We don't need this anymore
+		argumentPathTable = new ArgumentPathTable(argumentAliasLookup, argumentPaths);
+		argumentList = null; //We don't need these anymore
+		argumentAliasLookup = null;
+		argumentPaths = null;
 		isFinalized = true;
+		compileCommand();
 	}
 	
 	/**
@@ -370,14 +382,16 @@ public class MultiCommand extends Command {
 	void onCommandCalled(String[] args, MessageReceivedEvent event) {
 		MessageChannel channel = event.getChannel();
 		User user = event.getAuthor();
-		int maxArgCountWithoutMultiArg = argumentAliasLookup.size();
+		int maxArgCountWithoutMultiArg = argumentPathTable.getPositionCount();
 		
 		if(args == null) {
 			if(baseAction == null) { // There was no base action specified, so this is invalid
 				giveInvalidArgumentMessage(channel);
 			} else if(commandCooldown.isCooldownOver(user)) {
-				baseAction.OnCommandRun(null, event, this);
-				commandCooldown.changeTotalCooldown(normalCooldown);
+				runAction(() -> {
+					baseAction.OnCommandRun(null, event, this);
+					commandCooldown.changeTotalCooldown(normalCooldown);
+				}, event);
 			}
 
 			return;
@@ -405,82 +419,16 @@ public class MultiCommand extends Command {
 			args = mergedArgs;
 		}
 		
-		String[] baseArgs = convertAliasesToBaseArguments(args, channel);
-		
-		if(baseArgs == null) {
-			return;
-		}
-		
-		String[] parsedArgs = convertAliasesToBaseArgumentsAndParse(args, channel);
-		
-		MultiCommandAction action = commandArgumentMap.findValue(parsedArgs);
+		MultiCommandAction action = argumentPathTable.resolve(args);
 		
 		if(action == null) {
 			giveInvalidArgumentMessage(channel);
 		} else if(commandCooldown.isCooldownOver(user)) {
-			action.OnCommandRun(baseArgs, event, this);
-			commandCooldown.changeTotalCooldown(normalCooldown);
-		}
-	}
-	
-	/**
-	 * Creates a copy of the given array, converting aliases to base arguments and leaving any
-	 * variable arguments as is.
-	 * 
-	 * @param args The arguments
-	 * @param channel The channel to send a message to if something goes wrong
-	 * @return The new arguments array. Null if something went wrong.
-	 */
-	private String[] convertAliasesToBaseArguments(String[] args, MessageChannel channel) {
-		String[] newArgs = args.clone();
-
-		for(int i = 0; i < args.length; i++) {
-			var aliasLookup = argumentAliasLookup.get(i);
-			// Only switches the arguments out if the argument is not a variable argument
-			if(!aliasLookup.isEmpty()) {
-				String baseArgument = aliasLookup.get(newArgs[i]);
-				
-				if(baseArgument == null) {
-					giveInvalidArgumentMessage(channel);
-					return null;
-				}
-				
-				newArgs[i] = baseArgument;
-			}
-		}
-		
-		return newArgs;
-	}
-	
-	/**
-	 * Turns the aliases of an argument array into base arguments
-	 * Then it parses the arguments by making all variable arguments blank strings in a copy of the args array.
-	 * 
-	 * @param args The arguments
-	 * @param channel The channel to send a message to if something goes wrong
-	 * @return The parsed arguments. Null if something went wrong.
-	 */
-	private String[] convertAliasesToBaseArgumentsAndParse(String[] args, MessageChannel channel) {
-		String[] parsedArgs = args.clone();
-		
-		for(int i = 0; i < args.length; i++) {
-			var aliasLookup = argumentAliasLookup.get(i);
-
-			// Only switches the arguments out if the argument is not a variable argument
-			if(!aliasLookup.isEmpty()) {
-				String baseArgument = aliasLookup.get(parsedArgs[i]);
-				
-				if(baseArgument == null) {
-					giveInvalidArgumentMessage(channel);
-					return null;
-				}
-				
-				parsedArgs[i] = baseArgument;
-			} else {
-				parsedArgs[i] = "";
-			}
+			final String[] baseArgs = args;
+			runAction(() -> {
+				action.OnCommandRun(baseArgs, event, this);
+				commandCooldown.changeTotalCooldown(normalCooldown);
+			}, event);
 		}
-		
-		return parsedArgs;
 	}
 }
@@ -4,14 +4,20 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Base64;
+import java.util.EnumMap;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.BiConsumer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -24,6 +30,8 @@ import com.deliburd.bot.burdbot.Constant;
 import com.deliburd.util.BotUtil;
 import com.deliburd.util.ErrorLogger;
 import com.deliburd.util.Pair;
+import com.deliburd.util.SingleFlight;
+import com.deliburd.util.WeightedCache;
 
 public class PronunciationFetcher {
 	public enum ForvoLanguage {
@@ -41,72 +49,283 @@ public class PronunciationFetcher {
 		}
 	}
 	
-	private static final Timer cacheExpirationTimer = new Timer(true);
-	private static final Map<String, Map<ForvoLanguage, Element>> pronunciationCache = new ConcurrentHashMap<>();
+	private static final WeightedCache<String, ForvoPage> pronunciationCache = new WeightedCache<>(Constant.PRONUNCIATION_CACHE_MAX_WEIGHT,
+			Constant.PRONUNCIATION_CACHE_EXPIRY, TimeUnit.MILLISECONDS, ForvoPage::getWeight);
 	private static final String forvoFolderWithSeparator = Constant.FORVO_FOLDER + File.separator;
 	private static final String forvoSite = "https://forvo.com/word/";
 	private static final String forvoMP3LinkPrefix = "https://audio.forvo.com/mp3/";
 	private static final Pattern nationalityPattern = Pattern.compile("(?<= from ).*(?=\\))");
 	private static final Pattern encodedArgumentPattern = Pattern.compile("(?<=, ?(?:'|\\\")).*?(?=(?:'|\\\"),)");
-	private static final ExecutorService fetcherThreadPool = Executors.newCachedThreadPool();
+	private static final ThreadPoolExecutor fetcherThreadPool = createFetcherThreadPool();
+	
+	/**
+	 * The fetches that are queued or running mapped to everyone waiting on them, so the same pronunciation is only fetched once at a time
+	 */
+	private static final ConcurrentHashMap<String, List<Pair<BiConsumer<File, String>, Runnable>>> inFlightFetches = new ConcurrentHashMap<>();
+	private static final SingleFlight<String, ForvoPage> pageFetches = new SingleFlight<>();
+	private static final SingleFlight<String, byte[]> MP3Downloads = new SingleFlight<>();
+	private static final AtomicLong fileCounter = new AtomicLong();
+	private static final LongAdder completedFetchCount = new LongAdder();
+	private static final LongAdder totalFetchLatency = new LongAdder();
+	private static final AtomicLong maxFetchLatency = new AtomicLong();
 	
 	private PronunciationFetcher() {}
 	
-	public static void fetchEnglishPronunciation(String word, EnglishForvoCountries country, BiConsumer<File, String> onSuccess, Runnable onFailure) {
-		fetcherThreadPool.submit(() -> asyncFetchPronunciation(ForvoLanguage.English, word, country, onSuccess, onFailure));
+	/**
+	 * Fetches an English pronunciation on the fetcher thread pool
+	 * 
+	 * @param word The word
+	 * @param country The country whose accent should be matched as closely as possible
+	 * @param onSuccess Given the MP3 file and the pretty name of the country it's from when a pronunciation is found
+	 * @param onFailure Run when no pronunciation could be found
+	 * @return Whether the fetch was accepted. False if too many fetches are already waiting.
+	 */
+	public static boolean fetchEnglishPronunciation(String word, EnglishForvoCountries country, BiConsumer<File, String> onSuccess, Runnable onFailure) {
+		return fetchPronunciation(ForvoLanguage.English, word, country, onSuccess, onFailure);
+	}
+	
+	/**
+	 * Fetches a Spanish pronunciation on the fetcher thread pool
+	 * 
+	 * @param word The word
+	 * @param country The country whose accent should be matched as closely as possible
+	 * @param onSuccess Given the MP3 file and the pretty name of the country it's from when a pronunciation is found
+	 * @param onFailure Run when no pronunciation could be found
+	 * @return Whether the fetch was accepted. False if too many fetches are already waiting.
+	 */
+	public static boolean fetchSpanishPronunciation(String word, SpanishForvoCountries country, BiConsumer<File, String> onSuccess, Runnable onFailure) {
+		return fetchPronunciation(ForvoLanguage.Spanish, word, country, onSuccess, onFailure);
+	}
+	
+	/**
+	 * Gets the amount of fetches waiting for a thread
+	 * 
+	 * @return The amount of fetches
+	 */
+	public static int getQueuedFetchCount() {
+		return fetcherThreadPool.getQueue().size();
+	}
+	
+	/**
+	 * Gets the amount of fetches running
+	 * 
+	 * @return The amount of fetches
+	 */
+	public static int getActiveFetchCount() {
+		return fetcherThreadPool.getActiveCount();
+	}
+	
+	/**
+	 * Gets the amount of fetches that have finished
+	 * 
+	 * @return The amount of fetches
+	 */
+	public static long getCompletedFetchCount() {
+		return completedFetchCount.sum();
+	}
+	
+	/**
+	 * Gets the average time from a fetch being accepted to it finishing
+	 * 
+	 * @param unit The unit to return the latency in
+	 * @return The average latency
+	 */
+	public static long getAverageFetchLatency(TimeUnit unit) {
+		long completedFetches = completedFetchCount.sum();
+		
+		return completedFetches == 0 ? 0 : unit.convert(totalFetchLatency.sum() / completedFetches, TimeUnit.NANOSECONDS);
+	}
+	
+	/**
+	 * Gets the longest time from a fetch being accepted to it finishing
+	 * 
+	 * @param unit The unit to return the latency in
+	 * @return The maximum latency
+	 */
+	public static long getMaxFetchLatency(TimeUnit unit) {
+		return unit.convert(maxFetchLatency.get(), TimeUnit.NANOSECONDS);
+	}
+	
+	/**
+	 * Gets the amount of times a word's pronunciations were found in the cache
+	 * 
+	 * @return The amount of cache hits
+	 */
+	public static long getCacheHitCount() {
+		return pronunciationCache.getHitCount();
+	}
+	
+	/**
+	 * Gets the amount of times a word's pronunciations weren't in the cache
+	 * 
+	 * @return The amount of cache misses
+	 */
+	public static long getCacheMissCount() {
+		return pronunciationCache.getMissCount();
+	}
+	
+	/**
+	 * Gets the amount of words whose pronunciations were pushed out of the cache to make room for others
+	 * 
+	 * @return The amount of cache evictions
+	 */
+	public static long getCacheEvictionCount() {
+		return pronunciationCache.getEvictionCount();
+	}
+	
+	private static ThreadPoolExecutor createFetcherThreadPool() {
+		AtomicInteger threadNumber = new AtomicInteger();
+		var threadPool = new ThreadPoolExecutor(Constant.PRONUNCIATION_FETCHER_THREADS, Constant.PRONUNCIATION_FETCHER_THREADS, 
+				60, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(Constant.PRONUNCIATION_FETCHER_QUEUE_CAPACITY), runnable -> {
+			var thread = new Thread(runnable, "Pronunciation fetcher " + threadNumber.getAndIncrement());
+			thread.setDaemon(true);
+			return thread;
+		});
+		
+		threadPool.allowCoreThreadTimeOut(true);
+		
+		return threadPool;
+	}
+	
+	/**
+	 * Queues a fetch on the fetcher thread pool. If the same pronunciation is already being fetched, this waits on that fetch instead.
+	 * 
+	 * @param language The language of the word
+	 * @param word The word
+	 * @param country The country whose accent should be matched as closely as possible
+	 * @param onSuccess Given the MP3 file and the pretty name of the country it's from when a pronunciation is found
+	 * @param onFailure Run when no pronunciation could be found
+	 * @return Whether the fetch was accepted. False if too many fetches are already waiting.
+	 */
+	private static boolean fetchPronunciation(ForvoLanguage language, String word, IForvoCountry country, BiConsumer<File, String> onSuccess, Runnable onFailure) {
+		String fetchKey = language + " " + country + " " + word;
+		var waiter = new Pair<BiConsumer<File, String>, Runnable>(onSuccess, onFailure);
+		var isRejected = new boolean[1];
+		
+		inFlightFetches.compute(fetchKey, (key, waiters) -> {
+			if(waiters != null) {
+				waiters.add(waiter);
+				return waiters;
+			}
+			
+			long acceptedTime = System.nanoTime();
+			
+			try {
+				fetcherThreadPool.execute(() -> asyncFetchPronunciation(fetchKey, language, word, country, acceptedTime));
+			} catch (RejectedExecutionException e) {
+				isRejected[0] = true;
+				return null;
+			}
+			
+			var newWaiters = new ArrayList<Pair<BiConsumer<File, String>, Runnable>>();
+			newWaiters.add(waiter);
+			
+			return newWaiters;
+		});
+		
+		return !isRejected[0];
 	}
 	
-	public static void fetchSpanishPronunciation(String word, SpanishForvoCountries country, BiConsumer<File, String> onSuccess, Runnable onFailure) {
-		fetcherThreadPool.submit(() -> asyncFetchPronunciation(ForvoLanguage.Spanish, word, country, onSuccess, onFailure));
+	private static void asyncFetchPronunciation(String fetchKey, ForvoLanguage language, String word, IForvoCountry country, long acceptedTime) {
+		Pair<byte[], String> MP3AndCountry = null;
+		
+		try {
+			MP3AndCountry = downloadPronunciation(language, word, country);
+		} catch (RuntimeException e) {
+			ErrorLogger.LogException(e);
+		} finally {
+			// Even if an Error is thrown, the fetch is removed so later fetches for the pronunciation don't wait on it forever.
+			// Nobody can join the fetch once it's removed, so every waiter is in the list.
+			var waiters = inFlightFetches.remove(fetchKey);
+			
+			for(var waiter : waiters) {
+				try {
+					File MP3File = MP3AndCountry == null ? null : writeMP3File(word, MP3AndCountry.getKey());
+					
+					if(MP3File == null) {
+						waiter.getValue().run();
+					} else {
+						waiter.getKey().accept(MP3File, MP3AndCountry.getValue());
+					}
+				} catch (RuntimeException e) {
+					ErrorLogger.LogException(e);
+				}
+			}
+			
+			long latency = System.nanoTime() - acceptedTime;
+			completedFetchCount.increment();
+			totalFetchLatency.add(latency);
+			maxFetchLatency.accumulateAndGet(latency, Math::max);
+		}
 	}
 	
-	private static void asyncFetchPronunciation(ForvoLanguage language, String word, IForvoCountry country, BiConsumer<File, String> onSuccess, Runnable onFailure) {
+	/**
+	 * Finds and downloads a pronunciation
+	 * 
+	 * @param language The language of the word
+	 * @param word The word
+	 * @param country The country whose accent should be matched as closely as possible
+	 * @return The bytes of the MP3 and the pretty name of the country it's from. Null if no pronunciation could be downloaded.
+	 */
+	private static Pair<byte[], String> downloadPronunciation(ForvoLanguage language, String word, IForvoCountry country) {
 		Pair<String, String> MP3LinkAndCountry = findMP3Link(language, word, country);
 		
 		if(MP3LinkAndCountry == null) {
-			onFailure.run();
-			return;
+			return null;
 		}
 		
 		String MP3Link = MP3LinkAndCountry.getKey();
 		
 		if(MP3Link.isBlank()) {
-			onFailure.run();
-			return;
+			return null;
 		}
 		
-		byte[] mp3FileBytes;
+		byte[] mp3FileBytes = MP3Downloads.get(MP3Link, PronunciationFetcher::downloadMP3);
 		
+		if(mp3FileBytes == null) {
+			return null;
+		}
+		
+		return new Pair<byte[], String>(mp3FileBytes, MP3LinkAndCountry.getValue());
+	}
+	
+	/**
+	 * Downloads an MP3. Only called by one thread at a time for the same link.
+	 * 
+	 * @param MP3Link The link to the MP3
+	 * @return The bytes of the MP3. Null if it couldn't be downloaded.
+	 */
+	private static byte[] downloadMP3(String MP3Link) {
 		try {
-			mp3FileBytes = Jsoup.connect(MP3Link)
+			return Jsoup.connect(MP3Link)
 					.ignoreContentType(true)
 					.maxBodySize(BotUtil.getFileSizeLimit())
 					.execute()
 					.bodyAsBytes();
 		} catch (IOException e) {
 			ErrorLogger.LogException(e);
-			onFailure.run();
-			return;
+			return null;
 		}
-		
+	}
+	
+	/**
+	 * Writes an MP3 to a new file in the forvo folder
+	 * 
+	 * @param word The word the MP3 is a pronunciation of
+	 * @param mp3FileBytes The bytes of the MP3
+	 * @return The file. Null if it couldn't be written.
+	 */
+	private static File writeMP3File(String word, byte[] mp3FileBytes) {
 		File forvoFolder = new File(Constant.FORVO_FOLDER);
-		long uniqueID = Thread.currentThread().getId();
+		long uniqueID = fileCounter.getAndIncrement();
 		String fileName = forvoFolderWithSeparator + word + "-" + uniqueID;
 		File newMP3File = new File(fileName + ".mp3");
 		
 		forvoFolder.mkdirs();
 
 		if (newMP3File.exists()) {
-			int counter = 0;
-			
-			do {
-				counter++;
-				newMP3File = new File(fileName + "-" + counter + ".mp3");
-			} while(newMP3File.exists());
-			
-			onFailure.run();
 			ErrorLogger.LogIssue("The MP3 file already exists. This should never happen.");
-			return;
+			return null;
 		}
 
 		try (FileOutputStream fileStream = new FileOutputStream(newMP3File)) {
@@ -114,67 +333,121 @@ public class PronunciationFetcher {
 		} catch (IOException e) {
 			newMP3File.delete();
 			ErrorLogger.LogException(e);
-			onFailure.run();
-			return;
+			return null;
 		}
 		
-		String prettyCountryName = MP3LinkAndCountry.getValue();
-		
-		onSuccess.accept(newMP3File, prettyCountryName);
+		return newMP3File;
 	}
 
 	private static Pair<String, String> findMP3Link(ForvoLanguage language, String word, IForvoCountry country) {
-		String pronunciationListLink = forvoSite + word;
-
-		Element languageContainer;
-		
-		var pronunciationCacheMap = pronunciationCache.get(word);
+		var page = pronunciationCache.get(word);
 				
-		if(pronunciationCacheMap == null) {
-			Document pronunciationPage;
+		if(page == null) {
+			page = pageFetches.get(word, PronunciationFetcher::fetchPage);
 			
-			try {
-				pronunciationPage = Jsoup.connect(pronunciationListLink).get();
-			} catch (IOException e) {
+			if(page == null) {
 				return null;
 			}
+		}
+		
+		var pronunciations = page.getPronunciations(language);
+
+		if (pronunciations == null) {
+			return null;
+		}
+
+		Map<IForvoCountry, String> countryFilter = new HashMap<>();
+
+		for (var pronunciation : pronunciations) {
+			IForvoCountry pronunciationCountry = pronunciation.getKey();
 			
-			languageContainer = pronunciationPage.selectFirst("div#language-container-" + language.toString());
+			if (pronunciationCountry == country) {
+				return new Pair<String, String>(pronunciation.getValue(), country.getPrettyName());
+			}
+
+			countryFilter.putIfAbsent(pronunciationCountry, pronunciation.getValue());
+		}
+
+		IForvoCountry closestPronunciationCountry = country.findClosestCountry(countryFilter.keySet());
+
+		if (closestPronunciationCountry == null) {
+			return null;
+		}
+
+		String MP3Link = countryFilter.get(closestPronunciationCountry);
+
+		if (MP3Link == null) {
+			return null;
+		}
+
+		return new Pair<String, String>(MP3Link, closestPronunciationCountry.getPrettyName());
+	}
+
+	/**
+	 * Fetches a word's page from forvo and caches the pronunciations on it for every language. Only called by one thread
+	 * at a time for the same word.
+	 * 
+	 * @param word The word
+	 * @return The pronunciations on the page. Null if the page couldn't be fetched or has no pronunciations.
+	 */
+	private static ForvoPage fetchPage(String word) {
+		// The page might have been cached after the caller missed the cache
+		var cachedPage = pronunciationCache.peek(word);
+		
+		if(cachedPage != null) {
+			return cachedPage;
+		}
+		
+		Document pronunciationPage;
+		
+		try {
+			pronunciationPage = Jsoup.connect(forvoSite + word).get();
+		} catch (IOException e) {
+			return null;
+		}
+		
+		var pronunciationMap = new EnumMap<ForvoLanguage, List<Pair<IForvoCountry, String>>>(ForvoLanguage.class);
+		
+		for(ForvoLanguage languageToCache : ForvoLanguage.values()) {
+			Element languageContainer = pronunciationPage.selectFirst("div#language-container-" + languageToCache.toString());
 			
 			if(languageContainer != null) {
 				languageContainer = languageContainer.selectFirst("article.pronunciations:not([id])");
 			}
 			
-			var languageContainerMap = cacheLanguageContainers(language, pronunciationPage, languageContainer);
-			
-			if(languageContainerMap != null) {
-				pronunciationCache.putIfAbsent(word, languageContainerMap);
-				
-				cacheExpirationTimer.schedule(new TimerTask() {
-					@Override
-					public void run() {
-						pronunciationCache.remove(word);
-					}
-				}, 600000);
+			if(languageContainer != null) {
+				pronunciationMap.put(languageToCache, extractPronunciations(languageToCache, languageContainer));
 			}
-		} else {
-			languageContainer = pronunciationCacheMap.get(language);
 		}
 		
-
-		if (languageContainer == null) {
+		if(pronunciationMap.isEmpty()) {
 			return null;
 		}
-
+		
+		var page = new ForvoPage(pronunciationMap);
+		cachedPage = pronunciationCache.putIfAbsent(word, page);
+		
+		return cachedPage == null ? page : cachedPage;
+	}
+	
+	/**
+	 * Pulls the country and MP3 link of each pronunciation out of a language's pronunciation list so the parsed page
+	 * doesn't have to be kept
+	 * 
+	 * @param language The language of the pronunciations
+	 * @param languageContainer The element containing the pronunciations
+	 * @return The countries of the pronunciations paired with their MP3 links, in the order they're on the page
+	 */
+	private static List<Pair<IForvoCountry, String>> extractPronunciations(ForvoLanguage language, Element languageContainer) {
 		Elements nationalityList = languageContainer.select("span.from");
 		Elements pronunciationList = languageContainer.select("span.play.icon-size-xl");
 
 		if (nationalityList.size() != pronunciationList.size()) {
 			ErrorLogger.LogIssue("More than one nationality match found. This should never happen.");
-			return null;
+			return List.of();
 		}
-
-		Map<IForvoCountry, Element> countryFilter = new HashMap<>();
+		
+		var pronunciations = new ArrayList<Pair<IForvoCountry, String>>(nationalityList.size());
 
 		for (int i = 0; i < nationalityList.size(); i++) {
 			Element nationalityElement = nationalityList.get(i);
@@ -186,65 +459,28 @@ public class PronunciationFetcher {
 				continue;
 			}
 
+			IForvoCountry pronunciationCountry;
+			
 			try {
-				IForvoCountry pronunciationCountry;
-				
 				if(language == ForvoLanguage.English) {
 					pronunciationCountry = EnglishForvoCountries.valueOf(strippedUppercaseNationality);
 				} else {
 					pronunciationCountry = SpanishForvoCountries.valueOf(strippedUppercaseNationality);
 				}
-				
-				Element pronunciationElement = pronunciationList.get(i);
-
-				if (pronunciationCountry == country) {
-					return new Pair<String, String>(pronunciationElementToMP3Link(pronunciationElement), country.getPrettyName());
-				}
-
-				countryFilter.putIfAbsent(pronunciationCountry, pronunciationElement);
 			} catch (IllegalArgumentException e) {
 				continue;
 			}
-		}
-
-		IForvoCountry closestPronunciationCountry = country.findClosestCountry(countryFilter.keySet());
-
-		if (closestPronunciationCountry == null) {
-			return null;
-		}
-
-		Element pronunciationElement = countryFilter.get(closestPronunciationCountry);
-
-		if (pronunciationElement == null) {
-			return null;
-		}
-
-		return new Pair<String, String>(pronunciationElementToMP3Link(pronunciationElement), closestPronunciationCountry.getPrettyName());
-	}
-
-	private static Map<ForvoLanguage, Element> cacheLanguageContainers(ForvoLanguage language, Document pronunciationPage, Element languageContainer) {
-		Map<ForvoLanguage, Element> pronunciationCacheMap = new ConcurrentHashMap<>();
-		
-		if(languageContainer != null) {
-			pronunciationCacheMap.put(language, languageContainer);
-		}
-		
-		for(ForvoLanguage languageToCache : ForvoLanguage.values()) {
-			if(language != languageToCache) {
-				Element cachedLanguageContainer = pronunciationPage.selectFirst("div#language-container-" + languageToCache.toString());
-				
-				if(cachedLanguageContainer != null) {
-					cachedLanguageContainer = cachedLanguageContainer.selectFirst("article.pronunciations:not([id])");
-					pronunciationCacheMap.put(languageToCache, cachedLanguageContainer);
-				}
+			
+			String MP3Link = pronunciationElementToMP3Link(pronunciationList.get(i));
+			
+			if(!MP3Link.isBlank()) {
+				pronunciations.add(new Pair<IForvoCountry, String>(pronunciationCountry, MP3Link));
 			}
 		}
 		
-		if(pronunciationCacheMap.isEmpty()) {
-			return null;
-		}
+		pronunciations.trimToSize();
 		
-		return pronunciationCacheMap;
+		return pronunciations;
 	}
 	
 	/**
@@ -322,4 +558,50 @@ public class PronunciationFetcher {
 			return "";
 		}
 	}
+	
+	/**
+	 * The pronunciations found on a word's forvo page
+	 */
+	private static class ForvoPage {
+		/**
+		 * A rough estimate in bytes of the memory used by the page and each pronunciation besides its MP3 link
+		 */
+		private static final int PAGE_OVERHEAD = 96;
+		private static final int PRONUNCIATION_OVERHEAD = 64;
+		
+		private final EnumMap<ForvoLanguage, List<Pair<IForvoCountry, String>>> pronunciationMap;
+		private final int weight;
+		
+		private ForvoPage(EnumMap<ForvoLanguage, List<Pair<IForvoCountry, String>>> pronunciationMap) {
+			int pageWeight = PAGE_OVERHEAD;
+			
+			for(var pronunciations : pronunciationMap.values()) {
+				for(var pronunciation : pronunciations) {
+					pageWeight += PRONUNCIATION_OVERHEAD + pronunciation.getValue().length();
+				}
+			}
+			
+			this.pronunciationMap = pronunciationMap;
+			weight = pageWeight;
+		}
+		
+		/**
+		 * Gets the pronunciations in a language
+		 * 
+		 * @param language The language
+		 * @return The countries of the pronunciations paired with their MP3 links. Null if the page has no section for the language.
+		 */
+		private List<Pair<IForvoCountry, String>> getPronunciations(ForvoLanguage language) {
+			return pronunciationMap.get(language);
+		}
+		
+		/**
+		 * Gets the approximate memory used by the page
+		 * 
+		 * @return The weight in bytes
+		 */
+		private int getWeight() {
+			return weight;
+		}
+	}
 }
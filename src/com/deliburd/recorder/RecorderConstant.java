@@ -34,6 +34,26 @@ public class RecorderConstant {
 	 */
 	public static final int AUDIO_FILE_SILENCE_CHECK_DELAY = 60 * 1000; // 1 minute
 
+	/**
+	 * The amount of 20 millisecond PCM frames that can be buffered per recording before frames start getting dropped
+	 */
+	public static final int AUDIO_FRAME_BUFFER_CAPACITY = 256; // About 5 seconds
+
+	/**
+	 * The amount of recordings that can be uploaded at the same time. Other recordings wait until one finishes.
+	 */
+	public static final int MAX_CONCURRENT_RECORDING_UPLOADS = 4;
+
+	/**
+	 * The amount of times a partition is sent before its upload is given up on if it keeps getting rate limited
+	 */
+	public static final int MAX_PARTITION_UPLOAD_ATTEMPTS = 3;
+
+	/**
+	 * The delay in milliseconds before sending a partition again after it got rate limited
+	 */
+	public static final int PARTITION_UPLOAD_RETRY_DELAY = 5 * 1000; // 5 seconds
+
 	/**
 	 * A pattern to find all instances of %p, but not %%p
 	 */
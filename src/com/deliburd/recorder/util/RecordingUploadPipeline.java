@@ -0,0 +1,236 @@
+package com.deliburd.recorder.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import com.deliburd.recorder.RecorderConstant;
+import com.deliburd.recorder.util.audio.AudioPartition;
+import com.deliburd.util.ErrorLogger;
+import com.deliburd.util.scheduling.TaskScheduler;
+
+import net.dv8tion.jda.api.entities.Message;
+import net.dv8tion.jda.api.entities.MessageChannel;
+import net.dv8tion.jda.api.exceptions.ErrorResponseException;
+import net.dv8tion.jda.api.requests.RestAction;
+
+/**
+ * Uploads recordings by streaming the partitions of the merged file straight into Discord, one message per partition.
+ * Only a limited amount of recordings are uploaded at a time and the rest wait in order. Each recording only has
+ * 1 partition open at a time, with the next one being opened once the last one has been sent. JDA can only read
+ * a stream once, so a partition that gets rate limited is sent again later from a newly opened stream.
+ * 
+ * @author MelonShooter
+ *
+ */
+public class RecordingUploadPipeline {
+	private static final RecordingUploadPipeline pipeline = new RecordingUploadPipeline(RecorderConstant.MAX_CONCURRENT_RECORDING_UPLOADS);
+	private final int maxConcurrentUploads;
+	private final Queue<RecordingUpload> pendingUploads;
+	private final AtomicInteger activeUploadCount;
+	
+	private RecordingUploadPipeline(int maxConcurrentUploads) {
+		this.maxConcurrentUploads = maxConcurrentUploads;
+		pendingUploads = new ConcurrentLinkedQueue<RecordingUpload>();
+		activeUploadCount = new AtomicInteger();
+	}
+	
+	/**
+	 * Gets the upload pipeline shared by all recordings
+	 * 
+	 * @return The upload pipeline
+	 */
+	public static RecordingUploadPipeline getPipeline() {
+		return pipeline;
+	}
+	
+	/**
+	 * Queues a recording to be uploaded. The first partition is sent along with the message
+	 * and the rest are sent after it in order.
+	 * 
+	 * @param channel The channel to upload the recording to
+	 * @param message The message to send with the first partition
+	 * @param recording The merged file the partitions were made from. It must not be deleted until the upload is done.
+	 * @param partitions The partitions to upload
+	 * @param fileNamePrefix The prefix for the name of each uploaded file, which is followed by the partition's number
+	 * and the recording's file extension
+	 * @param onSuccess The Runnable to run once every partition has been sent
+	 * @param onFailure The Consumer to run with the error if a partition couldn't be sent. The partitions after it aren't sent.
+	 * @throws IllegalArgumentException If there are no partitions
+	 */
+	public void upload(MessageChannel channel, String message, File recording, List<AudioPartition> partitions, String fileNamePrefix, 
+			Runnable onSuccess, Consumer<Throwable> onFailure) {
+		if(partitions.isEmpty()) {
+			throw new IllegalArgumentException("There must be at least 1 partition to upload.");
+		}
+		
+		pendingUploads.add(new RecordingUpload(channel, message, recording, partitions, fileNamePrefix, onSuccess, onFailure));
+		startPendingUploads();
+	}
+	
+	/**
+	 * Gets the amount of recordings being uploaded right now
+	 * 
+	 * @return The amount of recordings
+	 */
+	public int getActiveUploadCount() {
+		return activeUploadCount.get();
+	}
+	
+	/**
+	 * Gets the amount of recordings waiting to be uploaded
+	 * 
+	 * @return The amount of recordings
+	 */
+	public int getPendingUploadCount() {
+		return pendingUploads.size();
+	}
+	
+	/**
+	 * Starts uploading waiting recordings until the concurrent upload limit is reached
+	 */
+	private void startPendingUploads() {
+		while(!pendingUploads.isEmpty()) {
+			int uploadCount = activeUploadCount.get();
+			
+			if(uploadCount >= maxConcurrentUploads) {
+				return;
+			} else if(!activeUploadCount.compareAndSet(uploadCount, uploadCount + 1)) {
+				continue;
+			}
+			
+			RecordingUpload upload = pendingUploads.poll();
+			
+			if(upload == null) { // Another thread started it first
+				activeUploadCount.decrementAndGet();
+			} else {
+				upload.sendNextPartition();
+			}
+		}
+	}
+	
+	/**
+	 * Frees up the slot of a recording that finished uploading and starts the next waiting recording
+	 */
+	private void finishUpload() {
+		activeUploadCount.decrementAndGet();
+		startPendingUploads();
+	}
+	
+	private class RecordingUpload {
+		private final MessageChannel channel;
+		private final String message;
+		private final File recording;
+		private final List<AudioPartition> partitions;
+		private final String fileNamePrefix;
+		private final String fileExtension;
+		private final Runnable onSuccess;
+		private final Consumer<Throwable> onFailure;
+		private int nextPartition;
+		
+		/**
+		 * The amount of times the next partition has failed to send
+		 */
+		private int failedAttempts;
+		
+		private RecordingUpload(MessageChannel channel, String message, File recording, List<AudioPartition> partitions, 
+				String fileNamePrefix, Runnable onSuccess, Consumer<Throwable> onFailure) {
+			String recordingName = recording.getName();
+			int extensionIndex = recordingName.lastIndexOf('.');
+			
+			this.channel = channel;
+			this.message = message;
+			this.recording = recording;
+			this.partitions = partitions;
+			this.fileNamePrefix = fileNamePrefix;
+			this.onSuccess = onSuccess;
+			this.onFailure = onFailure;
+			fileExtension = extensionIndex == -1 ? "" : recordingName.substring(extensionIndex);
+		}
+		
+		/**
+		 * Streams the next partition into Discord. The partition after it is sent once it succeeds.
+		 * If it gets rate limited or the stream couldn't be read, it's sent again later from a new stream.
+		 */
+		private void sendNextPartition() {
+			InputStream partitionStream;
+			
+			try {
+				partitionStream = partitions.get(nextPartition).openStream(recording);
+			} catch (IOException e) {
+				finishUpload();
+				onFailure.accept(e);
+				return;
+			}
+			
+			String fileName = fileNamePrefix + "-" + nextPartition + fileExtension;
+			RestAction<Message> partitionAction;
+			
+			if(nextPartition == 0) {
+				partitionAction = channel.sendMessage(message).addFile(partitionStream, fileName);
+			} else {
+				partitionAction = channel.sendFile(partitionStream, fileName);
+			}
+			
+			partitionAction.queue(sentMessage -> {
+				closePartitionStream(partitionStream);
+				nextPartition++;
+				failedAttempts = 0;
+				
+				if(nextPartition < partitions.size()) {
+					sendNextPartition();
+				} else {
+					finishUpload();
+					onSuccess.run();
+				}
+			}, error -> {
+				closePartitionStream(partitionStream);
+				
+				if(isRetryable(error) && ++failedAttempts < RecorderConstant.MAX_PARTITION_UPLOAD_ATTEMPTS) {
+					TaskScheduler.getScheduler().schedule(this::sendNextPartition, RecorderConstant.PARTITION_UPLOAD_RETRY_DELAY, 
+							TimeUnit.MILLISECONDS);
+				} else {
+					finishUpload();
+					onFailure.accept(error);
+				}
+			});
+		}
+		
+		/**
+		 * Gets whether a partition that failed to send with the given error can be sent again
+		 * 
+		 * @param error The error
+		 * @return Whether the error came from a rate limit, a server error or the stream failing to be read
+		 */
+		private boolean isRetryable(Throwable error) {
+			if(error instanceof ErrorResponseException) {
+				var errorResponse = (ErrorResponseException) error;
+				
+				return errorResponse.getResponse().code == 429 || errorResponse.isServerError();
+			}
+			
+			for(Throwable cause = error; cause != null; cause = cause.getCause()) {
+				if(cause instanceof IOException || cause instanceof UncheckedIOException) {
+					return true;
+				}
+			}
+			
+			return false;
+		}
+		
+		private void closePartitionStream(InputStream partitionStream) {
+			try {
+				partitionStream.close();
+			} catch (IOException e) {
+				ErrorLogger.LogException(e);
+			}
+		}
+	}
+}
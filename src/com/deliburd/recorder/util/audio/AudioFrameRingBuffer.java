@@ -0,0 +1,150 @@
+package com.deliburd.recorder.util.audio;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A preallocated single-producer single-consumer ring buffer for PCM audio frames.
+ * Only one thread may offer frames and only one thread may poll frames at any given time.
+ *
+ * @author MelonShooter
+ */
+public class AudioFrameRingBuffer {
+	private final byte[] frameData;
+	private final int[] frameLengths;
+	private final long[] frameTimes;
+	private final int frameSize;
+	private final int capacity;
+	private final int mask;
+
+	/**
+	 * The position of the next frame to be polled. Only written by the consumer.
+	 */
+	private final AtomicLong head;
+
+	/**
+	 * The position of the next frame to be offered. Only written by the producer.
+	 */
+	private final AtomicLong tail;
+	private final AtomicLong droppedFrames;
+	private long lastPolledTime;
+
+	/**
+	 * Creates a ring buffer for PCM audio frames
+	 *
+	 * @param frameSize The maximum size in bytes of a single frame
+	 * @param capacity The amount of frames the buffer can hold. This is rounded up to the next power of 2.
+	 */
+	public AudioFrameRingBuffer(int frameSize, int capacity) {
+		if(frameSize <= 0) {
+			throw new IllegalArgumentException("The frame size must be more than 0.");
+		} else if(capacity <= 0 || capacity > 1 << 30) {
+			throw new IllegalArgumentException("The capacity must be more than 0 and at most 2^30.");
+		}
+
+		int roundedCapacity = Integer.highestOneBit(capacity);
+
+		if(roundedCapacity != capacity) {
+			roundedCapacity <<= 1;
+		}
+
+		this.frameSize = frameSize;
+		this.capacity = roundedCapacity;
+		mask = roundedCapacity - 1;
+		frameData = new byte[roundedCapacity * frameSize];
+		frameLengths = new int[roundedCapacity];
+		frameTimes = new long[roundedCapacity];
+		head = new AtomicLong();
+		tail = new AtomicLong();
+		droppedFrames = new AtomicLong();
+	}
+
+	/**
+	 * Copies a frame into the buffer. Must only be called by the producer.
+	 *
+	 * @param frame The PCM frame to copy
+	 * @param time The time since the epoch in milliseconds that the frame was received
+	 * @return Whether the frame was added. False if the buffer is full, in which case the frame is dropped.
+	 * @throws IllegalArgumentException If the frame is larger than the frame size of the buffer
+	 */
+	public boolean offer(byte[] frame, long time) {
+		if(frame.length > frameSize) {
+			throw new IllegalArgumentException("The frame is larger than the frame size of the buffer.");
+		}
+
+		long currentTail = tail.get();
+
+		if(currentTail - head.get() >= capacity) {
+			droppedFrames.incrementAndGet();
+			return false;
+		}
+
+		int slot = (int) (currentTail & mask);
+
+		System.arraycopy(frame, 0, frameData, slot * frameSize, frame.length);
+		frameLengths[slot] = frame.length;
+		frameTimes[slot] = time;
+		tail.lazySet(currentTail + 1); // Publishes the frame to the consumer
+
+		return true;
+	}
+
+	/**
+	 * Copies the oldest frame out of the buffer and removes it. Must only be called by the consumer.
+	 * The time of the frame can be retrieved afterwards with getLastPolledTime.
+	 *
+	 * @param destination The array to copy the frame into. Must be at least the frame size of the buffer.
+	 * @return The length of the frame in bytes. -1 if the buffer is empty.
+	 */
+	public int poll(byte[] destination) {
+		long currentHead = head.get();
+
+		if(currentHead == tail.get()) {
+			return -1;
+		}
+
+		int slot = (int) (currentHead & mask);
+		int frameLength = frameLengths[slot];
+
+		System.arraycopy(frameData, slot * frameSize, destination, 0, frameLength);
+		lastPolledTime = frameTimes[slot];
+		head.lazySet(currentHead + 1); // Gives the slot back to the producer
+
+		return frameLength;
+	}
+
+	/**
+	 * Gets the time of the last frame polled. Must only be called by the consumer.
+	 *
+	 * @return The time since the epoch in milliseconds that the last polled frame was received
+	 */
+	public long getLastPolledTime() {
+		return lastPolledTime;
+	}
+
+	/**
+	 * Returns whether the buffer has no frames in it
+	 *
+	 * @return Whether the buffer is empty
+	 */
+	public boolean isEmpty() {
+		return head.get() == tail.get();
+	}
+
+	/**
+	 * Gets the maximum size of a frame in this buffer
+	 *
+	 * @return The frame size in bytes
+	 */
+	public int getFrameSize() {
+		return frameSize;
+	}
+
+	/**
+	 * Gets the amount of frames that were dropped because the buffer was full
+	 *
+	 * @return The amount of dropped frames
+	 */
+	public long getDroppedFrameCount() {
+		return droppedFrames.get();
+	}
+}
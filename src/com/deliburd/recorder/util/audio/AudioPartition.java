@@ -0,0 +1,140 @@
+package com.deliburd.recorder.util.audio;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A byte range of a finalized audio file that can be sent as its own complete audio file.
+ * Since only the audio data is shared with the file it came from, each partition gets its own header
+ * that's written before the range.
+ * 
+ * @author MelonShooter
+ *
+ */
+public class AudioPartition {
+	private final byte[] header;
+	private final long offset;
+	private final long length;
+	
+	/**
+	 * Creates an audio partition
+	 * 
+	 * @param header The bytes to write before the range so it becomes a valid audio file
+	 * @param offset The position in the file that the range starts at
+	 * @param length The length of the range in bytes
+	 */
+	AudioPartition(byte[] header, long offset, long length) {
+		this.header = header;
+		this.offset = offset;
+		this.length = length;
+	}
+	
+	/**
+	 * Gets the header written before the range
+	 * 
+	 * @return A copy of the header
+	 */
+	public byte[] getHeader() {
+		return header.clone();
+	}
+	
+	/**
+	 * Gets the position in the file that the range starts at
+	 * 
+	 * @return The position in bytes
+	 */
+	public long getOffset() {
+		return offset;
+	}
+	
+	/**
+	 * Gets the length of the range
+	 * 
+	 * @return The length in bytes
+	 */
+	public long getLength() {
+		return length;
+	}
+	
+	/**
+	 * Gets the size of the audio file this partition makes, including the header
+	 * 
+	 * @return The size in bytes
+	 */
+	public long getSize() {
+		return header.length + length;
+	}
+	
+	/**
+	 * Opens a stream that reads this partition as a complete audio file straight from the source file
+	 * 
+	 * @param source The file this partition was made from
+	 * @return The stream. Closing it closes the source file.
+	 * @throws IOException If the source file can't be opened
+	 */
+	public InputStream openStream(File source) throws IOException {
+		return new PartitionInputStream(FileChannel.open(source.toPath(), StandardOpenOption.READ));
+	}
+	
+	/**
+	 * Reads the header and then the range of the source file
+	 */
+	private class PartitionInputStream extends InputStream {
+		private final FileChannel source;
+		private long position;
+		
+		private PartitionInputStream(FileChannel source) {
+			this.source = source;
+		}
+		
+		@Override
+		public int read() throws IOException {
+			byte[] singleByte = new byte[1];
+			
+			return read(singleByte, 0, 1) == -1 ? -1 : singleByte[0] & 0xFF;
+		}
+		
+		@Override
+		public int read(byte[] bytes, int offset, int byteCount) throws IOException {
+			long bytesLeft = getSize() - position;
+			
+			if(byteCount == 0) {
+				return 0;
+			} else if(bytesLeft <= 0) {
+				return -1;
+			}
+			
+			byteCount = (int) Math.min(byteCount, bytesLeft);
+			
+			if(position < header.length) {
+				byteCount = Math.min(byteCount, header.length - (int) position);
+				System.arraycopy(header, (int) position, bytes, offset, byteCount);
+			} else {
+				long sourcePosition = AudioPartition.this.offset + position - header.length;
+				byteCount = source.read(ByteBuffer.wrap(bytes, offset, byteCount), sourcePosition);
+				
+				if(byteCount == -1) {
+					throw new IOException("Reached the end of the file before the partition was read.");
+				}
+			}
+			
+			position += byteCount;
+			
+			return byteCount;
+		}
+		
+		@Override
+		public int available() {
+			return (int) Math.min(getSize() - position, Integer.MAX_VALUE);
+		}
+		
+		@Override
+		public void close() throws IOException {
+			source.close();
+		}
+	}
+}
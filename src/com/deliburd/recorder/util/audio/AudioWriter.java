@@ -4,6 +4,7 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.List;
 
 import javax.sound.sampled.AudioFormat;
 
@@ -20,6 +21,7 @@ public class AudioWriter implements IAudioFileWriter {
 	private final File baseFolder;
 	private final int separateFileSizeLimit;
 	private final long targetSize;
+	private final boolean isIndexingPartitions;
 	private volatile boolean isFinalized;
 	private IAudioFileWriter currentFile;
 	private long lastSeparateWritePosition;
@@ -40,12 +42,36 @@ public class AudioWriter implements IAudioFileWriter {
 	 * @throws IllegalArgumentException If subFolder isn't a subfolder of baseFolder
 	 */
 	public AudioWriter(File baseFolder, File subfolder, String filePrefix, int partitionSize, long targetSize, AudioCompression compression, AudioFormat format) throws FileNotFoundException {
+		this(baseFolder, subfolder, filePrefix, partitionSize, targetSize, compression, format, false);
+	}
+	
+	/**
+	 * Creates an audio writer which creates separated files according to partitionSize and a merged audio file
+	 * which has a limit of targetSize.
+	 * 
+	 * @param baseFolder The folder to put the merged audio into.
+	 * @param subfolder The sub-folder to put the separated files into
+	 * @param filePrefix The string to prefix all files created by this writer with
+	 * @param partitionSize The size in bytes to partition the files with
+	 * @param targetSize The size in bytes for the whole audio writer.
+	 * @param compression The quality of the audio outputed by the writer.
+	 * @param format The format of the audio
+	 * @param indexPartitions Whether to only write the merged file and split it into partitions once it's finalized.
+	 * The partitions can then be gotten with getPartitions.
+	 * @throws FileNotFoundException If the file cannot be created
+	 * @throws IllegalArgumentException If subFolder isn't a subfolder of baseFolder
+	 */
+	public AudioWriter(File baseFolder, File subfolder, String filePrefix, int partitionSize, long targetSize, AudioCompression compression, 
+			AudioFormat format, boolean indexPartitions) throws FileNotFoundException {
 		if(!subfolder.getParentFile().equals(baseFolder)) {
 			throw new IllegalArgumentException("The given subfolder must be a subfolder of the base folder.");
 		}
 		
 		baseFolder.mkdirs();
-		subfolder.mkdirs();
+		
+		if(!indexPartitions) {
+			subfolder.mkdirs();
+		}
 		
 		this.baseFolder = baseFolder;
 		this.filePrefix = filePrefix;
@@ -57,6 +83,7 @@ public class AudioWriter implements IAudioFileWriter {
 			audioFileExtension = ".mp3";
 		}
 		
+		isIndexingPartitions = indexPartitions;
 		separateFileWriters = new ArrayList<IAudioFileWriter>();
 		audioFormat = format;
 		separateFileSizeLimit = partitionSize;
@@ -68,7 +95,10 @@ public class AudioWriter implements IAudioFileWriter {
 		}
 		
 		mergedFileWriter = createNewAudioFile(true);
-		currentFile = createNewAudioFile();
+		
+		if(!isIndexingPartitions) {
+			currentFile = createNewAudioFile();
+		}
 	}
 	
 	@Override
@@ -79,12 +109,14 @@ public class AudioWriter implements IAudioFileWriter {
 
 		byte[] mergedLeftoverBytes = mergedFileWriter.directWrite(bytes);
 		
-		if(currentFile.isFinalized()) {
-			currentFile = createNewAudioFile();
+		if(!isIndexingPartitions) {
+			if(currentFile.isFinalized()) {
+				currentFile = createNewAudioFile();
+			}
+			
+			writeOverflow(currentFile.directWrite(bytes));
 		}
 		
-		writeOverflow(currentFile.directWrite(bytes));
-		
 		if(mergedFileWriter.isFinalized()) {
 			finalizeAllFiles();
 			//Truncate audio that's in this array from split files starting at lastSeparateWritePosition in lastWrittenFile
@@ -101,12 +133,14 @@ public class AudioWriter implements IAudioFileWriter {
 		
 		byte[] mergedLeftoverBytes = mergedFileWriter.writeSilence(milliseconds);
 		
-		if(currentFile.isFinalized()) {
-			currentFile = createNewAudioFile();
+		if(!isIndexingPartitions) {
+			if(currentFile.isFinalized()) {
+				currentFile = createNewAudioFile();
+			}
+			
+			writeOverflow(currentFile.writeSilence(milliseconds));
 		}
 		
-		writeOverflow(currentFile.writeSilence(milliseconds));
-		
 		if(mergedFileWriter.isFinalized()) {
 			finalizeAllFiles();
 			//Truncate audio that's in this array from split files starting at lastSeparateWritePosition in lastWrittenFile
@@ -123,12 +157,14 @@ public class AudioWriter implements IAudioFileWriter {
 		
 		byte[] mergedLeftoverBytes = mergedFileWriter.writePCMAudio(bytes);
 		
-		if(currentFile.isFinalized()) {
-			currentFile = createNewAudioFile();
+		if(!isIndexingPartitions) {
+			if(currentFile.isFinalized()) {
+				currentFile = createNewAudioFile();
+			}
+			
+			writeOverflow(currentFile.writePCMAudio(bytes));
 		}
 		
-		writeOverflow(currentFile.writePCMAudio(bytes));
-		
 		if(mergedFileWriter.isFinalized()) {
 			finalizeAllFiles();
 			//Truncate audio that's in this array from split files starting at lastSeparateWritePosition in lastWrittenFile
@@ -189,18 +225,19 @@ public class AudioWriter implements IAudioFileWriter {
 	}
 	
 	/**
-	 * Gets an array of the underlying separate files for this audio writer.
+	 * Gets the partitions of the merged file that the separated files are made of when indexing partitions
 	 * 
-	 * @return The array of separate files
+	 * @return The partitions in order
+	 * @throws IllegalStateException If the writer hasn't been finalized yet or isn't indexing partitions
 	 */
-	public File[] getSeparateFiles() {
-		File[] files = new File[separateFileWriters.size()];
-		
-		for(int i = 0; i < files.length; i++) {
-			files[i] = separateFileWriters.get(i).getFile();
+	public List<AudioPartition> getPartitions() {
+		if(!isIndexingPartitions) {
+			throw new IllegalStateException("This audio writer doesn't index partitions.");
+		} else if(!isFinalized) {
+			throw new IllegalStateException("The audio file must be finalized before it can be partitioned.");
 		}
 		
-		return files;
+		return ((IPartitionableAudioFileWriter) mergedFileWriter).getPartitions(separateFileSizeLimit);
 	}
 	
 	/**
@@ -221,17 +258,42 @@ public class AudioWriter implements IAudioFileWriter {
 	 * @throws FileNotFoundException If the file cannot be created
 	 */
 	private IAudioFileWriter createNewAudioFile(boolean isMergedFile) throws FileNotFoundException {
+		long fileSize = isMergedFile ? targetSize : separateFileSizeLimit;
+		File newAudioFile = getNewAudioFile(isMergedFile);
+		
+		IAudioFileWriter newAudioFileWriter;
+		
+		if(audioFileExtension.equals(".mp3")) {
+			newAudioFileWriter = new MP3FileWriter(newAudioFile, audioFormat, fileSize, true);
+		} else if(fileSize > 0 && fileSize <= Integer.MAX_VALUE) {
+			newAudioFileWriter = new MappedWaveFileWriter(newAudioFile, audioFormat, fileSize);
+		} else {
+			// Too big to map, like when the size is infinite
+			newAudioFileWriter = new WaveFileWriter(newAudioFile, audioFormat, fileSize);
+		}
+		
+		if(!isMergedFile) {
+			separateFileWriters.add(newAudioFileWriter);
+		}
+
+		return newAudioFileWriter;
+	}
+	
+	/**
+	 * Gets the next file to write audio into
+	 * 
+	 * @param isMergedFile Whether the file is the merged one or not
+	 * @return The file
+	 */
+	private File getNewAudioFile(boolean isMergedFile) {
 		File baseDirectory;
 		StringBuilder audioFilePath = new StringBuilder(baseFolder.getAbsolutePath());
-		long fileSize;
 		audioFilePath.append(File.separator);
 		
 		if(isMergedFile) {
 			baseDirectory = baseFolder;
-			fileSize = targetSize;
 		} else {
 			baseDirectory = subfolder;
-			fileSize = separateFileSizeLimit;
 			audioFilePath.append(subfolder.getName())
 					.append(File.separator);
 		}
@@ -241,20 +303,7 @@ public class AudioWriter implements IAudioFileWriter {
 				.append(baseDirectory.listFiles().length)
 				.append(audioFileExtension);
 		
-		IAudioFileWriter newAudioFileWriter;
-		File newAudioFile = new File(audioFilePath.toString());
-		
-		if(audioFileExtension.equals(".mp3")) {
-			newAudioFileWriter = new MP3FileWriter(newAudioFile, audioFormat, fileSize, true);
-		} else {
-			newAudioFileWriter = new WaveFileWriter(newAudioFile, audioFormat, fileSize);
-		}
-		
-		if(!isMergedFile) {
-			separateFileWriters.add(newAudioFileWriter);
-		}
-
-		return newAudioFileWriter;
+		return new File(audioFilePath.toString());
 	}
 	
 	/**
@@ -268,7 +317,7 @@ public class AudioWriter implements IAudioFileWriter {
 			mergedFileWriter.finalizeFile();
 		}
 		
-		if(currentFile.isFinalized()) {
+		if(isIndexingPartitions || currentFile.isFinalized()) {
 			return;
 		}
 		
@@ -304,7 +353,8 @@ public class AudioWriter implements IAudioFileWriter {
 			lastSeparateWritePosition = currentFile.getFileLength();
 		}
 		
-		while(writtenBytes != null) {
+		// An empty array means the file filled up, but nothing is left over to write into a new file
+		while(writtenBytes != null && writtenBytes.length > 0) {
 			currentFile = createNewAudioFile();
 			
 			if(setFilePosition) {
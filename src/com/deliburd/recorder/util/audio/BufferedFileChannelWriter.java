@@ -0,0 +1,210 @@
+package com.deliburd.recorder.util.audio;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Appends to a file through a FileChannel with a direct write-behind buffer, so small writes don't each cost a syscall.
+ * Also supports positional writes for patching headers and reading back data that has already been written.
+ * This isn't thread safe.
+ *
+ * @author MelonShooter
+ */
+public class BufferedFileChannelWriter implements AutoCloseable {
+	/**
+	 * The default size of the write-behind buffer in bytes
+	 */
+	public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+	private final FileChannel channel;
+	private final ByteBuffer buffer;
+	private final int flushThreshold;
+
+	/**
+	 * The amount of bytes that have been flushed into the channel
+	 */
+	private long flushedLength;
+
+	/**
+	 * Creates a buffered writer with the default buffer size that flushes when the buffer is full
+	 *
+	 * @param file The file to write to. It's created if it doesn't exist and emptied if it does.
+	 * @throws FileNotFoundException If the file cannot be opened
+	 */
+	public BufferedFileChannelWriter(File file) throws FileNotFoundException {
+		this(file, DEFAULT_BUFFER_SIZE, DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * Creates a buffered writer
+	 *
+	 * @param file The file to write to. It's created if it doesn't exist and emptied if it does.
+	 * @param bufferSize The size of the write-behind buffer in bytes
+	 * @param flushThreshold The amount of buffered bytes at which the buffer is flushed. Can't be more than the buffer size.
+	 * @throws FileNotFoundException If the file cannot be opened
+	 * @throws IllegalArgumentException If the buffer size is less than 1 or the flush threshold isn't between 1 and the buffer size
+	 */
+	public BufferedFileChannelWriter(File file, int bufferSize, int flushThreshold) throws FileNotFoundException {
+		if(bufferSize < 1) {
+			throw new IllegalArgumentException("The buffer size must be at least 1.");
+		} else if(flushThreshold < 1 || flushThreshold > bufferSize) {
+			throw new IllegalArgumentException("The flush threshold must be between 1 and the buffer size.");
+		}
+
+		try {
+			channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+					StandardOpenOption.READ, StandardOpenOption.WRITE);
+		} catch (IOException e) {
+			var exception = new FileNotFoundException("Couldn't open " + file + ": " + e.getMessage());
+			exception.initCause(e);
+			throw exception;
+		}
+
+		buffer = ByteBuffer.allocateDirect(bufferSize);
+		this.flushThreshold = flushThreshold;
+	}
+
+	/**
+	 * Appends bytes to the end of the file
+	 *
+	 * @param bytes The bytes to append
+	 * @throws IOException If an IOException occurs
+	 */
+	public void write(byte[] bytes) throws IOException {
+		write(bytes, 0, bytes.length);
+	}
+
+	/**
+	 * Appends bytes to the end of the file
+	 *
+	 * @param bytes The array containing the bytes to append
+	 * @param offset The offset in the array to start at
+	 * @param length The amount of bytes to append
+	 * @throws IOException If an IOException occurs
+	 */
+	public void write(byte[] bytes, int offset, int length) throws IOException {
+		if(length > buffer.remaining()) {
+			flush();
+		}
+
+		if(length > buffer.capacity()) { // Too big to be worth buffering
+			writeFully(ByteBuffer.wrap(bytes, offset, length), flushedLength);
+			flushedLength += length;
+			return;
+		}
+
+		buffer.put(bytes, offset, length);
+
+		if(buffer.position() >= flushThreshold) {
+			flush();
+		}
+	}
+
+	/**
+	 * Overwrites bytes that have already been appended, like a header. This can't extend the file.
+	 *
+	 * @param position The position in the file to write at
+	 * @param bytes The bytes to write
+	 * @throws IOException If an IOException occurs
+	 * @throws IllegalArgumentException If the bytes would go past the end of the file
+	 */
+	public void writeAt(long position, byte[] bytes) throws IOException {
+		if(position < 0 || position + bytes.length > length()) {
+			throw new IllegalArgumentException("Positional writes must be within the file.");
+		}
+
+		int flushedByteCount = (int) Math.max(0, Math.min(bytes.length, flushedLength - position));
+
+		if(flushedByteCount > 0) {
+			writeFully(ByteBuffer.wrap(bytes, 0, flushedByteCount), position);
+		}
+
+		// Patches the part that's still buffered in place
+		for(int i = flushedByteCount; i < bytes.length; i++) {
+			buffer.put((int) (position + i - flushedLength), bytes[i]);
+		}
+	}
+
+	/**
+	 * Reads bytes that have already been appended
+	 *
+	 * @param position The position in the file to read from
+	 * @param destination The array to fill
+	 * @throws IOException If an IOException occurs or there aren't enough bytes in the file
+	 */
+	public void readAt(long position, byte[] destination) throws IOException {
+		flush();
+
+		ByteBuffer destinationBuffer = ByteBuffer.wrap(destination);
+
+		while(destinationBuffer.hasRemaining()) {
+			if(channel.read(destinationBuffer, position + destinationBuffer.position()) < 0) {
+				throw new IOException("Reached the end of the file before the array was filled.");
+			}
+		}
+	}
+
+	/**
+	 * Cuts off the end of the file
+	 *
+	 * @param size The new size of the file in bytes
+	 * @throws IOException If an IOException occurs
+	 */
+	public void truncate(long size) throws IOException {
+		flush();
+		channel.truncate(size);
+		flushedLength = Math.min(flushedLength, size);
+	}
+
+	/**
+	 * Gets the length of the file including bytes that haven't been flushed yet
+	 *
+	 * @return The length in bytes
+	 */
+	public long length() {
+		return flushedLength + buffer.position();
+	}
+
+	/**
+	 * Writes all of the buffered bytes into the file
+	 *
+	 * @throws IOException If an IOException occurs
+	 */
+	public void flush() throws IOException {
+		if(buffer.position() == 0) {
+			return;
+		}
+
+		buffer.flip();
+		int byteCount = buffer.remaining();
+		writeFully(buffer, flushedLength);
+		flushedLength += byteCount;
+		buffer.clear();
+	}
+
+	/**
+	 * Flushes the buffer and closes the file
+	 *
+	 * @throws IOException If an IOException occurs
+	 */
+	@Override
+	public void close() throws IOException {
+		if(!channel.isOpen()) {
+			return;
+		}
+
+		try(channel) {
+			flush();
+		}
+	}
+
+	private void writeFully(ByteBuffer source, long position) throws IOException {
+		while(source.hasRemaining()) {
+			position += channel.write(source, position);
+		}
+	}
+}
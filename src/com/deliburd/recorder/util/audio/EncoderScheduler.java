@@ -0,0 +1,140 @@
+package com.deliburd.recorder.util.audio;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinPool.ForkJoinWorkerThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.deliburd.util.ErrorLogger;
+
+/**
+ * Spreads the encoding work of every active recording over a fixed work-stealing pool sized to the amount of cores.
+ * Each recording gets its own EncoderQueue, which guarantees that its tasks run in order and never concurrently.
+ *
+ * @author MelonShooter
+ */
+public class EncoderScheduler {
+	/**
+	 * The singleton instance of this class
+	 */
+	private static final EncoderScheduler scheduler = new EncoderScheduler(Runtime.getRuntime().availableProcessors());
+
+	private final ForkJoinPool encoderPool;
+
+	private EncoderScheduler(int threadCount) {
+		ForkJoinWorkerThreadFactory threadFactory = pool -> {
+			var thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+			thread.setName("Audio encoder " + thread.getPoolIndex());
+			thread.setDaemon(true);
+			return thread;
+		};
+
+		// Async mode since the tasks are never joined and are submitted like events
+		encoderPool = new ForkJoinPool(threadCount, threadFactory, null, true);
+	}
+
+	/**
+	 * Returns the singleton instance of this class
+	 *
+	 * @return The singleton instance of this class
+	 */
+	public static EncoderScheduler getScheduler() {
+		return scheduler;
+	}
+
+	/**
+	 * Creates a queue for a single recording
+	 *
+	 * @param drainTask The task to run whenever a drain is requested, like encoding all of the buffered audio
+	 * @return The queue
+	 */
+	public EncoderQueue createQueue(Runnable drainTask) {
+		return new EncoderQueue(drainTask);
+	}
+
+	/**
+	 * Gets the amount of threads in the encoder pool
+	 *
+	 * @return The amount of threads
+	 */
+	public int getThreadCount() {
+		return encoderPool.getParallelism();
+	}
+
+	/**
+	 * Gets an estimate of how many tasks were stolen by threads other than the one they were queued on
+	 *
+	 * @return The amount of stolen tasks
+	 */
+	public long getStealCount() {
+		return encoderPool.getStealCount();
+	}
+
+	/**
+	 * A queue of tasks for a single recording.
+	 * The tasks are run on the encoder pool one at a time in the order they were added.
+	 *
+	 * @author MelonShooter
+	 */
+	public class EncoderQueue {
+		private final Runnable drainTask;
+		private final ConcurrentLinkedQueue<Runnable> tasks;
+		private final AtomicBoolean isDrainRequested;
+		private final AtomicBoolean isScheduled;
+
+		private EncoderQueue(Runnable drainTask) {
+			this.drainTask = drainTask;
+			tasks = new ConcurrentLinkedQueue<Runnable>();
+			isDrainRequested = new AtomicBoolean();
+			isScheduled = new AtomicBoolean();
+		}
+
+		/**
+		 * Requests the drain task to be run. Requests made before the drain task starts running are coalesced into one run.
+		 */
+		public void requestDrain() {
+			if(!isDrainRequested.getAndSet(true)) {
+				schedule();
+			}
+		}
+
+		/**
+		 * Queues a task to run after every task queued before it
+		 *
+		 * @param task The task
+		 */
+		public void execute(Runnable task) {
+			tasks.add(task);
+			schedule();
+		}
+
+		private void schedule() {
+			if(isScheduled.compareAndSet(false, true)) {
+				encoderPool.execute(this::runTasks);
+			}
+		}
+
+		private void runTasks() {
+			try {
+				if(isDrainRequested.getAndSet(false)) {
+					drainTask.run();
+				}
+
+				Runnable task;
+
+				while((task = tasks.poll()) != null) {
+					task.run();
+				}
+			} catch(Exception e) {
+				ErrorLogger.LogException(e);
+			} finally {
+				isScheduled.set(false);
+
+				// Goes to the back of the pool's queue so other recordings get their turn
+				if(isDrainRequested.get() || !tasks.isEmpty()) {
+					schedule();
+				}
+			}
+		}
+	}
+}
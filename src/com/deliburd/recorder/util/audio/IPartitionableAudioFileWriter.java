@@ -0,0 +1,22 @@
+package com.deliburd.recorder.util.audio;
+
+import java.util.List;
+
+/**
+ * An interface for audio file writers whose finalized file can be split into smaller complete audio files
+ * without writing the audio again.
+ * 
+ * @author MelonShooter
+ *
+ */
+public interface IPartitionableAudioFileWriter extends IAudioFileWriter {
+	/**
+	 * Splits the finalized file into partitions that are each a complete audio file.
+	 * 
+	 * @param partitionSize The maximum size in bytes of each partition, including its header.
+	 * A partition will still hold the smallest unit of audio if this is too small for it.
+	 * @return The partitions in order. Empty if the file has no audio.
+	 * @throws IllegalStateException If the file hasn't been finalized yet
+	 */
+	public List<AudioPartition> getPartitions(long partitionSize);
+}
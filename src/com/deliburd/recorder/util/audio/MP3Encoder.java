@@ -64,6 +64,12 @@ class MP3Encoder implements AutoCloseable {
 	private VbrMode effVbr;
 	private MPEGMode effChMode;
 	private int effSampleRate;
+	
+	/**
+	 * Scratch buffers reused between calls so encoding doesn't allocate. They only grow when a larger block is encoded.
+	 */
+	private int[] sampleBuffer = new int[0];
+	private float[][] channelBuffers = new float[2][0];
 
 	/**
 	 * Initializes the encoder, overriding any parameters set in the audio format's
@@ -82,6 +88,7 @@ class MP3Encoder implements AutoCloseable {
 	private void initParams(AudioFormat sourceFormat) {
 		sampleSizeInBits = sourceFormat.getSampleSizeInBits();
 		byteOrder = sourceFormat.isBigEndian() ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN;
+		ensureScratchCapacity(DEFAULT_PCM_BUFFER_SIZE / Math.max(1, sampleSizeInBits >> 3), sourceFormat.getChannels());
 		// simple check that bitrate is not too high for MPEG2 and MPEG2.5
 		// todo: exception ?
 		if (sourceFormat.getSampleRate() < 32000 && bitRate > 160) {
@@ -150,10 +157,58 @@ class MP3Encoder implements AutoCloseable {
 		return getPCMBufferSize() / 2 + 1024;
 	}
 
+	/**
+	 * Grows the scratch buffers if they can't hold the given amount of samples
+	 * 
+	 * @param sampleCount The amount of samples across all channels
+	 * @param channelCount The amount of channels
+	 */
+	private void ensureScratchCapacity(int sampleCount, int channelCount) {
+		if (sampleBuffer.length < sampleCount) {
+			sampleBuffer = new int[sampleCount];
+		}
+		
+		int samplesPerChannel = sampleCount / Math.max(1, channelCount);
+		
+		if (channelBuffers[0].length < samplesPerChannel) {
+			channelBuffers = new float[2][samplesPerChannel];
+		}
+	}
+	
+	/**
+	 * Deinterleaves 16-bit stereo PCM straight into the channel buffers without going through the sample buffer
+	 * 
+	 * @return The amount of samples per channel
+	 */
+	private int deinterleave16BitStereo(final byte[] pcm, final int pcmOffset, final int length) {
+		int samplesPerChannel = length >> 2;
+		float[] left = channelBuffers[0];
+		float[] right = channelBuffers[1];
+		// The offsets of the high and low bytes of each sample
+		int high = byteOrder == ByteOrder.LITTLE_ENDIAN ? 1 : 0;
+		int low = 1 - high;
+		
+		for (int i = 0, position = pcmOffset; i < samplesPerChannel; i++, position += 4) {
+			left[i] = pcm[position + high] << 24 | (pcm[position + low] & 0xff) << 16;
+			right[i] = pcm[position + 2 + high] << 24 | (pcm[position + 2 + low] & 0xff) << 16;
+		}
+		
+		return samplesPerChannel;
+	}
+
 	private int doEncodeBuffer(final byte[] pcm, final int pcmOffset, final int length, final byte[] encoded) {
 		int bytesPerSample = sampleSizeInBits >> 3;
 		int samplesRead = length / bytesPerSample;
-		int[] sampleBuffer = new int[samplesRead];
+		int channelCount = lame.getFlags().getInNumChannels();
+		
+		ensureScratchCapacity(samplesRead, channelCount);
+		
+		if (bytesPerSample == 2 && channelCount == 2) {
+			int samplesPerChannel = deinterleave16BitStereo(pcm, pcmOffset, length);
+			return lame.encodeBuffer(channelBuffers[0], channelBuffers[1], samplesPerChannel, encoded);
+		}
+		
+		int[] sampleBuffer = this.sampleBuffer;
 
 		int sampleBufferPos = samplesRead;
 		if (byteOrder == ByteOrder.LITTLE_ENDIAN) {
@@ -192,15 +247,15 @@ class MP3Encoder implements AutoCloseable {
 		}
 
 		sampleBufferPos = samplesRead;
-		samplesRead /= lame.getFlags().getInNumChannels();
+		samplesRead /= channelCount;
 
-		float buffer[][] = new float[2][samplesRead];
-		if (lame.getFlags().getInNumChannels() == 2) {
+		float buffer[][] = channelBuffers;
+		if (channelCount == 2) {
 			for (int i = samplesRead; --i >= 0;) {
 				buffer[1][i] = sampleBuffer[--sampleBufferPos];
 				buffer[0][i] = sampleBuffer[--sampleBufferPos];
 			}
-		} else if (lame.getFlags().getInNumChannels() == 1) {
+		} else if (channelCount == 1) {
 			Arrays.fill(buffer[1], 0, samplesRead, 0);
 			for (int i = samplesRead; --i >= 0;) {
 				buffer[0][i] = buffer[1][i] = sampleBuffer[--sampleBufferPos];
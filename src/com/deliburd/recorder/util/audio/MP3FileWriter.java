@@ -1,17 +1,15 @@
 package com.deliburd.recorder.util.audio;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.DataInputStream;
-import java.io.EOFException;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import javax.sound.sampled.AudioFormat;
@@ -24,18 +22,31 @@ import com.deliburd.util.ArrayUtil;
 import com.deliburd.util.BitUtil;
 import com.deliburd.util.ErrorLogger;
 
-public class MP3FileWriter implements IAudioFileWriter {
+public class MP3FileWriter implements IPartitionableAudioFileWriter {
 	private static final Map<Integer, Integer> bitrateMap;
-	private final short MP3_HEADER = (short) 0xFFFB;
-	private final int SAMPLES_PER_FRAME = 1152;
+	private static final int[] sampleRates = { 44100, 48000, 32000 };
+	private static final short MP3_HEADER = (short) 0xFFFB;
+	private static final int SAMPLES_PER_FRAME = 1152;
+	private static final byte[] XING_TAG = { 'X', 'i', 'n', 'g' };
 	private final File file;
-	private final RandomAccessFile mp3FileStream;
+	private final BufferedFileChannelWriter mp3FileWriter;
 	private final AudioFormat audioFormat;
 	private final MP3Encoder mp3Encoder;
 	private final LameGlobalFlags globalFlags;
 	private final byte[] mp3Buffer;
+	
+	/**
+	 * Collects the output of the encoder for a single write. Reused between writes and only grown when needed.
+	 */
+	private byte[] encodedBuffer;
 	private final long creationTime;
 	private final int maxMP3FrameSize;
+	private final MP3FrameIndex frameIndex;
+	
+	/**
+	 * A copy of the first frame before the Xing header was written into it, used to start partitions with
+	 */
+	private byte[] xingFrame;
 	private volatile boolean isFinalized = false;
 	private long lastWriteTime;
 	private long targetSize;
@@ -108,10 +119,12 @@ public class MP3FileWriter implements IAudioFileWriter {
 		}
 		
 		file = fileToWrite;
-		mp3FileStream = new RandomAccessFile(file, "rw");
+		mp3FileWriter = new BufferedFileChannelWriter(file);
+		frameIndex = new MP3FrameIndex();
 		mp3Encoder = new MP3Encoder(format, 256, channelMode, Lame.QUALITY_HIGHEST, true);
 		globalFlags = mp3Encoder.getGlobalFlags();
 		mp3Buffer = new byte[mp3Encoder.getPCMBufferSize()];
+		encodedBuffer = new byte[mp3Encoder.getMP3BufferSize()];
 		audioFormat = format;
 		maxMP3FrameSize = SAMPLES_PER_FRAME * 40000 / 48000; // Samples per frame * Max bitrate (in bytes) / Sample rate = Max frame size
 		lastWriteTime = Instant.now().toEpochMilli();
@@ -135,24 +148,29 @@ public class MP3FileWriter implements IAudioFileWriter {
 			throw new IllegalStateException("Failed to write to MP3 file. The audio file has already been finalized.");
 		}
 
-		ByteArrayOutputStream bytesEncoded = null;
-		int bytesToTransfer = Math.min(mp3Buffer.length, bytes.length);
-		int bytesWritten;
+		int encodedLength = 0;
 		int currentPcmPosition = 0;
 
-		while (0 < (bytesWritten = mp3Encoder.encodeBuffer(bytes, currentPcmPosition, bytesToTransfer, mp3Buffer))) {
+		while (currentPcmPosition < bytes.length) {
+			int bytesToTransfer = Math.min(mp3Buffer.length, bytes.length - currentPcmPosition);
+			int bytesWritten = mp3Encoder.encodeBuffer(bytes, currentPcmPosition, bytesToTransfer, mp3Buffer);
 			currentPcmPosition += bytesToTransfer;
-			bytesToTransfer = Math.min(mp3Buffer.length, bytes.length - currentPcmPosition);
-
-			if(bytesEncoded == null) {
-				bytesEncoded = new ByteArrayOutputStream(bytesToTransfer);
+			
+			if(bytesWritten == 0) {
+				continue;
+			}
+			
+			if(encodedLength + bytesWritten > encodedBuffer.length) {
+				encodedBuffer = Arrays.copyOf(encodedBuffer, Math.max(encodedBuffer.length * 2, encodedLength + bytesWritten));
 			}
 			
-			bytesEncoded.write(mp3Buffer, 0, bytesWritten);
+			System.arraycopy(mp3Buffer, 0, encodedBuffer, encodedLength, bytesWritten);
+			encodedLength += bytesWritten;
 		}
 		
-		if(bytesEncoded != null) {
-			return directWrite(bytesEncoded.toByteArray(), false);
+		// Most 20 millisecond packets don't complete a frame, so nothing gets allocated for them
+		if(encodedLength > 0) {
+			return directWrite(Arrays.copyOf(encodedBuffer, encodedLength), false);
 		} else {
 			return null;
 		}
@@ -194,11 +212,7 @@ public class MP3FileWriter implements IAudioFileWriter {
 	
 	@Override
 	public long getFileLength() throws IOException {
-		if(isFinalized) {
-			return file.length();
-		} else {
-			return mp3FileStream.length();
-		}
+		return frameIndex.getLength();
 	}
 	
 	@Override
@@ -211,8 +225,41 @@ public class MP3FileWriter implements IAudioFileWriter {
 		return targetSize;
 	}
 	
+	@Override
+	public List<AudioPartition> getPartitions(long partitionSize) {
+		if(!isFinalized) {
+			throw new IllegalStateException("The MP3 file must be finalized before it can be partitioned.");
+		}
+		
+		int frameCount = frameIndex.getFrameCount();
+		
+		// Nothing was encoded, or there's nothing besides the frame with the Xing header
+		if(xingFrame == null || frameCount <= 1) {
+			return List.of();
+		}
+		
+		var partitions = new ArrayList<AudioPartition>();
+		int xingOffset = getXingHeaderOffset(xingFrame);
+		int firstFrame = 1; // The first frame holds the Xing header of the whole file
+		
+		while(firstFrame < frameCount) {
+			long startOffset = frameIndex.getFrameOffset(firstFrame);
+			int endFrame = Math.max(frameIndex.getFrameCountEndingBy(startOffset + partitionSize - xingFrame.length), firstFrame + 1);
+			long length = frameIndex.getFrameOffset(endFrame) - startOffset;
+			byte[] partitionXingFrame = xingFrame.clone();
+			byte[] xingHeader = createXingHeader(endFrame - firstFrame, xingFrame.length + length);
+			
+			System.arraycopy(xingHeader, 0, partitionXingFrame, xingOffset, xingHeader.length);
+			partitions.add(new AudioPartition(partitionXingFrame, startOffset, length));
+			firstFrame = endFrame;
+		}
+		
+		return partitions;
+	}
+	
 	/**
 	 * Finalizes the file, either returning extra or all bytes produced from the finalization.
+	 * If all bytes are returned, the caller is responsible for writing them, adding the Xing header and closing the file.
 	 * 
 	 * @param returnAllBytes Whether to not write anything to the file and just return all of the bytes.
 	 * @return The converted bytes that couldn't be written into the file because the limit was reached.
@@ -230,7 +277,7 @@ public class MP3FileWriter implements IAudioFileWriter {
 		try(mp3Encoder) {
 			if(!returnAllBytes) {
 				byte[][] bytes = new byte[2][];
-				bytes[1] = encoderBuffer.clone();
+				bytes[1] = encoderBuffer;
 				int byteCountToWrite = calculateSpaceLeft(bytes);
 				
 				if(bytes[0] != null) {
@@ -239,13 +286,11 @@ public class MP3FileWriter implements IAudioFileWriter {
 					encoderBuffer = bytes[1];
 				}
 				
-				byte[] bytesToWrite = new byte[byteCountToWrite];
-				encoderBuffer = ArrayUtil.splitByteArray(encoderBuffer, bytesToWrite);
-				mp3FileStream.write(bytesToWrite);
+				writeFrames(encoderBuffer, byteCountToWrite);
+				encoderBuffer = Arrays.copyOfRange(encoderBuffer, byteCountToWrite, encoderBuffer.length);
 				lastWriteTime = Instant.now().toEpochMilli();
+				addXingHeader();
 			}
-
-			addXingHeader();
 		} catch (IOException e) {
 			ErrorLogger.LogException(e);
 		} catch(Exception e) {
@@ -254,7 +299,7 @@ public class MP3FileWriter implements IAudioFileWriter {
 		
 		try {
 			if(!returnAllBytes) {
-				mp3FileStream.close();
+				mp3FileWriter.close();
 			}
 		} catch (IOException e) {
 			ErrorLogger.LogException(e);
@@ -283,33 +328,27 @@ public class MP3FileWriter implements IAudioFileWriter {
 	 * If an invalid array is given, the behavior is undefined.
 	 * 
 	 * @param bytes The bytes in the audio file's format.
-	 * @param addToFrameCount Whether to add to the frame count or not
+	 * @param isExternal Whether the bytes came from outside of this writer's encoder
 	 * @return The converted bytes that couldn't be written into the file. Returns null if the file isn't full
 	 * @throws IOException If an IOException occurs
 	 * @throws IllegalStateException The file has already been finalized.
 	 */
-	private byte[] directWrite(byte[] bytes, boolean addToFrameCount) throws IOException {
+	private byte[] directWrite(byte[] bytes, boolean isExternal) throws IOException {
 		if(isFinalized) {
 			throw new IllegalStateException("Failed to write to MP3 file. The audio file has already been finalized.");
 		}
 		
-		// If addToFrameCount is true, then this direct write came externally, so we need to add the XING header ourselves.
-		if(addToFrameCount && mp3FileStream.length() == 0) {
+		// If the bytes came externally, we need to add the frame for the XING header ourselves.
+		if(isExternal && frameIndex.getLength() == 0) {
 			writePCMAudio(new byte[audioFormat.getSampleSizeInBits() / 8 * audioFormat.getChannels()]);
 		}
 		
-		long extraBytesToBeWritten = bytes.length - (mp3FileStream.length() - mp3FileStream.getFilePointer());
-		
-		if(extraBytesToBeWritten < 0) {
-			extraBytesToBeWritten = 0;
-		}
-		
 		updateReservoirFrameCount();
 
-		long potentialFileSize = mp3FileStream.length() + extraBytesToBeWritten + getMaxSizeOfReservoir();
-		int frameCount = globalFlags.frameNum + reservoirFrameCount;
+		long potentialFileSize = frameIndex.getLength() + bytes.length + getMaxSizeOfReservoir();
+		int frameCount = frameIndex.getFrameCount() + reservoirFrameCount;
 		
-		if(frameCount < 10 && addToFrameCount) {
+		if(frameCount < 10) {
 			frameCount += getFrameCount(bytes);
 		}
 		
@@ -317,33 +356,27 @@ public class MP3FileWriter implements IAudioFileWriter {
 		
 		if(potentialFileSize > targetSize && frameCount >= 10) {
 			byte[] finalBytes = finalizeFile(true);
-			int oldBytesLength = bytes.length;
-			// Merge the finalized bytes with the inputted byte array.
-			bytes = Arrays.copyOf(bytes, bytes.length + finalBytes.length);
 			
-			for(int i = oldBytesLength; i < bytes.length; i++) {
-				bytes[i] = finalBytes[i - oldBytesLength];
+			// Merge the finalized bytes with the inputted byte array.
+			if(finalBytes != null) {
+				bytes = ArrayUtil.mergeByteArrays(bytes, finalBytes);
 			}
 			
-			long frameOffset = findFrameOffset(10);
+			int audioFrameCount = Math.max(frameIndex.getFrameCount() - 1, 0); // The first frame holds the Xing header
 			int spaceLeft;
 			
-			if(frameOffset < 10) {
-				int frameSize = getFrameSize(10 - frameOffset, bytes);
-				
-				if(frameSize < 10 - frameOffset) { // This should never happen
-					throw new IllegalStateException("Not enough frames. This shouldn't ever happen.");
-				}
-				
-				targetSize = frameSize + mp3FileStream.length();
-				spaceLeft = frameSize;
+			if(audioFrameCount < 10) {
+				spaceLeft = getFramesLength(10 - audioFrameCount, bytes);
+				targetSize = frameIndex.getLength() + spaceLeft;
 			} else {
-				if(frameOffset > targetSize) {
-					targetSize = frameOffset;
+				long minimumFileSize = frameIndex.getFrameOffset(11); // The end of the 10th frame after the Xing header
+				
+				if(minimumFileSize > targetSize) {
+					targetSize = minimumFileSize;
 				}
 				
 				var bytesArray = new byte[2][];
-				bytesArray[1] = bytes.clone();
+				bytesArray[1] = bytes;
 				
 				spaceLeft = calculateSpaceLeft(bytesArray);
 
@@ -354,22 +387,17 @@ public class MP3FileWriter implements IAudioFileWriter {
 				}
 			}
 			
-			byte[] bytesToWrite = new byte[spaceLeft];
-			
-			leftoverBytes = ArrayUtil.splitByteArray(bytes, bytesToWrite);
-			bytes = bytesToWrite;
-		}
-		
-		mp3FileStream.write(bytes);
-		
-		if(addToFrameCount && bytes.length > 0) {
-			globalFlags.frameNum += getFrameCount(bytes);
+			leftoverBytes = Arrays.copyOfRange(bytes, spaceLeft, bytes.length);
+			writeFrames(bytes, spaceLeft);
+		} else {
+			writeFrames(bytes, bytes.length);
 		}
 
 		lastWriteTime = Instant.now().toEpochMilli();
 		
 		if(leftoverBytes != null) {
-			mp3FileStream.close();
+			addXingHeader();
+			mp3FileWriter.close();
 			
 			if(leftoverBytes.length == 0) {
 				return null;
@@ -378,222 +406,124 @@ public class MP3FileWriter implements IAudioFileWriter {
 		
 		return leftoverBytes;
 	}
+	
+	/**
+	 * Appends frames to the file and indexes them
+	 * 
+	 * @param bytes The frames
+	 * @param byteCount The amount of bytes from the start of the array to write
+	 * @throws IOException If an IOException occurs
+	 */
+	private void writeFrames(byte[] bytes, int byteCount) throws IOException {
+		if(byteCount == 0) {
+			return;
+		}
+		
+		if(xingFrame == null) {
+			xingFrame = Arrays.copyOf(bytes, getFrameLength(bytes, 0));
+		}
+		
+		mp3FileWriter.write(bytes, 0, byteCount);
+		frameIndex.addFrames(bytes, 0, byteCount);
+	}
 
 	/**
 	 * Calculates the space left in the file rounding down to the nearest frame. If necessary, the byte array
-	 * and the file will be modified to fit the target size. It also adjusts the frame count.
+	 * and the file will be modified to fit the target size.
 	 * @param bytes A byte array containing 2 other byte arrays. The second byte array contains the data.
 	 * The first byte array are any values that need to be prepended.
 	 * @return The space left.
 	 * @throws IOException  If an IOException occurs
 	 */
 	private int calculateSpaceLeft(byte[][] bytesArray) throws IOException {
-		int incompleteFrameSize = getFrameSize(0, bytesArray[1]);
+		long fileLength = frameIndex.getLength();
 		
-		// Insert an incomplete frame if it exists.
-		if(incompleteFrameSize > 0) {
-			byte[] incompleteFrame = new byte[getFrameSize(0, bytesArray[1])];
-			bytesArray[1] = ArrayUtil.splitByteArray(bytesArray[1], incompleteFrame);
-			mp3FileStream.write(incompleteFrame);
-		}
-		
-		if(mp3FileStream.length() > targetSize) { // It's already over the limit
-			long oldFilePointer = mp3FileStream.getFilePointer();
-			mp3FileStream.seek(targetSize - 1);
-			
-			while(mp3FileStream.readShort() != MP3_HEADER) {
-				mp3FileStream.seek(mp3FileStream.getFilePointer() - 3);
-			}
+		if(fileLength > targetSize) { // It's already over the limit
+			int keptFrameCount = frameIndex.getFrameCountEndingBy(targetSize);
+			long truncationOffset = frameIndex.getFrameOffset(keptFrameCount);
 			
-			mp3FileStream.seek(mp3FileStream.getFilePointer() - 2);
-			
-			int truncatedLength = (int) (mp3FileStream.length() - mp3FileStream.getFilePointer());
-			bytesArray[0] = new byte[truncatedLength];
-			mp3FileStream.read(bytesArray[0]);
-			mp3FileStream.setLength(mp3FileStream.length() - truncatedLength);
-			mp3FileStream.seek(oldFilePointer);
-			globalFlags.frameNum -= getFrameCount(bytesArray[0]);
-			globalFlags.frameNum -= getFrameCount(bytesArray[1]);
+			// The truncated frames are given back so they aren't lost
+			bytesArray[0] = new byte[(int) (fileLength - truncationOffset)];
+			mp3FileWriter.readAt(truncationOffset, bytesArray[0]);
+			mp3FileWriter.truncate(truncationOffset);
+			frameIndex.truncate(keptFrameCount);
 			return 0;
-		} else if(mp3FileStream.length() == targetSize) {
-			globalFlags.frameNum -= getFrameCount(bytesArray[1]);
+		} else if(fileLength == targetSize) {
 			return 0;
 		} else {
-			int maxFramesSize = getMaxFramesSize(bytesArray[1]);
-			
-			if(maxFramesSize < bytesArray[1].length) {
-				byte[] truncatedBytes = Arrays.copyOfRange(bytesArray[1], maxFramesSize, bytesArray[1].length);
-				globalFlags.frameNum -= getFrameCount(truncatedBytes);
-			}
-
-			return maxFramesSize;
+			return getMaxFramesSize(bytesArray[1]);
 		}
 	}
 	
-	/**
-	 * Finds the position in the file in which the (frameNumber + 1)-th frame of the audio stream starts
-	 * or the number of frames in the stream of the file if there aren't enough frames.
-	 * @param frameNumber The frame number
-	 * @return The position in the file in which the (frameNumber + 1)-th frame starts 
-	 * or the number of frames in the file
-	 * @throws IOException If an IOException occurs
-	 */
-	private long findFrameOffset(int frameNumber) throws IOException {
-		long oldFilePointerPosition = mp3FileStream.getFilePointer();
-		int frameCount = 0;
-		
-		mp3FileStream.seek(0);
-		
-		//ID3 tag is present
-		if(mp3FileStream.readShort() == 0x4944 && mp3FileStream.readByte() == 0x33) {
-			mp3FileStream.seek(6); //The position of the tag size
-			int tagSize = mp3FileStream.readByte() << 21 + 
-								mp3FileStream.readByte() << 14 +
-								mp3FileStream.readByte() << 7 +
-								mp3FileStream.readByte();
-			mp3FileStream.seek(mp3FileStream.getFilePointer() + tagSize);
-		} else {
-			mp3FileStream.seek(0);
-		}
-		
-		findNextFrame(); //Ignore the first frame because it will or does contain the Xing header
-
-		while(frameCount < frameNumber) {
-			if(mp3FileStream.length() == mp3FileStream.getFilePointer()) {
-				return frameCount;
-			} else {
-				findNextFrame();
-				frameCount++;
-			}
-		}
-		
-		long offset = mp3FileStream.getFilePointer();
-		mp3FileStream.seek(oldFilePointerPosition);
-		
-		return offset;
-	}
-	
 	/**
 	 * Gets the size of the maximum amount of valid frames that can be put into the file without going over the target size
 	 * @param bytes The byte array to get frames from
 	 * @return The size of the frames that can be put into the file
-	 * @throws IOException If an IOException occurs
-	 * @throws IllegalArgumentException If the byte array's length is less than 0 or the array contains an invalid frame.
+	 * @throws IllegalArgumentException If the array contains an invalid or truncated frame.
 	 */
-	private int getMaxFramesSize(byte[] bytes) throws IOException {
-		if (bytes.length <= 0) {
-			throw new IllegalArgumentException("The length of the byte array must be over 0.");
-		}
-
-		DataInputStream byteStream = new DataInputStream(new ByteArrayInputStream(bytes));
-		long spaceLeft = targetSize - mp3FileStream.length(); // Will always be more than 0
-
-		while(byteStream.available() >= 2 && byteStream.readShort() == MP3_HEADER) {
-			byteStream.mark(0);
-			int bitrate = BitUtil.UnsignedByte(byteStream.readByte()) >>> 4;
-
-			if (bitrate == 0 || bitrate == 15) {
-				throw new IllegalArgumentException("Frame has an unsupported or bad bitrate.");
-			} else {
-				bitrate = bitrateMap.get(bitrate);
-			}
-
-			int bytesToSkip = SAMPLES_PER_FRAME * bitrate * 125 / (int) (globalFlags.getOutSampleRate()) - 3;
-
-			if (byteStream.skipBytes(bytesToSkip) != bytesToSkip) {
+	private int getMaxFramesSize(byte[] bytes) {
+		long spaceLeft = targetSize - frameIndex.getLength(); // Will always be more than 0
+		int position = 0;
+		
+		while(position < bytes.length) {
+			int frameLength = getFrameLength(bytes, position);
+			
+			if(position + frameLength > bytes.length) {
 				throw new IllegalArgumentException("Truncated frame encountered.");
+			} else if(position + frameLength > spaceLeft) { // We'd go over
+				break;
 			}
 			
-			// We've gone over
-			if(spaceLeft < bytes.length - byteStream.available()) {
-				byteStream.reset();
-				return bytes.length - byteStream.available() - 2;
-			}
-		};
-		
-		if(byteStream.available() >= 2) {
-			throw new IllegalArgumentException("Invalid frame encountered");
+			position += frameLength;
 		}
 		
-		return bytes.length;
+		return position;
 	}
 	
 	/**
-	 * Gets the size of frameNumber frame in the byte array.
-	 * Returns the number of frames found if there are too few frames.
-	 * It will skip to the first frame header it sees.
+	 * Gets the size of the first frameCount frames in the byte array.
+	 * Returns the size of all of the frames if there are too few frames.
 	 * 
-	 * @param frameNumber The number of frames to search for
+	 * @param frameCount The number of frames
 	 * @param bytes The byte array to read from
-	 * @return The offset of where the frameNumber-th frame is or the number of frames in the byte array 
-	 * if there aren't enough frames.
-	 * @throws IllegalArgumentException The byte array contains
-	 * an invalid frame except for the initial data in the byte array;
-	 * frameNumber < 0; bytes.length <= 0
-	 * @throws EOFException The byte array doesn't contain any frame headers.
-	 * @throws IOException If an IOException occurs
+	 * @return The size of the frames in bytes
+	 * @throws IllegalArgumentException If the array contains an invalid frame
 	 */
-	private int getFrameSize(long frameNumber, byte[] bytes) throws IOException {
-		if(frameNumber < 0) {
-			throw new IllegalArgumentException("The number of frames to get must be 0 or more.");
-		} else if(bytes.length <= 0) {
-			throw new IllegalArgumentException("The length of the byte array must be over 0.");
-		}
-		
-		DataInputStream byteStream = new DataInputStream(new ByteArrayInputStream(bytes));
+	private int getFramesLength(int frameCount, byte[] bytes) {
+		int position = 0;
 		
-		do {
-			byteStream.reset();
-			
-			if(byteStream.readByte() == (byte) 0xFF) {
-				byteStream.mark(0);
-				
-				if(byteStream.readByte() == (byte) 0xFB) {
-					break;
-				}
-			} else {
-				byteStream.mark(0);
-			}
-		} while(true);
+		for(int i = 0; i < frameCount && position < bytes.length; i++) {
+			position += getFrameLength(bytes, position);
+		}
 		
-		if(frameNumber == 0) {
-			return bytes.length - byteStream.available() - 2;
+		return Math.min(position, bytes.length);
+	}
+	
+	/**
+	 * Gets the length of the MPEG 1 Layer 3 frame starting at the given offset using its header
+	 * 
+	 * @param bytes The byte array containing the frame
+	 * @param offset The offset of the frame's header in the byte array
+	 * @return The length of the frame in bytes
+	 * @throws IllegalArgumentException If there isn't a valid frame header at the offset
+	 */
+	static int getFrameLength(byte[] bytes, int offset) {
+		if(offset + 4 > bytes.length || bytes[offset] != (byte) (MP3_HEADER >> 8) || bytes[offset + 1] != (byte) MP3_HEADER) {
+			throw new IllegalArgumentException("Invalid frame encountered.");
 		}
 		
-		int frameCount = 0;
+		int headerInfo = BitUtil.UnsignedByte(bytes[offset + 2]);
+		int bitrateIndex = headerInfo >>> 4;
+		int sampleRateIndex = (headerInfo >>> 2) & 0x3;
 		
-		do {
-			int bitrate = BitUtil.UnsignedByte(byteStream.readByte()) >>> 4;
-			
-			if(bitrate == 0 || bitrate == 15) {
-				throw new IllegalArgumentException("Frame has an unsupported or bad bitrate.");
-			} else {
-				bitrate = bitrateMap.get(bitrate);
-			}
-
-			int bytesToSkip = SAMPLES_PER_FRAME * bitrate * 125 / (int) (globalFlags.getOutSampleRate()) - 3;
-			
-			if(byteStream.skipBytes(bytesToSkip) != bytesToSkip) {
-				throw new IllegalArgumentException("Truncated frame encountered.");
-			}
-			
-			frameCount++;
-			
-			if(frameCount == frameNumber || byteStream.available() < 2) {
-				break;
-			} else if(byteStream.readShort() != MP3_HEADER) {
-				throw new IllegalArgumentException("Invalid frame encountered.");
-			}
-		} while(true);
-		
-		if(frameCount != frameNumber) {
-			return frameCount;
+		if(bitrateIndex == 0 || bitrateIndex == 15 || sampleRateIndex == 3) {
+			throw new IllegalArgumentException("Frame has an unsupported or bad bitrate or sample rate.");
 		}
 		
-		// If available bytes less than 2, then the next mp3 header was never read, but if it was, we must add 2.
-		int bytesAvailable = byteStream.available() < 2 ? byteStream.available() : byteStream.available() + 2;
+		int padding = (headerInfo >>> 1) & 0x1;
 		
-		return bytes.length - bytesAvailable;
+		// Samples per frame * bitrate (in bytes) / Sample rate = Frame size (in bytes)
+		return SAMPLES_PER_FRAME * bitrateMap.get(bitrateIndex) * 125 / sampleRates[sampleRateIndex] + padding;
 	}
 	
 	/**
@@ -601,45 +531,16 @@ public class MP3FileWriter implements IAudioFileWriter {
 	 * 
 	 * @param bytes The MP3 byte array
 	 * @return The amount of frames in the array.
-	 * @throws IOException If an IOException occurs
-	 * @throws IllegalArgumentException The byte array contains
-	 * an invalid frame except for the initial data in the byte array;
-	 * bytes.length <= 0
+	 * @throws IllegalArgumentException If the array contains an invalid frame
 	 */
-	private int getFrameCount(byte[] bytes) throws IOException {
-		return getFrameSize(Integer.MAX_VALUE, bytes);
-	}
-	
-	/**
-	 * Searches for the beginning of the next frame or where it would be if we're at the end of the file
-	 * @throws IOException If an IOException occurs
-	 */
-	private void findNextFrame() throws IOException {
-		boolean found = false;
-
-		while(mp3FileStream.getFilePointer() <= mp3FileStream.length() - 2 && mp3FileStream.readShort() != MP3_HEADER) {
-			mp3FileStream.seek(mp3FileStream.getFilePointer() - 1);
-			found = true;
-		}
-		
-		if(mp3FileStream.getFilePointer() > mp3FileStream.length() - 2) {
-			mp3FileStream.seek(mp3FileStream.length());
-			return;
-		} else if(found) {
-			return;
-		}
-		
-		int bitrate = BitUtil.UnsignedByte(mp3FileStream.readByte()) >>> 4;
+	private int getFrameCount(byte[] bytes) {
+		int frameCount = 0;
 		
-		if(bitrate == 0 || bitrate == 15) {
-			throw new IllegalStateException("Bitrate bad or not supported.");
-		} else {
-			bitrate = bitrateMap.get(bitrate);
+		for(int position = 0; position < bytes.length; frameCount++) {
+			position += getFrameLength(bytes, position);
 		}
 		
-		// Samples per frame * bitrate (in bytes) / Sample rate = Frame size (in bytes)
-		int frameSize = SAMPLES_PER_FRAME * bitrate * 125 / (int) (globalFlags.getOutSampleRate());
-		mp3FileStream.skipBytes(frameSize - 3);
+		return frameCount;
 	}
 	
 	/**
@@ -673,31 +574,48 @@ public class MP3FileWriter implements IAudioFileWriter {
 	}
 	
 	/**
-	 * Seeks the position that the VBR Xing header should be written at
+	 * Adds a VBR header to the MP3 file using the frame index
 	 * 
 	 * @throws IOException If an IO exception occurs
 	 */
-	private void seekXingOffset() throws IOException {
-		if (globalFlags.getMode() == MPEGMode.MONO) {
-			mp3FileStream.seek(21);
-		} else {
-			mp3FileStream.seek(36);
+	private void addXingHeader() throws IOException {
+		if(frameIndex.getFrameCount() == 0) {
+			return;
 		}
+		
+		int xingOffset = globalFlags.getMode() == MPEGMode.MONO ? 21 : 36;
+		
+		// The frame holding this header isn't counted
+		mp3FileWriter.writeAt(xingOffset, createXingHeader(frameIndex.getFrameCount() - 1, frameIndex.getLength()));
 	}
 	
 	/**
-	 * Adds a VBR header to the MP3 file
+	 * Creates a VBR Xing header with the frames and bytes fields
 	 * 
-	 * @throws IOException If an IO exception occurs
+	 * @param frameCount The amount of frames in the file, not counting the frame holding the header
+	 * @param fileLength The length of the file in bytes
+	 * @return The header
 	 */
-	private void addXingHeader() throws IOException {
-		long oldFilePointer = mp3FileStream.getFilePointer();
-		
-		seekXingOffset();
-		mp3FileStream.writeBytes("Xing");
-		mp3FileStream.writeInt(3); //Enable frames and bytes flag
-		mp3FileStream.writeInt(globalFlags.frameNum); // For some reason, this number is 8 higher than it should be
-		mp3FileStream.writeInt((int) mp3FileStream.length());
-		mp3FileStream.seek(oldFilePointer);
+	static byte[] createXingHeader(int frameCount, long fileLength) {
+		ByteBuffer xingHeader = ByteBuffer.allocate(16);
+		
+		xingHeader.put(XING_TAG);
+		xingHeader.putInt(3); //Enable frames and bytes flag
+		xingHeader.putInt(frameCount);
+		xingHeader.putInt((int) fileLength);
+		
+		return xingHeader.array();
+	}
+	
+	/**
+	 * Gets the position of the Xing header inside of the frame holding it, which depends on the frame's channel mode
+	 * 
+	 * @param frame The frame holding the header
+	 * @return The position in the frame
+	 */
+	static int getXingHeaderOffset(byte[] frame) {
+		boolean isMono = (frame[3] & 0xC0) == 0xC0; // The channel mode is in the top 2 bits of the 4th header byte
+		
+		return isMono ? 21 : 36;
 	}
 }
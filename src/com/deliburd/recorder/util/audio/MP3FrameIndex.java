@@ -0,0 +1,135 @@
+package com.deliburd.recorder.util.audio;
+
+import java.util.Arrays;
+
+/**
+ * An in-memory index of the offsets of every MPEG 1 Layer 3 frame written into a file.
+ * Frames are indexed as they're written so the file never has to be read back to find them.
+ *
+ * @author MelonShooter
+ */
+class MP3FrameIndex {
+	private long[] frameOffsets;
+	private int frameCount;
+	private long length;
+
+	/**
+	 * The amount of bytes of the last frame that haven't been indexed yet because it was split between writes
+	 */
+	private int remainingFrameBytes;
+
+	MP3FrameIndex() {
+		frameOffsets = new long[1024];
+	}
+
+	/**
+	 * Indexes bytes that were just appended to the end of the file
+	 *
+	 * @param bytes The array containing the bytes
+	 * @param offset The offset in the array that the bytes start at
+	 * @param byteCount The amount of bytes appended
+	 * @return The amount of new frames found
+	 * @throws IllegalArgumentException If the bytes don't continue from a frame boundary
+	 */
+	int addFrames(byte[] bytes, int offset, int byteCount) {
+		int position = offset;
+		int end = offset + byteCount;
+		int oldFrameCount = frameCount;
+
+		position += Math.min(remainingFrameBytes, byteCount);
+		remainingFrameBytes -= position - offset;
+
+		while(position < end) {
+			int frameLength = MP3FileWriter.getFrameLength(bytes, position);
+
+			if(frameCount == frameOffsets.length) {
+				frameOffsets = Arrays.copyOf(frameOffsets, frameOffsets.length * 2);
+			}
+
+			frameOffsets[frameCount++] = length + position - offset;
+
+			if(position + frameLength > end) {
+				remainingFrameBytes = position + frameLength - end;
+			}
+
+			position += frameLength;
+		}
+
+		length += byteCount;
+
+		return frameCount - oldFrameCount;
+	}
+
+	/**
+	 * Gets the amount of frames indexed
+	 *
+	 * @return The amount of frames
+	 */
+	int getFrameCount() {
+		return frameCount;
+	}
+
+	/**
+	 * Gets the amount of bytes indexed, which is the length of the file
+	 *
+	 * @return The amount of bytes
+	 */
+	long getLength() {
+		return length;
+	}
+
+	/**
+	 * Gets the position in the file that a frame starts at
+	 *
+	 * @param frameNumber The 0-based number of the frame. If this is the frame count, the length is returned.
+	 * @return The position in the file
+	 * @throws IndexOutOfBoundsException If the frame number is negative or more than the frame count
+	 */
+	long getFrameOffset(int frameNumber) {
+		if(frameNumber == frameCount) {
+			return length;
+		} else if(frameNumber < 0 || frameNumber > frameCount) {
+			throw new IndexOutOfBoundsException("There is no frame " + frameNumber + ".");
+		}
+
+		return frameOffsets[frameNumber];
+	}
+
+	/**
+	 * Gets the amount of frames from the start of the file that end at or before the given position
+	 *
+	 * @param position The position in the file
+	 * @return The amount of frames
+	 */
+	int getFrameCountEndingBy(long position) {
+		if(position >= length) {
+			return remainingFrameBytes == 0 ? frameCount : frameCount - 1;
+		}
+
+		// Finds the first frame starting after the position. The frame before it is the one containing the position.
+		int index = Arrays.binarySearch(frameOffsets, 0, frameCount, position);
+
+		if(index >= 0) {
+			return index;
+		}
+
+		int insertionPoint = -index - 1;
+
+		return Math.max(insertionPoint - 1, 0);
+	}
+
+	/**
+	 * Removes every frame after the given amount of frames from the index
+	 *
+	 * @param newFrameCount The amount of frames to keep
+	 */
+	void truncate(int newFrameCount) {
+		if(newFrameCount < 0 || newFrameCount > frameCount) {
+			throw new IndexOutOfBoundsException("Can't truncate to " + newFrameCount + " frames.");
+		}
+
+		length = getFrameOffset(newFrameCount);
+		frameCount = newFrameCount;
+		remainingFrameBytes = 0;
+	}
+}
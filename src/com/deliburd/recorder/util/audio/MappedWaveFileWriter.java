@@ -0,0 +1,284 @@
+package com.deliburd.recorder.util.audio;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.sound.sampled.AudioFormat;
+
+import com.deliburd.util.ErrorLogger;
+
+/**
+ * A WAVE audio file writer that maps the whole target size of the file into memory up front and copies PCM straight into it.
+ * Since the mapped region starts out zeroed, writing silence only moves the write position.
+ * The file is truncated to the length of the audio when it's finalized.
+ *
+ * @author MelonShooter
+ */
+public class MappedWaveFileWriter implements IPartitionableAudioFileWriter {
+	/**
+	 * Returned by writeSilence when the file fills up before all of the silence is written. The silence that didn't fit is dropped.
+	 */
+	static final byte[] NO_LEFTOVER_SILENCE = new byte[0];
+
+	private static final int HEADER_SIZE = WaveFileWriter.HEADER_SIZE;
+	private final FileChannel fileChannel;
+	private MappedByteBuffer mappedFile;
+	private final File file;
+	private final int channelCount;
+	private final int sampleRate;
+	private final int bitsPerSample;
+	private final boolean isBigEndian;
+	private final long creationTime;
+	private final int targetSize;
+	private volatile boolean isFinalized = false;
+	private long lastWriteTime;
+	private int fileLength;
+
+	{
+		creationTime = Instant.now().toEpochMilli();
+	}
+
+	/**
+	 * Creates a memory-mapped WAVE audio file writer
+	 *
+	 * @param fileToWrite The file to write to
+	 * @param format The format of the inputted PCM audio
+	 * @param targetSize The target size of the file in bytes, which is how much of the file is mapped.
+	 * Values that are too small for the WAVE file will be increased to fit the minimum requirements.
+	 * The target size will be rounded down to the nearest valid data size if necessary.
+	 * @throws FileNotFoundException If the file cannot be created or mapped
+	 * @throws IllegalArgumentException If the target size is 0 or more than Integer.MAX_VALUE, which can't be mapped.
+	 * Use WaveFileWriter for those instead.
+	 */
+	public MappedWaveFileWriter(File fileToWrite, AudioFormat format, long targetSize) throws FileNotFoundException {
+		if(targetSize <= 0 || targetSize > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("The target size must be more than 0 and at most Integer.MAX_VALUE to be mapped.");
+		}
+
+		file = fileToWrite;
+		channelCount = format.getChannels();
+		sampleRate = (int) format.getSampleRate();
+		bitsPerSample = format.getSampleSizeInBits();
+		isBigEndian = format.isBigEndian();
+
+		int minFileSize = HEADER_SIZE + channelCount * bitsPerSample / 8;
+
+		if(targetSize < minFileSize) {
+			this.targetSize = minFileSize;
+		} else {
+			this.targetSize = (int) (findClosestValidDataSize(targetSize - HEADER_SIZE) + HEADER_SIZE);
+		}
+
+		try {
+			fileChannel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+					StandardOpenOption.READ, StandardOpenOption.WRITE);
+			mappedFile = fileChannel.map(FileChannel.MapMode.READ_WRITE, 0, this.targetSize);
+		} catch (IOException e) {
+			var exception = new FileNotFoundException("Couldn't map " + file + ": " + e.getMessage());
+			exception.initCause(e);
+			throw exception;
+		}
+
+		mappedFile.order(ByteOrder.LITTLE_ENDIAN);
+		lastWriteTime = Instant.now().toEpochMilli();
+		mappedFile.put(WaveFileWriter.createWaveHeader(channelCount, sampleRate, bitsPerSample, 0));
+	}
+
+	@Override
+	public byte[] writeSilence(long milliseconds) throws IOException {
+		if(isFinalized) {
+			throw new IllegalStateException("Failed to write to WAVE file. The audio file has already been finalized.");
+		}
+
+		long silenceSize = (long) bitsPerSample * channelCount * sampleRate / 8 * (milliseconds / 1000);
+		int spaceLeft = mappedFile.remaining();
+
+		// The mapped region is already zeroed, so the silence just needs to be skipped over
+		mappedFile.position(mappedFile.position() + (int) Math.min(silenceSize, spaceLeft));
+		lastWriteTime = Instant.now().toEpochMilli();
+
+		if(silenceSize > spaceLeft) {
+			finalizeFile();
+
+			// The silence that didn't fit is never allocated since a long gap could need gigabytes of zeros
+			return NO_LEFTOVER_SILENCE;
+		}
+
+		return null;
+	}
+
+	@Override
+	public byte[] writePCMAudio(byte[] bytes) throws IOException {
+		if(isFinalized) {
+			throw new IllegalStateException("Failed to write to WAVE file. The audio file has already been finalized.");
+		} else if(bytes.length != findClosestValidDataSize(bytes.length)) {
+			throw new IllegalArgumentException("Invalid number of bytes being written. Sample is incomplete.");
+		}
+
+		if(isBigEndian) {
+			int reverseOffset = bitsPerSample / 8;
+			bytes = bytes.clone();
+
+			for(int i = 0; i < bytes.length; i += reverseOffset) {
+				reverseBytes(bytes, i, reverseOffset);
+			}
+		}
+
+		return directWrite(bytes);
+	}
+
+	@Override
+	public byte[] directWrite(byte[] bytes) throws IOException {
+		if(isFinalized) {
+			throw new IllegalStateException("Failed to write to WAVE file. The audio file has already been finalized.");
+		}
+
+		int bytesToWrite = Math.min(bytes.length, mappedFile.remaining());
+
+		mappedFile.put(bytes, 0, bytesToWrite);
+		lastWriteTime = Instant.now().toEpochMilli();
+
+		if(bytesToWrite < bytes.length) {
+			finalizeFile();
+		}
+
+		if(bytesToWrite == bytes.length) {
+			return null;
+		}
+
+		return Arrays.copyOfRange(bytes, bytesToWrite, bytes.length);
+	}
+
+	/**
+	 * Finalizes the file, writing the sizes into the header and truncating the file to the length of the audio.
+	 * The mapping is released first since a mapped file can't always be truncated. If it can't be released,
+	 * the file is left at its target size, which is still a valid WAVE file since the header has the real sizes.
+	 *
+	 * @return The bytes that couldn't be written. Will always be null with WAVE files
+	 */
+	@Override
+	public byte[] finalizeFile() {
+		if(isFinalized) {
+			throw new IllegalStateException("This WAVE file has already been finalized.");
+		}
+
+		fileLength = mappedFile.position();
+		mappedFile.putInt(4, fileLength - 8); // Writes the file size into the header
+		mappedFile.putInt(40, fileLength - HEADER_SIZE); // Writes the data size into the header
+		mappedFile.force();
+		isFinalized = true;
+
+		boolean isUnmapped = unmap(mappedFile);
+		mappedFile = null;
+
+		try(fileChannel) {
+			if(isUnmapped) {
+				fileChannel.truncate(fileLength);
+			}
+		} catch (IOException e) {
+			ErrorLogger.LogException(e);
+		}
+
+		return null;
+	}
+
+	@Override
+	public boolean isFinalized() {
+		return isFinalized;
+	}
+
+	@Override
+	public long getLastWriteTime() {
+		return lastWriteTime;
+	}
+
+	@Override
+	public long getCreationTime() {
+		return creationTime;
+	}
+
+	@Override
+	public File getFile() {
+		return file;
+	}
+
+	@Override
+	public long getFileLength() throws IOException {
+		return isFinalized ? fileLength : mappedFile.position();
+	}
+
+	@Override
+	public long getTargetSize() {
+		return targetSize;
+	}
+
+	@Override
+	public List<AudioPartition> getPartitions(long partitionSize) {
+		if(!isFinalized) {
+			throw new IllegalStateException("The WAVE file must be finalized before it can be partitioned.");
+		}
+
+		return WaveFileWriter.getWavePartitions(fileLength, channelCount, sampleRate, bitsPerSample, partitionSize);
+	}
+
+	/**
+	 * Finds the closest valid audio data size rounding down
+	 * @param size The size in bytes
+	 * @return The closest valid size in bytes based on the input.
+	 */
+	private long findClosestValidDataSize(long size) {
+		long factor = bitsPerSample / 8 * channelCount;
+
+		if(size < factor) {
+			throw new IllegalArgumentException("There is no closest valid size with this small of a value.");
+		}
+
+		long dataSizeRemainder = size % factor;
+		return size - dataSizeRemainder;
+	}
+
+	/**
+	 * Releases a mapping right away instead of waiting for it to be garbage collected
+	 *
+	 * @param buffer The mapping to release. It must not be used afterwards.
+	 * @return Whether the mapping was released
+	 */
+	private static boolean unmap(MappedByteBuffer buffer) {
+		try {
+			var unsafeClass = Class.forName("sun.misc.Unsafe");
+			var unsafeField = unsafeClass.getDeclaredField("theUnsafe");
+			unsafeField.setAccessible(true);
+			unsafeClass.getMethod("invokeCleaner", ByteBuffer.class).invoke(unsafeField.get(null), buffer);
+
+			return true;
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			ErrorLogger.LogException(e);
+			return false;
+		}
+	}
+
+	/**
+	 * Reverse the bytes in an array
+	 *
+	 * @param array The array to reverse the bytes for
+	 * @param offset The position to start reversing bytes for
+	 * @param reverseCount The amount of bytes to reverse
+	 */
+	private static void reverseBytes(byte[] array, int offset, int reverseCount) {
+		for(int i = 0; i < reverseCount / 2; i++) {
+			var firstValue = array[i + offset];
+			var secondIndex = reverseCount - i + offset - 1;
+			array[i + offset] = array[secondIndex];
+			array[secondIndex] = firstValue;
+		}
+	}
+}
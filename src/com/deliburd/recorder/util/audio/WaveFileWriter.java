@@ -3,26 +3,27 @@ package com.deliburd.recorder.util.audio;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.RandomAccessFile;
 
 import javax.sound.sampled.AudioFormat;
 
-import com.deliburd.util.ArrayUtil;
 import com.deliburd.util.ErrorLogger;
 
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
-public class WaveFileWriter implements IAudioFileWriter {
-	private final RandomAccessFile fileStream; 
+public class WaveFileWriter implements IPartitionableAudioFileWriter {
+	static final int HEADER_SIZE = 44;
+	private final BufferedFileChannelWriter fileWriter;
 	private final File file;
 	private final int channelCount;
 	private final int sampleRate;
 	private final int bitsPerSample;
 	private final boolean isBigEndian;
 	private final long creationTime;
-	private final int HEADER_SIZE = 44;
 	private final int minFileSize;
 	private volatile boolean isFinalized = false;
 	private long lastWriteTime;
@@ -46,7 +47,7 @@ public class WaveFileWriter implements IAudioFileWriter {
 	 * @throws FileNotFoundException If the file cannot be created
 	 */
 	public WaveFileWriter(File fileToWrite, AudioFormat format, long targetSize) throws FileNotFoundException {
-		fileStream = new RandomAccessFile(fileToWrite, "rw");
+		fileWriter = new BufferedFileChannelWriter(fileToWrite);
 		file = fileToWrite;
 		channelCount = format.getChannels();
 		sampleRate = (int) format.getSampleRate();
@@ -97,20 +98,17 @@ public class WaveFileWriter implements IAudioFileWriter {
 			throw new IllegalStateException("Failed to write to WAVE file. The audio file has already been finalized.");
 		}
 		
-		long extraBytesToBeWritten = bytes.length - (fileStream.length() - fileStream.getFilePointer());
+		long fileLength = fileWriter.length();
 		byte[] leftoverBytes = null;
 		
-		if(fileStream.length() + extraBytesToBeWritten > targetSize) {
-
-			int spaceLeft = (int) (targetSize - fileStream.length()); // Will always be a valid data size
-			byte[] bytesToWrite = new byte[spaceLeft];
-			
-			leftoverBytes = ArrayUtil.splitByteArray(bytes, bytesToWrite);
+		if(fileLength + bytes.length > targetSize) {
+			int spaceLeft = (int) (targetSize - fileLength); // Will always be a valid data size
 			
-			fileStream.write(bytesToWrite);
+			fileWriter.write(bytes, 0, spaceLeft);
+			leftoverBytes = Arrays.copyOfRange(bytes, spaceLeft, bytes.length);
 			finalizeFile();
 		} else {
-			fileStream.write(bytes);
+			fileWriter.write(bytes);
 		}
 
 		lastWriteTime = Instant.now().toEpochMilli();
@@ -129,17 +127,15 @@ public class WaveFileWriter implements IAudioFileWriter {
 			throw new IllegalStateException("This WAVE file has already been finalized.");
 		}
 		
-		try(fileStream) {
+		try(fileWriter) {
+			long fileLength = fileWriter.length();
 			ByteBuffer byteBuffer = ByteBuffer.allocate(4);
 			byteBuffer.order(ByteOrder.LITTLE_ENDIAN);
-			byteBuffer.putInt((int) (fileStream.getChannel().size() - 8));
-			fileStream.seek(4);
-			directWrite(ArrayUtil.byteBufferToArray(byteBuffer)); // Writes the file size into the header
-			byteBuffer = ByteBuffer.allocate(4);
-			byteBuffer.order(ByteOrder.LITTLE_ENDIAN);
-			byteBuffer.putInt((int) (fileStream.getChannel().size() - 44));
-			fileStream.seek(40);
-			directWrite(ArrayUtil.byteBufferToArray(byteBuffer)); // Writes the data size into the header
+			byteBuffer.putInt((int) (fileLength - 8));
+			fileWriter.writeAt(4, byteBuffer.array()); // Writes the file size into the header
+			byteBuffer.clear();
+			byteBuffer.putInt((int) (fileLength - HEADER_SIZE));
+			fileWriter.writeAt(40, byteBuffer.array()); // Writes the data size into the header
 		} catch (IOException e) {
 			ErrorLogger.LogException(e);
 		} catch(Exception e){
@@ -173,11 +169,7 @@ public class WaveFileWriter implements IAudioFileWriter {
 
 	@Override
 	public long getFileLength() throws IOException {
-		if(isFinalized) {
-			return file.length();
-		} else {
-			return fileStream.length();
-		}
+		return fileWriter.length();
 	}
 
 	@Override
@@ -185,17 +177,43 @@ public class WaveFileWriter implements IAudioFileWriter {
 		return targetSize;
 	}
 	
+	@Override
+	public List<AudioPartition> getPartitions(long partitionSize) {
+		if(!isFinalized) {
+			throw new IllegalStateException("The WAVE file must be finalized before it can be partitioned.");
+		}
+		
+		return getWavePartitions(fileWriter.length(), channelCount, sampleRate, bitsPerSample, partitionSize);
+	}
+	
 	/**
 	 * Writes the header for the WAVE file
 	 */
 	private void writeWaveHeader() {
+		try {
+			directWrite(createWaveHeader(channelCount, sampleRate, bitsPerSample, 0));
+		} catch (IOException e) {
+			ErrorLogger.LogException(e);
+		}
+	}
+	
+	/**
+	 * Creates the header for a WAVE file
+	 * 
+	 * @param channelCount The amount of channels
+	 * @param sampleRate The sample rate
+	 * @param bitsPerSample The amount of bits in a sample
+	 * @param dataSize The size of the audio data in bytes. 0 can be used as a placeholder until the size is known.
+	 * @return The header
+	 */
+	static byte[] createWaveHeader(int channelCount, int sampleRate, int bitsPerSample, int dataSize) {
 		ByteBuffer byteBuffer = ByteBuffer.allocate(HEADER_SIZE);
 		byteBuffer.order(ByteOrder.LITTLE_ENDIAN);
 		byteBuffer.put((byte) 'R');
 		byteBuffer.put((byte) 'I');
 		byteBuffer.put((byte) 'F');
 		byteBuffer.put((byte) 'F');
-		byteBuffer.putInt(0); // Placeholder for the file size
+		byteBuffer.putInt(dataSize == 0 ? 0 : dataSize + HEADER_SIZE - 8); // The file size
 		byteBuffer.put((byte) 'W');
 		byteBuffer.put((byte) 'A');
 		byteBuffer.put((byte) 'V');
@@ -215,13 +233,34 @@ public class WaveFileWriter implements IAudioFileWriter {
 		byteBuffer.put((byte) 'a');
 		byteBuffer.put((byte) 't');
 		byteBuffer.put((byte) 'a');
-		byteBuffer.putInt(0); // Placeholder for the data size
+		byteBuffer.putInt(dataSize); // The data size
 		
-		try {
-			directWrite(ArrayUtil.byteBufferToArray(byteBuffer));
-		} catch (IOException e) {
-			ErrorLogger.LogException(e);
+		return byteBuffer.array();
+	}
+	
+	/**
+	 * Splits a finalized WAVE file into partitions at sample boundaries, giving each one its own header
+	 * 
+	 * @param fileLength The length of the WAVE file in bytes
+	 * @param channelCount The amount of channels
+	 * @param sampleRate The sample rate
+	 * @param bitsPerSample The amount of bits in a sample
+	 * @param partitionSize The maximum size in bytes of each partition, including its header
+	 * @return The partitions in order
+	 */
+	static List<AudioPartition> getWavePartitions(long fileLength, int channelCount, int sampleRate, int bitsPerSample, 
+			long partitionSize) {
+		int blockSize = channelCount * bitsPerSample / 8;
+		long maxDataSize = Math.max((partitionSize - HEADER_SIZE) / blockSize * blockSize, blockSize);
+		var partitions = new ArrayList<AudioPartition>();
+		
+		for(long offset = HEADER_SIZE; offset < fileLength; offset += maxDataSize) {
+			int dataSize = (int) Math.min(maxDataSize, fileLength - offset);
+			byte[] header = createWaveHeader(channelCount, sampleRate, bitsPerSample, dataSize);
+			partitions.add(new AudioPartition(header, offset, dataSize));
 		}
+		
+		return partitions;
 	}
 	
 	/**
@@ -4,11 +4,10 @@ import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Timer;
-import java.util.TimerTask;
 import java.util.concurrent.TimeUnit;
 
 import com.deliburd.bot.burdbot.Main;
+import com.deliburd.util.scheduling.TaskScheduler;
 
 import net.dv8tion.jda.api.JDA;
 import net.dv8tion.jda.api.entities.Activity;
@@ -17,11 +16,9 @@ public class ActivitySwitcher {
 	private static List<Pair<String, Long>> states;
 	private static int currentStateIndex;
 	private static Instant instantToSwitch;
-	private static Timer stateSwitcherTimer;
 	
 	static {
 		states = new ArrayList<>();
-		stateSwitcherTimer = new Timer(true);
 		startActivitySwitching();
 	}
 	
@@ -31,36 +28,33 @@ public class ActivitySwitcher {
 	 * Starts a timer to switch activities once the time for them is up.
 	 */
 	private static void startActivitySwitching() {
-		stateSwitcherTimer.schedule(new TimerTask() {
-			@Override
-			public void run() {
-				JDA JDAInstance = Main.getJDAInstance();
-				
-				if(JDAInstance == null) {
-					return;
-				}
-				
-				Instant currentInstant = Instant.now();
-				boolean stateHasExpired = instantToSwitch == null || currentInstant.isAfter(instantToSwitch);
-				
-				synchronized(ActivitySwitcher.class) {
-					if(stateHasExpired && !states.isEmpty()) {
-						if(currentStateIndex >= states.size()) {
-							currentStateIndex = 0;
-						}
-						
-						var newStateInfo = states.get(currentStateIndex);
-						String stateText = newStateInfo.getKey();
-						long stateDuration = newStateInfo.getValue();
-						
-						JDAInstance.getPresence().setActivity(Activity.playing(stateText));
-						instantToSwitch = currentInstant.plus(stateDuration, ChronoUnit.MILLIS);
-						
-						currentStateIndex++;
+		TaskScheduler.getScheduler().scheduleAtFixedRate(() -> {
+			JDA JDAInstance = Main.getJDAInstance();
+			
+			if(JDAInstance == null) {
+				return;
+			}
+			
+			Instant currentInstant = Instant.now();
+			boolean stateHasExpired = instantToSwitch == null || currentInstant.isAfter(instantToSwitch);
+			
+			synchronized(ActivitySwitcher.class) {
+				if(stateHasExpired && !states.isEmpty()) {
+					if(currentStateIndex >= states.size()) {
+						currentStateIndex = 0;
 					}
+					
+					var newStateInfo = states.get(currentStateIndex);
+					String stateText = newStateInfo.getKey();
+					long stateDuration = newStateInfo.getValue();
+					
+					JDAInstance.getPresence().setActivity(Activity.playing(stateText));
+					instantToSwitch = currentInstant.plus(stateDuration, ChronoUnit.MILLIS);
+					
+					currentStateIndex++;
 				}
 			}
-		}, 10000, 10000);
+		}, 10000, 10000, TimeUnit.MILLISECONDS);
 	}
 
 	/**
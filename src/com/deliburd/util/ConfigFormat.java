@@ -0,0 +1,77 @@
+package com.deliburd.util;
+
+import java.io.File;
+
+import com.deliburd.bot.burdbot.Constant;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+/**
+ * The formats server configs can be stored on disk in
+ *
+ * @author MelonShooter
+ *
+ */
+public enum ConfigFormat {
+	/**
+	 * Plain JSON, which can be edited by hand
+	 */
+	JSON(".json", new ObjectMapper()),
+
+	/**
+	 * Smile, Jackson's binary encoding of JSON. It's smaller and faster to parse, but can't be edited by hand.
+	 */
+	SMILE(".smile", new ObjectMapper(new SmileFactory()));
+
+	private final String extension;
+	private final ObjectMapper objectMapper;
+
+	private ConfigFormat(String extension, ObjectMapper objectMapper) {
+		this.extension = extension;
+		this.objectMapper = objectMapper;
+	}
+
+	/**
+	 * Gets the extension of config files in this format
+	 *
+	 * @return The extension including the dot
+	 */
+	public String getExtension() {
+		return extension;
+	}
+
+	/**
+	 * Gets the ObjectMapper that reads and writes this format
+	 *
+	 * @return The ObjectMapper
+	 */
+	ObjectMapper getObjectMapper() {
+		return objectMapper;
+	}
+
+	/**
+	 * Gets a server's config file in this format
+	 *
+	 * @param serverID The server's ID
+	 * @return The config file, which might not exist
+	 */
+	File getConfigFile(long serverID) {
+		return new File(Constant.CONFIG_PATH + serverID + extension);
+	}
+
+	/**
+	 * Gets the format of a config file based on its extension
+	 *
+	 * @param fileName The name of the config file
+	 * @return The format. Null if the file isn't a config file.
+	 */
+	static ConfigFormat fromFileName(String fileName) {
+		for(var format : values()) {
+			if(fileName.endsWith(format.extension)) {
+				return format;
+			}
+		}
+
+		return null;
+	}
+}
@@ -1,26 +1,58 @@
 package com.deliburd.util;
 
-import java.time.Instant;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 import net.dv8tion.jda.api.entities.User;
 
 public class Cooldown {
 	/**
-	 * The time for the cooldown in milliseconds
+	 * The number of users that can be tracked at once. Must be a power of 2.
 	 */
-	private long cooldown;
+	private static final int CAPACITY = 1024;
 	
-	private ConcurrentHashMap<Long, Long> userCooldownTimeTracker;
+	/**
+	 * The most slots looked at for a user before they're tracked in the overflow map instead
+	 */
+	private static final int MAX_PROBES = 16;
+	
+	/**
+	 * A user ID that marks a slot that has never been used. Discord IDs are never 0.
+	 */
+	private static final long EMPTY = 0;
+	
+	/**
+	 * A user ID that marks a slot whose time is being changed for a new user. Discord IDs are never negative.
+	 */
+	private static final long CLAIMING = -1;
+	
+	/**
+	 * The time for the cooldown in seconds
+	 */
+	private volatile long cooldown;
+	
+	/**
+	 * An open-addressing table of user IDs and the time of their last action in milliseconds, with each user ID
+	 * immediately followed by its time. Slots are never cleared. Once a slot's cooldown is over, the next user
+	 * to probe it takes it over, so expired users are dropped without ever scanning the table.
+	 */
+	private final AtomicLongArray userCooldownTimeTracker;
+	
+	/**
+	 * The time of the last action in milliseconds of the users whose slots were all taken by users still on cooldown.
+	 * Users on cooldown are never pushed out of the table, so a burst of users can't get around their cooldowns.
+	 */
+	private final ConcurrentHashMap<Long, Long> overflowCooldowns;
 
 	/**
 	 * Initializes the cooldown
 	 * 
-	 * @param cooldown Time in milliseconds
+	 * @param cooldown Time in seconds
 	 */
 	public Cooldown(long cooldown) {
 		this.cooldown = cooldown;
-		userCooldownTimeTracker = new ConcurrentHashMap<Long, Long>(11);
+		userCooldownTimeTracker = new AtomicLongArray(CAPACITY * 2);
+		overflowCooldowns = new ConcurrentHashMap<Long, Long>(8, .75f, 3);
 	}
 
 	/**
@@ -29,28 +61,92 @@ public class Cooldown {
 	 * @param user The user to reset the cooldown for
 	 */
 	public void resetCooldown(User user) {
-		final long currentmilliSecond = Instant.now().toEpochMilli();
+		final long userID = user.getIdLong();
+		final int startSlot = getStartSlot(userID);
+
+		searchLoop:
+		while(true) {
+			final long currentMilliSecond = System.currentTimeMillis();
+			final long cooldownMilliSeconds = cooldown * 1000;
+			int freeSlot = -1;
+			long freeSlotUserID = EMPTY;
+
+			// The user's own slot is looked for first so a free slot before it can't give them a second one
+			for(int i = 0; i < MAX_PROBES; i++) {
+				final int slot = (startSlot + i) & (CAPACITY - 1);
+				final long slotUserID = userCooldownTimeTracker.get(slot * 2);
+
+				if(slotUserID == userID) {
+					userCooldownTimeTracker.set(slot * 2 + 1, currentMilliSecond);
+
+					// If the slot was taken over in the meantime, the new time might have been overwritten, so everything is looked at again
+					if(userCooldownTimeTracker.get(slot * 2) == userID) {
+						return;
+					}
+
+					continue searchLoop;
+				} else if(slotUserID == EMPTY) {
+					// Slots are never cleared, so the user can't be in any slot past one that has never been used
+					if(freeSlot == -1) {
+						freeSlot = slot;
+						freeSlotUserID = EMPTY;
+					}
+
+					break;
+				} else if(freeSlot == -1 && slotUserID != CLAIMING 
+						&& userCooldownTimeTracker.get(slot * 2 + 1) + cooldownMilliSeconds <= currentMilliSecond) {
+					freeSlot = slot;
+					freeSlotUserID = slotUserID;
+				}
+			}
+
+			if(overflowCooldowns.replace(userID, currentMilliSecond) != null) {
+				return;
+			} else if(freeSlot == -1) {
+				// Every slot the user could have is taken by someone still on cooldown
+				if(overflowCooldowns.size() >= CAPACITY) {
+					overflowCooldowns.values().removeIf(time -> time + cooldownMilliSeconds <= currentMilliSecond);
+				}
 
-		userCooldownTimeTracker.put(user.getIdLong(), currentmilliSecond);
+				overflowCooldowns.put(userID, currentMilliSecond);
+				return;
+			}
 
-		if(userCooldownTimeTracker.size() == 11) {
-			pruneUserCooldown();
+			// Someone else claimed the slot first, so everything is looked at again
+			if(claimSlot(freeSlot, freeSlotUserID, userID, currentMilliSecond)) {
+				return;
+			}
 		}
 	}
 
 	/**
-	 * Goes through the user cooldown hashmap and takes out mappings that are outdated
+	 * Takes over a slot for a user. The slot is marked while its time is changed, so the new user is never
+	 * paired with the old user's time and the old user is never paired with the new user's time.
+	 * 
+	 * @param slot The slot
+	 * @param expectedUserID The user ID expected to be in the slot
+	 * @param userID The user ID to put in the slot
+	 * @param time The time of the user's last action in milliseconds
+	 * @return Whether the slot was taken over. False if the slot's user changed in the meantime.
 	 */
-	private void pruneUserCooldown() {
-		var entries = userCooldownTimeTracker.entrySet().iterator();
-
-		while(entries.hasNext()) {
-			var entry = entries.next();
-			
-			if(isCooldownOver(entry.getKey())) {
-				entries.remove();
-			}
+	private boolean claimSlot(int slot, long expectedUserID, long userID, long time) {
+		if(!userCooldownTimeTracker.compareAndSet(slot * 2, expectedUserID, CLAIMING)) {
+			return false;
 		}
+		
+		userCooldownTimeTracker.set(slot * 2 + 1, time);
+		userCooldownTimeTracker.set(slot * 2, userID);
+		return true;
+	}
+	
+	/**
+	 * Gets the first slot to look at for a user
+	 * 
+	 * @param userID The user's ID
+	 * @return The slot
+	 */
+	private static int getStartSlot(long userID) {
+		return (int) ((userID * 0x9E3779B97F4A7C15L) >>> (Long.SIZE - Integer.numberOfTrailingZeros(CAPACITY)));
 	}
 
 	/**
@@ -98,14 +194,42 @@ public class Cooldown {
 	 * @return The time remaining in the cooldown in milliseconds. Returns 0 if the cooldown is over or the user never had a cooldown.
 	 */
 	private long getCooldownTimeRemaining(long userID) {
-		final Long lastAction = userCooldownTimeTracker.get(userID);
+		final int startSlot = getStartSlot(userID);
+		
+		for(int i = 0; i < MAX_PROBES; i++) {
+			final int slot = (startSlot + i) & (CAPACITY - 1);
+			final long slotUserID = userCooldownTimeTracker.get(slot * 2);
+			
+			if(slotUserID == EMPTY) {
+				return 0; // Never had a cooldown
+			} else if(slotUserID == userID) {
+				final long slotTime = userCooldownTimeTracker.get(slot * 2 + 1);
+				
+				// Only slots whose cooldown is over are taken over, so the time read might be the new user's
+				if(userCooldownTimeTracker.get(slot * 2) != userID) {
+					return 0;
+				}
+				
+				final long remainingTime = slotTime + cooldown * 1000 - System.currentTimeMillis();
+				
+				return remainingTime > 0 ? remainingTime : 0;
+			}
+		}
 		
-		// Never had a cooldown or cooldown is over
-		if(lastAction == null || lastAction + cooldown * 1000 <= Instant.now().toEpochMilli()) {
+		final Long overflowTime = overflowCooldowns.get(userID);
+		
+		if(overflowTime == null) {
 			return 0;
-		} else {
-			return lastAction + cooldown * 1000 - Instant.now().toEpochMilli();
 		}
+		
+		final long remainingTime = overflowTime + cooldown * 1000 - System.currentTimeMillis();
+		
+		if(remainingTime > 0) {
+			return remainingTime;
+		}
+		
+		overflowCooldowns.remove(userID, overflowTime);
+		return 0;
 	}
 	
 	/**
@@ -1,47 +1,111 @@
 package com.deliburd.util;
 
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
 import com.deliburd.bot.burdbot.Constant;
 import net.dv8tion.jda.api.entities.MessageChannel;
 
+/**
+ * Logs errors to Constant.LOG_FILE. Logging only queues the throwable. A single background thread formats and appends
+ * everything queued in batches, so logging never blocks on the disk. If the queue is full, the throwable is dropped
+ * and counted instead.
+ * 
+ * Throwables are fingerprinted by their type and the top of their stack trace. Only the first throwable with a fingerprint
+ * in each window of Constant.LOG_FINGERPRINT_WINDOW milliseconds is written out in full. The repeats are counted and 
+ * written as one line once the window is over.
+ *
+ * @author MelonShooter
+ *
+ */
 public class ErrorLogger {
+	/**
+	 * The amount of stack frames from the top of the stack trace that are part of the fingerprint
+	 */
+	private static final int FINGERPRINT_FRAME_COUNT = 8;
+	private static final ConcurrentLinkedQueue<LogEntry> logQueue = new ConcurrentLinkedQueue<LogEntry>();
+	private static final ConcurrentHashMap<Long, ErrorFingerprint> fingerprintMap = new ConcurrentHashMap<Long, ErrorFingerprint>();
+	private static final AtomicInteger queuedCount = new AtomicInteger();
+	private static final AtomicLong droppedCount = new AtomicLong();
+	private static final Thread appenderThread = new Thread(ErrorLogger::appendLogs, "ErrorLogger-Appender");
+	private static volatile boolean isShuttingDown = false;
+
+	/**
+	 * The writer for the log file. Only used by the appender thread.
+	 */
+	private static Writer logWriter;
+
+	/**
+	 * The approximate size of the log file. Only used by the appender thread.
+	 */
+	private static long logFileSize;
+
+	static {
+		appenderThread.setDaemon(true);
+		appenderThread.start();
+
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+			isShuttingDown = true;
+			LockSupport.unpark(appenderThread);
+
+			try {
+				appenderThread.join(2000);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}, "ErrorLogger-Shutdown"));
+	}
+
 	private ErrorLogger() {}
-	
+
 	/**
 	 * Logs a throwable to TextConstant.LOG_FILE
-	 * 
+	 *
 	 * @param e The exception
 	 */
 	public static void LogException(Throwable e) {
-		File logFile = new File(Constant.LOG_FILE);
+		long currentTime = System.currentTimeMillis();
+		long fingerprintKey = fingerprint(e);
+		var fingerprint = fingerprintMap.get(fingerprintKey);
 		
-		if(!logFile.exists()) {
-			try {
-				logFile.createNewFile();
-			} catch (IOException e1) {
-				System.out.println("Failed to create logging file");
+		if(fingerprint == null && fingerprintMap.size() < Constant.MAX_LOG_FINGERPRINTS) {
+			fingerprint = fingerprintMap.computeIfAbsent(fingerprintKey, key -> new ErrorFingerprint(key, e));
+		}
+		
+		long repeatCount = 0;
+		
+		if(fingerprint != null) {
+			if(!fingerprint.record(currentTime)) {
 				return;
 			}
+			
+			repeatCount = fingerprint.takeRepeatCount();
 		}
-
-		try(PrintStream printStream = new PrintStream(new FileOutputStream(logFile, true))) {
-			e.printStackTrace(printStream);
-			printStream.append('\n');
-			e.printStackTrace();
-		} catch (FileNotFoundException e1) {
-			System.out.println("Logging file could not be found.");
-		}
+		
+		enqueue(new LogEntry(e, fingerprint, repeatCount));
 	}
-	
-	
+
+
 	/**
 	 * Logs a throwable to the log file and gives a generic error message to a certain channel to alert users
-	 * 
+	 *
 	 * @param e The throwable to log
 	 * @param channel The channel to give the error message in
 	 */
@@ -49,10 +113,10 @@ public class ErrorLogger {
 		BotUtil.sendMessage(channel, Constant.ERROR_MESSAGE);
 		LogException(e);
 	}
-	
+
 	/**
 	 * Logs an issue to the log file and gives a generic error message to a certain channel to alert users
-	 * 
+	 *
 	 * @param issue The issue to log
 	 * @param channel The channel to give the error message in
 	 */
@@ -60,13 +124,365 @@ public class ErrorLogger {
 		BotUtil.sendMessage(channel, Constant.ERROR_MESSAGE);
 		LogIssue(issue);
 	}
-	
+
 	/**
 	 * Logs an issue to the log file
-	 * 
+	 *
 	 * @param issue The issue to log
 	 */
 	public static void LogIssue(String issue) {
 		LogException(new Exception(issue));
 	}
+
+	/**
+	 * Gets the fingerprints that occurred the most since startup
+	 * 
+	 * @param count The maximum amount of fingerprints to get
+	 * @return The fingerprints sorted by the amount of times they occurred in descending order
+	 */
+	public static List<ErrorFingerprint> getTopFingerprints(int count) {
+		var fingerprints = new ArrayList<ErrorFingerprint>(fingerprintMap.values());
+		
+		fingerprints.sort(Comparator.comparingLong(ErrorFingerprint::getCount).reversed());
+		
+		return fingerprints.subList(0, Math.min(count, fingerprints.size()));
+	}
+	
+	/**
+	 * Gets the amount of throwables that were dropped because the queue was full since the last time they were reported
+	 * in the log file
+	 *
+	 * @return The amount of dropped throwables
+	 */
+	public static long getDroppedCount() {
+		return droppedCount.get();
+	}
+
+	/**
+	 * Queues a log entry for the appender thread
+	 * 
+	 * @param entry The log entry
+	 */
+	private static void enqueue(LogEntry entry) {
+		if(queuedCount.incrementAndGet() > Constant.LOG_QUEUE_CAPACITY) {
+			queuedCount.decrementAndGet();
+			droppedCount.incrementAndGet();
+			return;
+		}
+
+		logQueue.offer(entry);
+		LockSupport.unpark(appenderThread);
+	}
+	
+	/**
+	 * Fingerprints a throwable by its type and the top of its stack trace, which stay the same when the same fault repeats
+	 * even if the message doesn't.
+	 * 
+	 * @param throwable The throwable
+	 * @return The fingerprint
+	 */
+	private static long fingerprint(Throwable throwable) {
+		long hash = throwable.getClass().getName().hashCode();
+		StackTraceElement[] stackTrace = throwable.getStackTrace();
+		
+		for(int i = 0; i < stackTrace.length && i < FINGERPRINT_FRAME_COUNT; i++) {
+			hash = hash * 31 + stackTrace[i].hashCode();
+		}
+		
+		if(throwable.getCause() != null) {
+			hash = hash * 31 + throwable.getCause().getClass().getName().hashCode();
+		}
+		
+		return hash;
+	}
+	
+	/**
+	 * Run by the appender thread. Writes everything in the queue, flushes once and then waits for more.
+	 */
+	private static void appendLogs() {
+		while(true) {
+			boolean isShutdownDrain = isShuttingDown;
+			boolean hasWritten = false;
+			LogEntry entry;
+
+			while((entry = logQueue.poll()) != null) {
+				queuedCount.decrementAndGet();
+				append(format(entry));
+				hasWritten = true;
+			}
+			
+			long currentTime = System.currentTimeMillis();
+			
+			// Writes the repeats of fingerprints whose window is over and that haven't occurred since
+			for(var fingerprint : fingerprintMap.values()) {
+				if(isShutdownDrain || fingerprint.isWindowOver(currentTime)) {
+					long repeatCount = fingerprint.takeRepeatCount();
+					
+					if(repeatCount != 0) {
+						append(Instant.ofEpochMilli(currentTime) + " [" + fingerprint.getID() + "] " + fingerprint.getDescription() 
+								+ " repeated " + repeatCount + " more time(s).\n\n");
+						hasWritten = true;
+					}
+				}
+			}
+
+			long dropped = droppedCount.getAndSet(0);
+
+			if(dropped != 0) {
+				append(dropped + " log entries were dropped because the log queue was full.\n\n");
+				hasWritten = true;
+			}
+
+			if(hasWritten && logWriter != null) {
+				try {
+					logWriter.flush();
+				} catch (IOException e) {
+					closeLogWriter(e);
+				}
+			}
+
+			if(isShutdownDrain) {
+				closeLogWriter(null);
+				return;
+			}
+
+			LockSupport.parkNanos(TimeUnit.SECONDS.toNanos(1));
+		}
+	}
+
+	/**
+	 * Formats a log entry
+	 *
+	 * @param entry The log entry
+	 * @return The formatted log entry
+	 */
+	private static String format(LogEntry entry) {
+		StringWriter stackTrace = new StringWriter();
+		
+		stackTrace.append(Instant.ofEpochMilli(entry.getTime()).toString());
+		
+		if(entry.getFingerprint() != null) {
+			stackTrace.append(" [").append(entry.getFingerprint().getID()).append(']');
+		}
+		
+		if(entry.getRepeatCount() != 0) {
+			stackTrace.append(" (repeated ").append(Long.toString(entry.getRepeatCount())).append(" more time(s) since it was last logged)");
+		}
+		
+		stackTrace.append('\n');
+
+		try(PrintWriter stackTraceWriter = new PrintWriter(stackTrace)) {
+			entry.getThrowable().printStackTrace(stackTraceWriter);
+		}
+
+		System.err.print(stackTrace);
+		stackTrace.append('\n');
+
+		return stackTrace.toString();
+	}
+
+	/**
+	 * Appends a log entry to the log file, opening or rotating the log file first if necessary.
+	 *
+	 * @param entry The log entry
+	 */
+	private static void append(String entry) {
+		if(logWriter != null && logFileSize >= Constant.MAX_LOG_FILE_SIZE) {
+			rotateLogFile();
+		}
+
+		if(logWriter == null && !openLogWriter()) {
+			return;
+		}
+
+		try {
+			logWriter.write(entry);
+			logFileSize += entry.length();
+		} catch (IOException e) {
+			closeLogWriter(e);
+		}
+	}
+
+	/**
+	 * Opens the log file for appending
+	 *
+	 * @return Whether the log file was opened
+	 */
+	private static boolean openLogWriter() {
+		File logFile = new File(Constant.LOG_FILE);
+
+		try {
+			logWriter = Files.newBufferedWriter(logFile.toPath(), StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+					StandardOpenOption.APPEND);
+			logFileSize = logFile.length();
+			return true;
+		} catch (IOException e) {
+			System.out.println("Failed to open the logging file");
+			return false;
+		}
+	}
+
+	/**
+	 * Moves the log file to LOG_FILE.1, replacing the previous one. The next entry opens a new log file.
+	 */
+	private static void rotateLogFile() {
+		closeLogWriter(null);
+
+		File logFile = new File(Constant.LOG_FILE);
+
+		try {
+			Files.move(logFile.toPath(), new File(Constant.LOG_FILE + ".1").toPath(), StandardCopyOption.REPLACE_EXISTING);
+		} catch (IOException e) {
+			System.out.println("Failed to rotate the logging file");
+		}
+	}
+
+	/**
+	 * Closes the log file. It'll be reopened by the next entry.
+	 *
+	 * @param cause The IOException that caused the log file to be closed. Null if there was none.
+	 */
+	private static void closeLogWriter(IOException cause) {
+		if(cause != null) {
+			System.out.println("Failed to write to the logging file");
+			cause.printStackTrace();
+		}
+
+		if(logWriter == null) {
+			return;
+		}
+
+		try {
+			logWriter.close();
+		} catch (IOException e) {
+			// The log file is being abandoned either way
+		}
+
+		logWriter = null;
+	}
+
+	/**
+	 * A kind of error identified by the type and the top of the stack trace of its throwables
+	 */
+	public static final class ErrorFingerprint {
+		private final long fingerprint;
+		private final String description;
+		private final AtomicLong count;
+		private final AtomicLong windowStart;
+		private final AtomicLong repeatCount;
+		private volatile long lastOccurrence;
+		
+		private ErrorFingerprint(long fingerprint, Throwable throwable) {
+			String description = throwable.toString();
+			
+			// Issues are created inside of the ErrorLogger, so the frames from it are skipped
+			for(var frame : throwable.getStackTrace()) {
+				if(!frame.getClassName().equals(ErrorLogger.class.getName())) {
+					description += " at " + frame;
+					break;
+				}
+			}
+			
+			this.fingerprint = fingerprint;
+			this.description = description;
+			count = new AtomicLong();
+			windowStart = new AtomicLong(-Constant.LOG_FINGERPRINT_WINDOW); // The first occurrence always starts a window
+			repeatCount = new AtomicLong();
+		}
+		
+		/**
+		 * Gets the ID of the fingerprint, which is written next to its entries in the log file
+		 * 
+		 * @return The ID in hexadecimal
+		 */
+		public String getID() {
+			return Long.toHexString(fingerprint);
+		}
+		
+		/**
+		 * Gets the description of the first throwable with this fingerprint
+		 * 
+		 * @return The throwable's type and message followed by the frame it was thrown from
+		 */
+		public String getDescription() {
+			return description;
+		}
+		
+		/**
+		 * Gets the amount of times a throwable with this fingerprint was logged since startup
+		 * 
+		 * @return The amount
+		 */
+		public long getCount() {
+			return count.get();
+		}
+		
+		/**
+		 * Gets the time a throwable with this fingerprint was last logged
+		 * 
+		 * @return The time in epoch milliseconds
+		 */
+		public long getLastOccurrence() {
+			return lastOccurrence;
+		}
+		
+		/**
+		 * Records an occurrence
+		 * 
+		 * @param currentTime The current time in epoch milliseconds
+		 * @return Whether the occurrence starts a new window and should be written in full. 
+		 * Otherwise, it's counted as a repeat.
+		 */
+		private boolean record(long currentTime) {
+			count.incrementAndGet();
+			lastOccurrence = currentTime;
+			
+			long start = windowStart.get();
+			
+			if(currentTime - start >= Constant.LOG_FINGERPRINT_WINDOW && windowStart.compareAndSet(start, currentTime)) {
+				return true;
+			}
+			
+			repeatCount.incrementAndGet();
+			return false;
+		}
+		
+		private boolean isWindowOver(long currentTime) {
+			return currentTime - windowStart.get() >= Constant.LOG_FINGERPRINT_WINDOW;
+		}
+		
+		private long takeRepeatCount() {
+			return repeatCount.getAndSet(0);
+		}
+	}
+	
+	private static final class LogEntry {
+		private final Throwable throwable;
+		private final ErrorFingerprint fingerprint;
+		private final long repeatCount;
+		private final long time;
+		
+		private LogEntry(Throwable throwable, ErrorFingerprint fingerprint, long repeatCount) {
+			this.throwable = throwable;
+			this.fingerprint = fingerprint;
+			this.repeatCount = repeatCount;
+			time = System.currentTimeMillis();
+		}
+		
+		private Throwable getThrowable() {
+			return throwable;
+		}
+		
+		private ErrorFingerprint getFingerprint() {
+			return fingerprint;
+		}
+		
+		private long getRepeatCount() {
+			return repeatCount;
+		}
+		
+		private long getTime() {
+			return time;
+		}
+	}
 }
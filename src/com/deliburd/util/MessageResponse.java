@@ -28,6 +28,8 @@ public class MessageResponse {
 	private volatile MessageResponse nextResponse;
 	private volatile long timeout;
 	private volatile String cancelMessage;
+	private volatile String continuationID;
+	private volatile String continuationArgument;
 	private volatile boolean isFinalized;
 	
 	/**
@@ -134,6 +136,8 @@ public class MessageResponse {
 		validResponses = response.validResponses;
 		cancelResponses = response.cancelResponses;
 		isTextChannel = response.isTextChannel;
+		continuationID = response.getContinuationID();
+		continuationArgument = response.getContinuationArgument();
 	}
 	
 	/**
@@ -312,6 +316,24 @@ public class MessageResponse {
 		return nextResponse;
 	}
 	
+	/**
+	 * Returns the ID of the continuation that resumes this MessageResponse after a restart
+	 * 
+	 * @return The continuation ID. Null if the MessageResponse isn't journaled.
+	 */
+	public String getContinuationID() {
+		return continuationID;
+	}
+	
+	/**
+	 * Returns the argument given to the continuation that resumes this MessageResponse after a restart
+	 * 
+	 * @return The continuation argument. Null if the MessageResponse isn't journaled.
+	 */
+	public String getContinuationArgument() {
+		return continuationArgument;
+	}
+	
 	/**
 	 * Returns whether the MessageResponse has been finalized.
 	 * 
@@ -462,6 +484,30 @@ public class MessageResponse {
 		return this;
 	}
 	
+	/**
+	 * Journals the MessageResponse while it's in the queue so the conversation can be resumed after a restart.
+	 * The next time the user sends one of its valid or cancel responses in the channel after a restart, the continuation
+	 * registered under the ID with MessageResponseQueue.registerContinuation is run with the argument instead.
+	 * 
+	 * @param continuationID The ID of the continuation. Can't be null or contain whitespace.
+	 * @param argument The argument to give to the continuation. Can't be null or contain line breaks.
+	 * @return The modified MessageResponse object
+	 */
+	public MessageResponse setContinuation(String continuationID, String argument) {
+		if(isFinalized) {
+			throw new IllegalStateException("The MessageResponse has already been finalized.");
+		} else if(continuationID == null || continuationID.isEmpty() || continuationID.chars().anyMatch(Character::isWhitespace)) {
+			throw new IllegalArgumentException("The continuation ID can't be null, empty or contain whitespace.");
+		} else if(argument == null || argument.indexOf('\n') != -1 || argument.indexOf('\r') != -1) {
+			throw new IllegalArgumentException("The continuation argument can't be null or contain line breaks.");
+		}
+		
+		this.continuationID = continuationID;
+		continuationArgument = argument;
+		
+		return this;
+	}
+	
 	/**
 	 * Chains a MessageResponse on to the current MessageResponse. All getters and setters will only apply to the first MessageResponse
 	 * in the chain. However, MessageResponses can be chained multiple times to allow for longer chains.
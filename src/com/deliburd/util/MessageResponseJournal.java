@@ -0,0 +1,448 @@
+package com.deliburd.util;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.deliburd.util.scheduling.TaskScheduler;
+
+/**
+ * An append-only journal of the MessageResponses that have a continuation. Each registration is appended as an ADD line,
+ * each new deadline as an EXTEND line and each removal as a REMOVE line. Changes are only queued when they're made and
+ * are written and synced to the disk together in the background, so journaling never blocks on the disk and a crash can
+ * lose at most the changes from the last FLUSH_DELAY milliseconds. The journal is replayed and compacted down to the entries
+ * that haven't expired when it's opened, and is compacted again whenever more of its lines are dead than live.
+ *
+ * @author MelonShooter
+ *
+ */
+final class MessageResponseJournal {
+	private static final String ADD = "ADD";
+	private static final String EXTEND = "EXTEND";
+	private static final String REMOVE = "REMOVE";
+
+	/**
+	 * The delay in milliseconds between the first unflushed change and the flush
+	 */
+	private static final int FLUSH_DELAY = 1000;
+
+	/**
+	 * The least amount of lines the journal must have before it's compacted while it's open
+	 */
+	private static final int MIN_COMPACTION_LINE_COUNT = 256;
+	private final File journalFile;
+	private final List<JournalEntry> replayedEntries;
+
+	/**
+	 * The ADD and REMOVE lines that haven't been written yet in the order they were made
+	 */
+	private final ConcurrentLinkedQueue<String> pendingLines;
+
+	/**
+	 * The latest deadline of each entry whose deadline changed since the last flush, so only one EXTEND line is written per flush
+	 */
+	private final ConcurrentHashMap<Long, Long> pendingDeadlines;
+	private final AtomicBoolean flushScheduled;
+	private final AtomicLong nextEntryID;
+
+	/**
+	 * The writer for the journal file. Only used while synchronized on the journal.
+	 */
+	private Writer journalWriter;
+
+	/**
+	 * The channel journalWriter writes to, which is used to sync the journal to the disk. Only used while synchronized on the journal.
+	 */
+	private FileChannel journalChannel;
+
+	/**
+	 * The amount of lines in the journal file. Only used while synchronized on the journal.
+	 */
+	private int lineCount;
+
+	/**
+	 * The amount of entries in the journal file that haven't been removed. Only used while synchronized on the journal.
+	 */
+	private int liveEntryCount;
+
+	/**
+	 * Opens a journal, replaying and compacting it if it already exists. If the journal can't be opened,
+	 * the error is logged and nothing will be journaled.
+	 *
+	 * @param journalFile The journal file
+	 */
+	MessageResponseJournal(File journalFile) {
+		this.journalFile = journalFile;
+		pendingLines = new ConcurrentLinkedQueue<String>();
+		pendingDeadlines = new ConcurrentHashMap<Long, Long>(8, .75f, 3);
+		flushScheduled = new AtomicBoolean();
+		nextEntryID = new AtomicLong();
+
+		var liveEntries = new LinkedHashMap<Long, JournalEntry>();
+		long currentTime = Instant.now().toEpochMilli();
+
+		try {
+			replay(liveEntries);
+			liveEntries.values().removeIf(entry -> entry.getDeadline() <= currentTime);
+			compact(liveEntries.values());
+			openJournalWriter();
+			lineCount = liveEntries.size();
+			liveEntryCount = lineCount;
+		} catch (IOException e) {
+			ErrorLogger.LogException(e);
+		}
+
+		replayedEntries = Collections.unmodifiableList(new ArrayList<JournalEntry>(liveEntries.values()));
+		Runtime.getRuntime().addShutdownHook(new Thread(this::flush, "MessageResponseJournal-Flush"));
+	}
+
+	/**
+	 * Gets the entries that were still live when the journal was opened
+	 *
+	 * @return An unmodifiable list of the entries in the order they were added
+	 */
+	List<JournalEntry> getReplayedEntries() {
+		return replayedEntries;
+	}
+
+	/**
+	 * Journals a MessageResponse that has a continuation
+	 *
+	 * @param response The MessageResponse
+	 * @param deadline The time in epoch milliseconds after which the MessageResponse times out
+	 * @return The ID of the entry, which is used to extend or remove it
+	 */
+	long add(MessageResponse response, long deadline) {
+		long entryID = nextEntryID.getAndIncrement();
+		var triggers = new HashSet<String>(response.getValidResponses());
+
+		if(response.getCancelResponses() != null) {
+			triggers.addAll(response.getCancelResponses());
+		}
+
+		queue(ADD + " " + entryID + " " + response.getUserID() + " " + response.getChannelID() + " " + deadline + " "
+				+ encodeTriggers(triggers) + " " + response.getContinuationID() + " " + response.getContinuationArgument());
+
+		return entryID;
+	}
+
+	/**
+	 * Journals a new deadline for an entry
+	 *
+	 * @param entryID The ID of the entry
+	 * @param deadline The time in epoch milliseconds after which the MessageResponse now times out
+	 */
+	void extend(long entryID, long deadline) {
+		if(journalWriter == null) {
+			return;
+		}
+
+		pendingDeadlines.put(entryID, deadline);
+		scheduleFlush();
+	}
+
+	/**
+	 * Journals the removal of an entry
+	 *
+	 * @param entryID The ID of the entry
+	 */
+	void remove(long entryID) {
+		queue(REMOVE + " " + entryID);
+	}
+
+	/**
+	 * Queues a line to be appended to the journal
+	 *
+	 * @param line The line
+	 */
+	private void queue(String line) {
+		if(journalWriter == null) {
+			return;
+		}
+
+		pendingLines.add(line);
+		scheduleFlush();
+	}
+
+	/**
+	 * Schedules a flush if one isn't scheduled already. Changes made before the flush runs are written together.
+	 */
+	private void scheduleFlush() {
+		if(flushScheduled.compareAndSet(false, true)) {
+			TaskScheduler.getScheduler().schedule(this::flush, FLUSH_DELAY, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * Appends the queued changes to the journal, syncs it to the disk and compacts it if most of it is dead
+	 */
+	private synchronized void flush() {
+		flushScheduled.set(false);
+
+		if(journalWriter == null) {
+			return;
+		}
+
+		// The deadlines are taken first so the ADD line of every entry they're for has already been queued
+		var deadlines = new ArrayList<String>(pendingDeadlines.size());
+
+		for(var entryID : pendingDeadlines.keySet()) {
+			Long deadline = pendingDeadlines.remove(entryID);
+
+			if(deadline != null) {
+				deadlines.add(EXTEND + " " + entryID + " " + deadline);
+			}
+		}
+
+		try {
+			String line;
+
+			while((line = pendingLines.poll()) != null) {
+				journalWriter.write(line);
+				journalWriter.write('\n');
+				lineCount++;
+
+				if(line.startsWith(ADD)) {
+					liveEntryCount++;
+				} else {
+					liveEntryCount--;
+				}
+			}
+
+			for(var deadlineLine : deadlines) {
+				journalWriter.write(deadlineLine);
+				journalWriter.write('\n');
+				lineCount++;
+			}
+
+			journalWriter.flush();
+			journalChannel.force(false);
+
+			if(lineCount >= MIN_COMPACTION_LINE_COUNT && lineCount - liveEntryCount > liveEntryCount) {
+				compactOpenJournal();
+			}
+		} catch (IOException e) {
+			ErrorLogger.LogException(e);
+		}
+	}
+
+	/**
+	 * Compacts the journal down to the entries that haven't been removed and reopens it.
+	 * Must be called while synchronized on the journal after everything has been flushed.
+	 *
+	 * @throws IOException If the journal couldn't be compacted or reopened
+	 */
+	private void compactOpenJournal() throws IOException {
+		var liveEntries = new LinkedHashMap<Long, JournalEntry>();
+		journalWriter.close();
+
+		try {
+			// Entries past their deadline are kept since they're only dead once they're removed
+			replay(liveEntries);
+			compact(liveEntries.values());
+			lineCount = liveEntries.size();
+			liveEntryCount = lineCount;
+		} finally {
+			// If compacting failed, the old journal is still in place, so appending to it is still safe
+			openJournalWriter();
+		}
+	}
+
+	/**
+	 * Opens the journal file for appending
+	 *
+	 * @throws IOException If the journal file couldn't be opened
+	 */
+	private void openJournalWriter() throws IOException {
+		var journalStream = new FileOutputStream(journalFile, true);
+		journalChannel = journalStream.getChannel();
+		journalWriter = new BufferedWriter(new OutputStreamWriter(journalStream, StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Replays the journal file
+	 *
+	 * @param liveEntries The map to put the entries that haven't been removed into, keyed by their ID
+	 * @throws IOException If the journal couldn't be read
+	 */
+	private void replay(LinkedHashMap<Long, JournalEntry> liveEntries) throws IOException {
+		if(!journalFile.exists()) {
+			return;
+		}
+
+		try(BufferedReader journalReader = Files.newBufferedReader(journalFile.toPath(), StandardCharsets.UTF_8)) {
+			String line;
+
+			while((line = journalReader.readLine()) != null) {
+				String[] fields = line.split(" ", 8);
+
+				try {
+					long entryID = Long.parseLong(fields[1]);
+					nextEntryID.accumulateAndGet(entryID + 1, Math::max);
+
+					if(fields[0].equals(REMOVE)) {
+						liveEntries.remove(entryID);
+					} else if(fields[0].equals(EXTEND) && fields.length == 3) {
+						long deadline = Long.parseLong(fields[2]);
+						liveEntries.computeIfPresent(entryID, (id, entry) -> entry.withDeadline(deadline));
+					} else if(fields[0].equals(ADD) && fields.length == 8) {
+						liveEntries.put(entryID, new JournalEntry(entryID, Long.parseLong(fields[2]), Long.parseLong(fields[3]),
+								Long.parseLong(fields[4]), decodeTriggers(fields[5]), fields[6], fields[7]));
+					}
+				} catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+					// A line torn by a crash. Everything before it is still valid.
+					continue;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Encodes triggers into a single field. Each trigger is Base64 encoded so it can't contain a space or a comma.
+	 *
+	 * @param triggers The triggers
+	 * @return The field
+	 */
+	private static String encodeTriggers(Set<String> triggers) {
+		var encoder = Base64.getEncoder();
+		var field = new StringJoiner(",");
+
+		for(var trigger : triggers) {
+			field.add(encoder.encodeToString(trigger.getBytes(StandardCharsets.UTF_8)));
+		}
+
+		return field.toString();
+	}
+
+	/**
+	 * Decodes the triggers from a field made by encodeTriggers
+	 *
+	 * @param field The field
+	 * @return The triggers
+	 * @throws IllegalArgumentException If the field isn't valid Base64
+	 */
+	private static Set<String> decodeTriggers(String field) {
+		var decoder = Base64.getDecoder();
+		var triggers = new HashSet<String>();
+
+		for(var encodedTrigger : field.split(",", -1)) {
+			triggers.add(new String(decoder.decode(encodedTrigger), StandardCharsets.UTF_8));
+		}
+
+		return Collections.unmodifiableSet(triggers);
+	}
+
+	/**
+	 * Rewrites the journal so it only contains the given entries. The new journal is synced to the disk before it replaces the old one.
+	 *
+	 * @param liveEntries The entries to keep
+	 * @throws IOException If the journal couldn't be rewritten
+	 */
+	private void compact(Iterable<JournalEntry> liveEntries) throws IOException {
+		File parent = journalFile.getAbsoluteFile().getParentFile();
+
+		if(parent != null) {
+			parent.mkdirs();
+		}
+
+		File compactedFile = new File(journalFile.getPath() + ".tmp");
+
+		try(var compactedStream = new FileOutputStream(compactedFile);
+				var compactedWriter = new BufferedWriter(new OutputStreamWriter(compactedStream, StandardCharsets.UTF_8))) {
+			for(var entry : liveEntries) {
+				compactedWriter.write(ADD + " " + entry.getEntryID() + " " + entry.getUserID() + " " + entry.getChannelID() + " "
+						+ entry.getDeadline() + " " + encodeTriggers(entry.getTriggers()) + " " + entry.getContinuationID() + " "
+						+ entry.getContinuationArgument());
+				compactedWriter.write('\n');
+			}
+
+			compactedWriter.flush();
+			compactedStream.getChannel().force(false);
+		}
+
+		Files.move(compactedFile.toPath(), journalFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * A MessageResponse that was read back from the journal
+	 */
+	static final class JournalEntry {
+		private final long entryID;
+		private final long userID;
+		private final long channelID;
+		private final long deadline;
+		private final Set<String> triggers;
+		private final String continuationID;
+		private final String continuationArgument;
+
+		private JournalEntry(long entryID, long userID, long channelID, long deadline, Set<String> triggers, String continuationID,
+				String continuationArgument) {
+			this.entryID = entryID;
+			this.userID = userID;
+			this.channelID = channelID;
+			this.deadline = deadline;
+			this.triggers = triggers;
+			this.continuationID = continuationID;
+			this.continuationArgument = continuationArgument;
+		}
+
+		long getEntryID() {
+			return entryID;
+		}
+
+		long getUserID() {
+			return userID;
+		}
+
+		long getChannelID() {
+			return channelID;
+		}
+
+		long getDeadline() {
+			return deadline;
+		}
+
+		/**
+		 * Gets the valid and cancel responses of the MessageResponse. The empty string matches any message.
+		 *
+		 * @return An unmodifiable set of the triggers
+		 */
+		Set<String> getTriggers() {
+			return triggers;
+		}
+
+		String getContinuationID() {
+			return continuationID;
+		}
+
+		String getContinuationArgument() {
+			return continuationArgument;
+		}
+
+		private JournalEntry withDeadline(long newDeadline) {
+			return new JournalEntry(entryID, userID, channelID, newDeadline, triggers, continuationID, continuationArgument);
+		}
+	}
+}
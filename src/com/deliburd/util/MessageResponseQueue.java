@@ -1,9 +1,19 @@
 package com.deliburd.util;
 
+import java.io.File;
+import java.time.Instant;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
-import java.util.Timer;
-import java.util.TimerTask;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
+
+import com.deliburd.bot.burdbot.Constant;
+import com.deliburd.util.MessageResponseJournal.JournalEntry;
+import com.deliburd.util.scheduling.ScheduledTask;
+import com.deliburd.util.scheduling.TaskScheduler;
 
 import net.dv8tion.jda.api.entities.MessageChannel;
 import net.dv8tion.jda.api.events.message.MessageReceivedEvent;
@@ -12,15 +22,60 @@ import net.dv8tion.jda.api.hooks.ListenerAdapter;
 public final class MessageResponseQueue extends ListenerAdapter {
 	private final static MessageResponseQueue responseQueue = new MessageResponseQueue();
 	private final ConcurrentHashMap<String, Set<MessageResponse>> responseMap;
-	private final ConcurrentHashMap<MessageResponse, TimerTask> responseTimeoutMap;
-	private final Set<Long> responseUsers;
-	private final Timer callbackTimeouts; 
+	private final ConcurrentHashMap<MessageResponse, ScheduledTask> responseTimeoutMap;
+	
+	/**
+	 * The MessageResponses of each user keyed by the user's ID and then the channel's ID.
+	 * Every change to a user's MessageResponses is made while holding the user's entry in this map,
+	 * which keeps this map, the response map and the timeout map consistent with each other.
+	 */
+	private final ConcurrentHashMap<Long, Map<Long, Set<MessageResponse>>> userResponseMap;
+	
+	/**
+	 * Matches messages against the keys of the response map. Recompiled whenever a trigger is added or removed.
+	 */
+	private volatile TriggerMatcher triggerMatcher;
+	
+	/**
+	 * Journals the MessageResponses that have a continuation so they can be resumed after a restart
+	 */
+	private final MessageResponseJournal journal;
+	
+	/**
+	 * The journal entry IDs of the journaled MessageResponses in the queue
+	 */
+	private final ConcurrentHashMap<MessageResponse, Long> journalEntryMap;
+	
+	/**
+	 * The continuations that resume journaled MessageResponses keyed by their ID
+	 */
+	private final ConcurrentHashMap<String, BiConsumer<MessageReceivedEvent, String>> continuationMap;
+	
+	/**
+	 * The journal entries from before the restart that haven't been resumed yet keyed by the user's ID and then the channel's ID.
+	 * They're resumed when the user next sends a message in the channel.
+	 */
+	private final ConcurrentHashMap<Long, Map<Long, JournalEntry>> dormantResponseMap;
 	
 	private MessageResponseQueue() {
 		responseMap = new ConcurrentHashMap<String, Set<MessageResponse>>(8, .75f, 3);
-		responseTimeoutMap = new ConcurrentHashMap<MessageResponse, TimerTask>(8, .75f, 3);
-		responseUsers = ConcurrentHashMap.newKeySet();
-		callbackTimeouts = new Timer(true);
+		responseTimeoutMap = new ConcurrentHashMap<MessageResponse, ScheduledTask>(8, .75f, 3);
+		userResponseMap = new ConcurrentHashMap<Long, Map<Long, Set<MessageResponse>>>(8, .75f, 3);
+		triggerMatcher = new TriggerMatcher(responseMap.keySet());
+		journal = new MessageResponseJournal(new File(Constant.RESPONSE_JOURNAL_FILE));
+		journalEntryMap = new ConcurrentHashMap<MessageResponse, Long>(8, .75f, 3);
+		continuationMap = new ConcurrentHashMap<String, BiConsumer<MessageReceivedEvent, String>>(4, .75f, 1);
+		dormantResponseMap = new ConcurrentHashMap<Long, Map<Long, JournalEntry>>(8, .75f, 3);
+		
+		for(var entry : journal.getReplayedEntries()) {
+			var channelEntryMap = dormantResponseMap.computeIfAbsent(entry.getUserID(), userID -> new ConcurrentHashMap<Long, JournalEntry>(4, .75f, 1));
+			var replacedEntry = channelEntryMap.put(entry.getChannelID(), entry);
+			
+			// Only the latest step of a conversation is resumed
+			if(replacedEntry != null) {
+				journal.remove(replacedEntry.getEntryID());
+			}
+		}
 	}
 	
 	/**
@@ -32,6 +87,19 @@ public final class MessageResponseQueue extends ListenerAdapter {
 		return responseQueue;
 	}
 	
+	/**
+	 * Registers a continuation, which resumes the journaled MessageResponses with its ID after a restart.
+	 * The continuation is given the user's first message in the channel after the restart that's one of the MessageResponse's
+	 * valid or cancel responses and the continuation argument.
+	 * That message isn't given to any other MessageResponse.
+	 * 
+	 * @param continuationID The ID of the continuation
+	 * @param continuation The continuation
+	 */
+	public void registerContinuation(String continuationID, BiConsumer<MessageReceivedEvent, String> continuation) {
+		continuationMap.put(continuationID, continuation);
+	}
+	
 	/**
 	 * Registers a callback to run after a response is given to your initial message.
 	 * Does nothing if an equivalent MessageResponse has already been added.
@@ -66,43 +134,26 @@ public final class MessageResponseQueue extends ListenerAdapter {
 	 * @param message The message which isn't used
 	 */
 	private void addCallback(MessageResponse response) {
-		if(hasMessageResponse(response)) {
-			return;
-		}
-		
-		for(String validResponse : response.getValidResponses()) {
-			var responseList = responseMap.get(validResponse);
-			
-			if(responseList == null) {
-				responseList = ConcurrentHashMap.newKeySet();
-				responseMap.putIfAbsent(validResponse, responseList);
+		userResponseMap.compute(response.getUserID(), (userID, channelResponseMap) -> {
+			if(channelResponseMap == null) {
+				channelResponseMap = new ConcurrentHashMap<Long, Set<MessageResponse>>(4, .75f, 1);
+			} else if(hasMessageResponse(response)) {
+				return channelResponseMap;
 			}
 			
-			responseList.add(response);
-		}
-		
-		var cancelResponses = response.getCancelResponses();
-		
-		if(cancelResponses != null) {
-			for(String cancelResponse : cancelResponses) {
-				var responseList = responseMap.get(cancelResponse);
-				
-				if(responseList == null) {
-					responseList = ConcurrentHashMap.newKeySet();
-					responseMap.putIfAbsent(cancelResponse, responseList);
-				}
-				
-				responseList.add(response);
+			channelResponseMap.computeIfAbsent(response.getChannelID(), channelID -> ConcurrentHashMap.newKeySet()).add(response);
+			addTriggers(response.getValidResponses(), response);
+			addTriggers(response.getCancelResponses(), response);
+			
+			Runnable removeTask = generateRemoveTask(response);
+			responseTimeoutMap.put(response, TaskScheduler.getScheduler().schedule(removeTask, response.getTimeout(), TimeUnit.MILLISECONDS));
+			
+			if(response.getContinuationID() != null) {
+				journalEntryMap.put(response, journal.add(response, Instant.now().toEpochMilli() + response.getTimeout()));
 			}
-		}
-		
-		long timeout = response.getTimeout();
-		
-		TimerTask task = generateRemoveTask(response);
-
-		responseTimeoutMap.put(response, task);
-		callbackTimeouts.schedule(task, timeout);
-		responseUsers.add(response.getUserID());
+			
+			return channelResponseMap;
+		});
 	}
 	
 	/**
@@ -124,13 +175,21 @@ public final class MessageResponseQueue extends ListenerAdapter {
 	 * @return Whether the queue contains an equivalent MessageResponse
 	 */
 	public boolean hasMessageResponse(String responseMessage, long userID) {
-		var responseSet = responseMap.get(responseMessage);
+		var channelResponseMap = userResponseMap.get(userID);
 		
-		if(responseSet == null) {
+		if(channelResponseMap == null) {
 			return false;
-		} else {
-			return responseMap.get(responseMessage).stream().anyMatch(r -> r.getUserID() == userID);
 		}
+		
+		for(var responseSet : channelResponseMap.values()) {
+			for(var response : responseSet) {
+				if(isTrigger(response, responseMessage)) {
+					return true;
+				}
+			}
+		}
+		
+		return false;
 	}
 	
 	/**
@@ -143,13 +202,19 @@ public final class MessageResponseQueue extends ListenerAdapter {
 	 * @return Whether the queue contains an equivalent MessageResponse
 	 */
 	public boolean hasMessageResponse(String message, long userID, long chID) {
-		var responseSet = responseMap.get(message);
+		var responseSet = getMessageResponses(userID, chID);
 		
 		if(responseSet == null) {
 			return false;
-		} else {
-			return responseSet.stream().anyMatch(r -> r.getUserID() == userID && r.getChannelID() == chID);
 		}
+		
+		for(var response : responseSet) {
+			if(isTrigger(response, message)) {
+				return true;
+			}
+		}
+		
+		return false;
 	}
 	
 	/**
@@ -158,17 +223,21 @@ public final class MessageResponseQueue extends ListenerAdapter {
 	 * @param response The Messageresponse to check the queue against and reset the timeout
 	 */
 	public void resetTimeout(MessageResponse response) {
-		TimerTask retreivedTask = responseTimeoutMap.get(response);
-		
-		if(retreivedTask != null) {
-			boolean isSuccessful = retreivedTask.cancel();
-			
-			if(isSuccessful) {
-				TimerTask newTask = generateRemoveTask(response);
-				responseTimeoutMap.put(response, newTask);
-				callbackTimeouts.schedule(newTask, response.getTimeout());
+		responseTimeoutMap.computeIfPresent(response, (registeredResponse, retreivedTask) -> {
+			if(retreivedTask.cancel()) {
+				Runnable removeTask = generateRemoveTask(registeredResponse);
+				
+				Long entryID = journalEntryMap.get(registeredResponse);
+				
+				if(entryID != null) {
+					journal.extend(entryID, Instant.now().toEpochMilli() + registeredResponse.getTimeout());
+				}
+				
+				return TaskScheduler.getScheduler().schedule(removeTask, registeredResponse.getTimeout(), TimeUnit.MILLISECONDS);
 			}
-		}
+			
+			return retreivedTask;
+		});
 	}
 	
 	/**
@@ -188,7 +257,7 @@ public final class MessageResponseQueue extends ListenerAdapter {
 	 * even if the message is displayed in this case.
 	 */
 	public void removeMessageResponse(MessageResponse response, boolean displayCancelMessage) {
-		removeMessageResponse(response, null, displayCancelMessage);
+		unregisterMessageResponse(response, displayCancelMessage);
 	}
 
 	/**
@@ -198,135 +267,279 @@ public final class MessageResponseQueue extends ListenerAdapter {
 	 * @param chID The channel ID to check
 	 */
 	public void removeMessageResponses(long userID, long chID) {
-		var responseMapIterator = responseMap.values().iterator();
-		boolean foundExtraUserMessageResponse = false;
-
-		while(responseMapIterator.hasNext()) {
-			var responseSet = responseMapIterator.next();
-			var responseSetIterator = responseSet.iterator();
+		userResponseMap.computeIfPresent(userID, (id, channelResponseMap) -> {
+			var responseSet = channelResponseMap.remove(chID);
 			
-			while(responseSetIterator.hasNext()) {
-				MessageResponse response = responseSetIterator.next();
-				
-				if(response.getUserID() == userID && response.getChannelID() == chID) {
-					responseTimeoutMap.remove(response);
-					responseSetIterator.remove();
-				} else if(response.getUserID() == userID) { // There's a MessageResponse for this user we aren't going to remove
-					foundExtraUserMessageResponse = true;
+			if(responseSet != null) {
+				for(var response : responseSet) {
+					var responseTimeoutTask = responseTimeoutMap.remove(response);
+					
+					if(responseTimeoutTask != null) {
+						responseTimeoutTask.cancel();
+					}
+					
+					removeJournalEntry(response);
+					removeTriggers(response.getValidResponses(), response);
+					removeTriggers(response.getCancelResponses(), response);
 				}
 			}
-
-			if(responseSet.isEmpty()) {
-				responseMapIterator.remove();
+			
+			return channelResponseMap.isEmpty() ? null : channelResponseMap;
+		});
+	}
+	
+	/**
+	 * Used internally to remove MessageResponses and give the cancel message if necessary
+	 * 
+	 * @param response The MessageResponse to remove
+	 * @param displayCancelMessage Whether the callback ran or not. If set to true, the
+	 * cancel message will be given.
+	 * @return Whether the MessageResponse was in the queue
+	 */
+	private boolean unregisterMessageResponse(MessageResponse response, boolean displayCancelMessage) {
+		var wasRemoved = new AtomicBoolean();
+		
+		userResponseMap.computeIfPresent(response.getUserID(), (userID, channelResponseMap) -> {
+			var responseTimeoutTask = responseTimeoutMap.remove(response);
+			
+			if(responseTimeoutTask == null) {
+				return channelResponseMap;
+			}
+			
+			responseTimeoutTask.cancel();
+			wasRemoved.set(true);
+			removeJournalEntry(response);
+			
+			channelResponseMap.computeIfPresent(response.getChannelID(), (channelID, responseSet) -> {
+				responseSet.remove(response);
+				return responseSet.isEmpty() ? null : responseSet;
+			});
+			
+			removeTriggers(response.getValidResponses(), response);
+			removeTriggers(response.getCancelResponses(), response);
+			
+			return channelResponseMap.isEmpty() ? null : channelResponseMap;
+		});
+		
+		if(wasRemoved.get() && displayCancelMessage) {
+			MessageChannel channel = response.getChannel();
+			
+			if(channel == null) {
+				ErrorLogger.LogIssue("Cancel message couldn't be sent because channel was probably deleted.");
+			} else {
+				sendCancelMessage(response.getChannel(), response.getCancelMessage(), response.getUserID());
 			}
 		}
 		
-		if(!foundExtraUserMessageResponse) {
-			responseUsers.remove(userID);
+		return wasRemoved.get();
+	}
+	
+	/**
+	 * Journals the removal of a MessageResponse if it was journaled
+	 * 
+	 * @param response The MessageResponse
+	 */
+	private void removeJournalEntry(MessageResponse response) {
+		Long entryID = journalEntryMap.remove(response);
+		
+		if(entryID != null) {
+			journal.remove(entryID);
 		}
 	}
 	
 	/**
-	 * Used internally to remove MessageResponses while disregarding any sets containing the given
-	 * message and any sets not containing a response in the given MessageResponse
+	 * Resumes the conversation from before the restart for the author of the message in the channel if there is one
+	 * and the message is one of its valid or cancel responses. Expired conversations are dropped.
 	 * 
-	 * @param response The MessageResponse to remove
-	 * @param message The message to disregard the mapped set for
-	 * @param displayCancelMessage Whether the callback ran or not. If set to true, the
-	 * cancel message will be given.
+	 * @param event The event of the message
+	 * @return Whether a conversation was resumed
 	 */
-	private void removeMessageResponse(MessageResponse response, String message, boolean displayCancelMessage) {
-		responseUsers.remove(response.getUserID());
+	private boolean resumeDormantResponse(MessageReceivedEvent event) {
+		long userID = event.getAuthor().getIdLong();
+		long channelID = event.getChannel().getIdLong();
+		var channelEntryMap = dormantResponseMap.get(userID);
+		
+		if(channelEntryMap == null) {
+			return false;
+		}
 		
-		TimerTask responseTimeoutTask = responseTimeoutMap.get(response);
+		var entry = channelEntryMap.get(channelID);
 		
-		if(responseTimeoutTask != null) {
-			responseTimeoutTask.cancel();
-			responseTimeoutMap.remove(response);
-		} else {
-			return;
+		if(entry == null) {
+			return false;
 		}
 		
-		var responseIterator = responseMap.entrySet().iterator();
+		boolean isExpired = entry.getDeadline() <= Instant.now().toEpochMilli();
 		
-		while(responseIterator.hasNext()) {
-			var messageAndResponseSetEntry = responseIterator.next();
-			String triggerMessage = messageAndResponseSetEntry.getKey();
-			boolean setContainsResponse = response.getValidResponses().contains(triggerMessage) || 
-					response.getCancelResponses() != null && response.getCancelResponses().contains(triggerMessage);
-			
-			// This message is either a valid or cancel response for this MessageResponse
-			// And the response wasn't already taken out of the set.
-			if(setContainsResponse && !triggerMessage.equals(message)) {
-				var responseSet = messageAndResponseSetEntry.getValue();
-				var responseSetIterator = responseSet.iterator();
-				
-				while(responseSetIterator.hasNext()) {
-					if(responseSetIterator.next().equals(response)) {
-						responseSetIterator.remove();
-						break;
-					}
+		// Another thread could have gotten to it first
+		if(!isExpired && !isDormantTrigger(entry, event.getMessage().getContentDisplay()) || !channelEntryMap.remove(channelID, entry)) {
+			return false;
+		}
+		
+		dormantResponseMap.computeIfPresent(userID, (id, entryMap) -> entryMap.isEmpty() ? null : entryMap);
+		journal.remove(entry.getEntryID());
+		
+		if(isExpired) {
+			return false;
+		}
+		
+		var continuation = continuationMap.get(entry.getContinuationID());
+		
+		if(continuation == null) {
+			ErrorLogger.LogIssue("No continuation was registered for the journaled MessageResponse with the continuation ID " 
+					+ entry.getContinuationID() + ".");
+			return false;
+		}
+		
+		continuation.accept(event, entry.getContinuationArgument());
+		
+		return true;
+	}
+	
+	/**
+	 * Checks whether a message would have triggered a journaled MessageResponse, the same way the trigger matcher would
+	 * 
+	 * @param entry The journal entry of the MessageResponse
+	 * @param message The message
+	 * @return Whether the message triggers the MessageResponse
+	 */
+	private static boolean isDormantTrigger(JournalEntry entry, String message) {
+		var triggers = entry.getTriggers();
+		
+		return triggers.contains("") || triggers.contains(message.toLowerCase(Locale.ROOT));
+	}
+	
+	/**
+	 * Adds a MessageResponse to the set of each of its trigger messages
+	 * 
+	 * @param triggers The trigger messages. Can be null.
+	 * @param response The MessageResponse
+	 */
+	private void addTriggers(Set<String> triggers, MessageResponse response) {
+		if(triggers == null) {
+			return;
+		}
+		
+		for(String trigger : triggers) {
+			responseMap.compute(trigger, (message, responseSet) -> {
+				if(responseSet == null) {
+					responseSet = ConcurrentHashMap.newKeySet();
 				}
 				
-				if(responseSet.isEmpty()) {
-					responseIterator.remove();
-				}
-			}
+				responseSet.add(response);
+				return responseSet;
+			});
+			
+			updateTriggerMatcher(trigger);
+		}
+	}
+	
+	/**
+	 * Removes a MessageResponse from the set of each of its trigger messages, removing sets that become empty
+	 * 
+	 * @param triggers The trigger messages. Can be null.
+	 * @param response The MessageResponse
+	 */
+	private void removeTriggers(Set<String> triggers, MessageResponse response) {
+		if(triggers == null) {
+			return;
 		}
 		
-		if(displayCancelMessage) {
-			MessageChannel channel = response.getChannel();
+		for(String trigger : triggers) {
+			responseMap.computeIfPresent(trigger, (message, responseSet) -> {
+				responseSet.remove(response);
+				return responseSet.isEmpty() ? null : responseSet;
+			});
 			
-			if(channel == null) {
-				ErrorLogger.LogIssue("Cancel message couldn't be sent because channel was probably deleted.");
-				return;
-			}
-			
-			sendCancelMessage(response.getChannel(), response.getCancelMessage(), response.getUserID());
+			updateTriggerMatcher(trigger);
+		}
+	}
+	
+	/**
+	 * Recompiles the trigger matcher if a trigger was added to or removed from the response map.
+	 * The check happens while holding the lock so the matcher can't be replaced by one compiled before the change.
+	 * 
+	 * @param trigger The trigger that was added or removed
+	 */
+	private synchronized void updateTriggerMatcher(String trigger) {
+		if(responseMap.containsKey(trigger) != triggerMatcher.contains(trigger)) {
+			triggerMatcher = new TriggerMatcher(responseMap.keySet());
 		}
 	}
 	
+	/**
+	 * Gets the MessageResponses for a user in a channel
+	 * 
+	 * @param userID The id of the user
+	 * @param chID The channel ID
+	 * @return The MessageResponses. Null if there are none.
+	 */
+	private Set<MessageResponse> getMessageResponses(long userID, long chID) {
+		var channelResponseMap = userResponseMap.get(userID);
+		
+		return channelResponseMap == null ? null : channelResponseMap.get(chID);
+	}
+	
+	/**
+	 * Checks whether a message is a valid or cancel response of a MessageResponse
+	 * 
+	 * @param response The MessageResponse
+	 * @param message The message
+	 * @return Whether the message triggers the MessageResponse
+	 */
+	private static boolean isTrigger(MessageResponse response, String message) {
+		var cancelResponses = response.getCancelResponses();
+		
+		return response.getValidResponses().contains(message) || cancelResponses != null && cancelResponses.contains(message);
+	}
+	
 	@Override
 	public void onMessageReceived(MessageReceivedEvent event) {
-		if(event.getAuthor().isBot() || !responseUsers.contains(event.getAuthor().getIdLong())) {
+		if(!dormantResponseMap.isEmpty() && !event.getAuthor().isBot() && resumeDormantResponse(event)) {
 			return;
 		}
 		
-		var messageContents = event.getMessage().getContentDisplay().toLowerCase();
-		var responseList = responseMap.get(messageContents);
-
-		if(responseList != null) {
-			processResponse(responseList, event, messageContents, false);
-		} else {
-			var variableResponses = responseMap.get("");
-			
-			if(variableResponses != null) {
-				processResponse(variableResponses, event, "", true); 
-			}
+		var matcher = triggerMatcher;
+		String trigger = matcher.match(event.getMessage().getContentDisplay());
+		
+		// Most messages aren't a trigger for anyone, so they're rejected here
+		if(trigger == null && !matcher.hasWildcard() || event.getAuthor().isBot()) {
+			return;
+		}
+		
+		var responseSet = getMessageResponses(event.getAuthor().getIdLong(), event.getChannel().getIdLong());
+		
+		if(responseSet == null) {
+			return;
+		}
+		
+		if(trigger == null || !processResponse(responseSet, event, trigger)) {
+			processResponse(responseSet, event, ""); 
 		}
 	}
 	
-	private void processResponse(Set<MessageResponse> responseList, MessageReceivedEvent event, String message, boolean isVariable) {
-		var setIterator = responseList.iterator();
+	/**
+	 * Runs the callbacks of the user's MessageResponses in the channel that the message triggers
+	 * 
+	 * @param responseSet The user's MessageResponses in the channel
+	 * @param event The event of the message
+	 * @param message The message to match against the valid and cancel responses
+	 * @return Whether any MessageResponse was triggered
+	 */
+	private boolean processResponse(Set<MessageResponse> responseSet, MessageReceivedEvent event, String message) {
+		boolean isTriggered = false;
 		
-		while(setIterator.hasNext()) {
-			MessageResponse response = setIterator.next();
-			boolean matchesUser = event.getAuthor().getIdLong() == response.getUserID();
-			boolean matchesChannel = event.getChannel().getIdLong() == response.getChannelID();
-			
-			if(!matchesUser || !matchesChannel || !responseTimeoutMap.containsKey(response)) {
+		// Iterates over a copy so responses chained by the callbacks aren't triggered by the same message
+		for(var response : responseSet.toArray(new MessageResponse[0])) {
+			// Another thread could have gotten to it first
+			if(!isTrigger(response, message) || !unregisterMessageResponse(response, false)) {
 				continue;
 			}
 			
-			setIterator.remove();
-			
-			if(responseList.isEmpty()) {
-				responseMap.remove(message);
-			}
+			isTriggered = true;
 			
 			var validResponses = response.getValidResponses();
 			var cancelResponses = response.getCancelResponses();
-			removeMessageResponse(response, message, false);
 			
 			if(validResponses.contains(message) && cancelResponses != null && cancelResponses.contains(message)) {
 				throw new IllegalStateException("No MessageResponse object can contain a duplicate valid and cancel response string. Removing the object...");
@@ -353,7 +566,7 @@ public final class MessageResponseQueue extends ListenerAdapter {
 					
 					if(channel == null) {
 						ErrorLogger.LogIssue("Cancel message couldn't be sent because channel was probably deleted.");
-						return;
+						return isTriggered;
 					}
 					
 					sendCancelMessage(response.getChannel(), response.getCancelMessage(), response.getUserID());
@@ -362,36 +575,37 @@ public final class MessageResponseQueue extends ListenerAdapter {
 				throw new IllegalStateException("Corrupt MessageResponse. This should never happen.");
 			}
 		}
+		
+		return isTriggered;
 	}
 	
 	private void sendCancelMessage(MessageChannel channel, String cancelMessage, long userID) {
 		BotUtil.sendMessage(channel, cancelMessage, userID);
 	}
 	
-	private TimerTask generateRemoveTask(MessageResponse response) {
-		return new TimerTask() {
-			@Override
-			public void run() {
-				removeMessageResponse(response, false);
-				
-				boolean doCancelMessage;
+	private Runnable generateRemoveTask(MessageResponse response) {
+		return () -> {
+			if(!unregisterMessageResponse(response, false)) { // It was already answered or removed
+				return;
+			}
+			
+			boolean doCancelMessage;
+			
+			if(response.getTimeoutCallback() != null) {
+				doCancelMessage = response.getTimeoutCallback().apply(response);
+			} else {
+				doCancelMessage = true;
+			}
+			
+			if(doCancelMessage) {
+				MessageChannel channel = response.getChannel(true);
 				
-				if(response.getTimeoutCallback() != null) {
-					doCancelMessage = response.getTimeoutCallback().apply(response);
-				} else {
-					doCancelMessage = true;
+				if(channel == null) {
+					ErrorLogger.LogIssue("Cancel message not displayed because channel was deleted or there was some error.");
+					return;
 				}
 				
-				if(doCancelMessage) {
-					MessageChannel channel = response.getChannel(true);
-					
-					if(channel == null) {
-						ErrorLogger.LogIssue("Cancel message not displayed because channel was deleted or there was some error.");
-						return;
-					}
-					
-					sendCancelMessage(channel, response.getCancelMessage(), response.getUserID());
-				}
+				sendCancelMessage(channel, response.getCancelMessage(), response.getUserID());
 			}
 		};
 	}
@@ -2,22 +2,57 @@ package com.deliburd.util;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 import com.deliburd.bot.burdbot.Constant;
-import com.fasterxml.jackson.core.JsonEncoding;
-import com.fasterxml.jackson.core.JsonGenerator;
+import com.deliburd.util.scheduling.TaskScheduler;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 
+/**
+ * Per-server JSON configs. Each server's config is read from disk once and then served from memory. 
+ * Writes change the cached tree and are flushed to disk in the background, coalescing the writes made in the meantime.
+ * Reads and writes for a server are guarded by a read/write lock shared with a fixed set of other servers.
+ * 
+ * @author MelonShooter
+ *
+ */
 public class ServerConfig {
+	/**
+	 * The delay in milliseconds between the first unflushed write to a config and the flush
+	 */
+	private static final int FLUSH_DELAY = 1000;
 	private static final Set<String> tables = ConcurrentHashMap.newKeySet();
-	private static final ConcurrentHashMap<Long, File> serverFileMap = new ConcurrentHashMap<Long, File>();
+	private static volatile ConfigFormat format = ConfigFormat.JSON;
+	private static final ConcurrentHashMap<Long, CachedConfig> serverConfigMap = new ConcurrentHashMap<Long, CachedConfig>();
 	private static final ObjectMapper objectMapper = new ObjectMapper();
 	
+	/**
+	 * The striped locks guarding the cached config trees. The length must be a power of 2.
+	 */
+	private static final ReentrantReadWriteLock[] configLocks = new ReentrantReadWriteLock[16];
+	
+	static {
+		for(int i = 0; i < configLocks.length; i++) {
+			configLocks[i] = new ReentrantReadWriteLock();
+		}
+		
+		Runtime.getRuntime().addShutdownHook(new Thread(ServerConfig::flush, "ServerConfig-Flush"));
+	}
+	
 	public static void registerTable(String tableName) {
 		if(containsTable(tableName)) {
 			throw new IllegalArgumentException("This table has already been registered.");
@@ -30,390 +65,152 @@ public class ServerConfig {
 		return tables.contains(tableName);
 	}
 	
-	public static boolean writeToConfig(String tableName, long serverID, String value, String... keys) {
-		NodeInfo nodeInfo;
-		
-		try {
-			nodeInfo = getKeyNode(tableName, serverID, true, keys);
-		} catch (IOException e) {
-			ErrorLogger.LogException(e);
-			return false;
-		}
-		
-		JsonGenerator generator = nodeInfo.getGenerator();
-		
-		try(generator) {
-			nodeInfo.getKeyNode().put(keys[keys.length - 1], value);
-			objectMapper.writeTree(generator, nodeInfo.getRootNode());
-			return true;
-		} catch(IOException e) {
-			ErrorLogger.LogException(e);
-			return false;
+	/**
+	 * Sets the format configs are written to disk in. Configs stored in another format are still read 
+	 * and are converted to this format the next time they're flushed. Defaults to JSON.
+	 * 
+	 * @param newFormat The format
+	 */
+	public static void setFormat(ConfigFormat newFormat) {
+		if(newFormat == null) {
+			throw new IllegalArgumentException("The format can't be null.");
+		} else if(format == newFormat) {
+			return;
+		}
+		
+		format = newFormat;
+		
+		// Converts the configs that were already loaded
+		for(var config : serverConfigMap.values()) {
+			Lock writeLock = getLock(config.getServerID()).writeLock();
+			
+			writeLock.lock();
+			
+			try {
+				config.getConvertingFlag().set(true);
+				markDirty(config);
+			} finally {
+				writeLock.unlock();
+			}
 		}
 	}
 	
-	public static boolean writeToConfig(String tableName, long serverID, long number, String... keys) {
-		NodeInfo nodeInfo;
+	/**
+	 * Reads every config in the config folder into memory so later lookups don't touch the disk
+	 * 
+	 * @return The amount of configs that were loaded
+	 */
+	public static int loadAll() {
+		File[] configFiles = new File(Constant.CONFIG_PATH).listFiles();
 		
-		try {
-			nodeInfo = getKeyNode(tableName, serverID, true, keys);
-		} catch (IOException e) {
-			ErrorLogger.LogException(e);
-			return false;
+		if(configFiles == null) {
+			return 0;
 		}
 		
-		JsonGenerator generator = nodeInfo.getGenerator();
-		
-		try(generator) {
-			nodeInfo.getKeyNode().put(keys[keys.length - 1], number);
-			objectMapper.writeTree(generator, nodeInfo.getRootNode());
-			return true;
-		} catch(IOException e) {
-			ErrorLogger.LogException(e);
-			return false;
-		}
+		return (int) Arrays.stream(configFiles).parallel().filter(configFile -> {
+			String fileName = configFile.getName();
+			ConfigFormat fileFormat = ConfigFormat.fromFileName(fileName);
+			
+			if(fileFormat == null || !configFile.isFile()) {
+				return false;
+			}
+			
+			Long serverID = NumberUtil.stringToLong(fileName.substring(0, fileName.length() - fileFormat.getExtension().length()));
+			
+			if(serverID == null || serverConfigMap.containsKey(serverID)) {
+				return false;
+			}
+			
+			try {
+				loadConfig(serverID);
+				return true;
+			} catch (IOException e) {
+				ErrorLogger.LogException(e);
+				return false;
+			}
+		}).count();
+	}
+	
+	public static boolean writeToConfig(String tableName, long serverID, String value, String... keys) {
+		return writeValue(tableName, serverID, keys, (keyNode, lastKey) -> keyNode.put(lastKey, value));
+	}
+	
+	public static boolean writeToConfig(String tableName, long serverID, long number, String... keys) {
+		return writeValue(tableName, serverID, keys, (keyNode, lastKey) -> keyNode.put(lastKey, number));
 	}
 	
 	public static boolean writeToConfig(String tableName, long serverID, double number, String... keys) {
-		NodeInfo nodeInfo;
-		
-		try {
-			nodeInfo = getKeyNode(tableName, serverID, true, keys);
-		} catch (IOException e) {
-			ErrorLogger.LogException(e);
-			return false;
-		}
-		
-		JsonGenerator generator = nodeInfo.getGenerator();
-		
-		try(generator) {
-			nodeInfo.getKeyNode().put(keys[keys.length - 1], number);
-			objectMapper.writeTree(generator, nodeInfo.getRootNode());
-			return true;
-		} catch(IOException e) {
-			ErrorLogger.LogException(e);
-			return false;
-		}
+		return writeValue(tableName, serverID, keys, (keyNode, lastKey) -> keyNode.put(lastKey, number));
 	}
 	
 	public static boolean writeToConfig(String tableName, long serverID, boolean bool, String... keys) {
-		NodeInfo nodeInfo;
-		
-		try {
-			nodeInfo = getKeyNode(tableName, serverID, true, keys);
-		} catch (IOException e) {
-			ErrorLogger.LogException(e);
-			return false;
-		}
-		
-		JsonGenerator generator = nodeInfo.getGenerator();
-		
-		try(generator) {
-			nodeInfo.getKeyNode().put(keys[keys.length - 1], bool);
-			objectMapper.writeTree(generator, nodeInfo.getRootNode());
-			return true;
-		} catch(IOException e) {
-			ErrorLogger.LogException(e);
-			return false;
-		}
+		return writeValue(tableName, serverID, keys, (keyNode, lastKey) -> keyNode.put(lastKey, bool));
 	}
 	
 	public static boolean writeToConfig(String tableName, long serverID, Object POJO, String... keys) {
-		NodeInfo nodeInfo;
-		
-		try {
-			nodeInfo = getKeyNode(tableName, serverID, true, keys);
-		} catch (IOException e) {
-			ErrorLogger.LogException(e);
-			return false;
-		}
-		
-		JsonGenerator generator = nodeInfo.getGenerator();
-		
-		try(generator) {
-			nodeInfo.getKeyNode().putPOJO(keys[keys.length - 1], POJO);
-			objectMapper.writeTree(generator, nodeInfo.getRootNode());
-			return true;
-		} catch(IOException e) {
-			ErrorLogger.LogException(e);
-			return false;
-		}
+		return writeValue(tableName, serverID, keys, (keyNode, lastKey) -> keyNode.putPOJO(lastKey, POJO));
 	}
 	
 	public static boolean writeToConfig(String tableName, long serverID, String[] stringArray, String... keys) {
-		NodeInfo nodeInfo;
-		try {
-			nodeInfo = getKeyNode(tableName, serverID, true, keys);
-		} catch (IOException e1) {
-			ErrorLogger.LogException(e1);
-			return false;
-		}
-		
-		JsonGenerator generator = nodeInfo.getGenerator();
-		
-		try(generator) {
-			String lastKey = keys[keys.length - 1];
-			
-			JsonNode currentNode = nodeInfo.getKeyNode().get(lastKey);
-			ArrayNode arrayNode;
-			
-			if(currentNode == null) {
-				arrayNode = nodeInfo.getKeyNode().putArray(lastKey);
-			} else {
-				if(currentNode.isArray()) {
-					arrayNode = ((ArrayNode) currentNode).removeAll();
-				} else {
-					return false;
-				}
-			}
-			
+		return writeArray(tableName, serverID, keys, arrayNode -> {
 			for(var string : stringArray) {
 				arrayNode.add(string);
 			}
-			
-			objectMapper.writeTree(generator, nodeInfo.getRootNode());
-			return true;
-		} catch(IOException e) {
-			ErrorLogger.LogException(e);
-			return false;
-		}
+		});
 	}
 	
 	public static boolean writeToConfig(String tableName, long serverID, long[] numberArray, String... keys) {
-		NodeInfo nodeInfo;
-		try {
-			nodeInfo = getKeyNode(tableName, serverID, true, keys);
-		} catch (IOException e1) {
-			ErrorLogger.LogException(e1);
-			return false;
-		}
-		
-		JsonGenerator generator = nodeInfo.getGenerator();
-		
-		try(generator) {
-			String lastKey = keys[keys.length - 1];
-			
-			JsonNode currentNode = nodeInfo.getKeyNode().get(lastKey);
-			ArrayNode arrayNode;
-			
-			if(currentNode == null) {
-				arrayNode = nodeInfo.getKeyNode().putArray(lastKey);
-			} else {
-				if(currentNode.isArray()) {
-					arrayNode = ((ArrayNode) currentNode).removeAll();
-				} else {
-					return false;
-				}
-			}
-			
+		return writeArray(tableName, serverID, keys, arrayNode -> {
 			for(var number : numberArray) {
 				arrayNode.add(number);
 			}
-			
-			objectMapper.writeTree(generator, nodeInfo.getRootNode());
-			return true;
-		} catch(IOException e) {
-			ErrorLogger.LogException(e);
-			return false;
-		}
+		});
 	}
 	
 	public static boolean writeToConfig(String tableName, long serverID, double[] numberArray, String... keys) {
-		NodeInfo nodeInfo;
-		try {
-			nodeInfo = getKeyNode(tableName, serverID, true, keys);
-		} catch (IOException e1) {
-			ErrorLogger.LogException(e1);
-			return false;
-		}
-		
-		JsonGenerator generator = nodeInfo.getGenerator();
-		
-		try(generator) {
-			String lastKey = keys[keys.length - 1];
-			
-			JsonNode currentNode = nodeInfo.getKeyNode().get(lastKey);
-			ArrayNode arrayNode;
-			
-			if(currentNode == null) {
-				arrayNode = nodeInfo.getKeyNode().putArray(lastKey);
-			} else {
-				if(currentNode.isArray()) {
-					arrayNode = ((ArrayNode) currentNode).removeAll();
-				} else {
-					return false;
-				}
-			}
-			
+		return writeArray(tableName, serverID, keys, arrayNode -> {
 			for(var number : numberArray) {
 				arrayNode.add(number);
 			}
-			
-			objectMapper.writeTree(generator, nodeInfo.getRootNode());
-			return true;
-		} catch(IOException e) {
-			ErrorLogger.LogException(e);
-			return false;
-		}
+		});
 	}
 	
 	public static boolean writeToConfig(String tableName, long serverID, boolean[] booleanArray, String... keys) {
-		NodeInfo nodeInfo;
-		try {
-			nodeInfo = getKeyNode(tableName, serverID, true, keys);
-		} catch (IOException e1) {
-			ErrorLogger.LogException(e1);
-			return false;
-		}
-		
-		JsonGenerator generator = nodeInfo.getGenerator();
-		
-		try(generator) {
-			String lastKey = keys[keys.length - 1];
-			
-			JsonNode currentNode = nodeInfo.getKeyNode().get(lastKey);
-			ArrayNode arrayNode;
-			
-			if(currentNode == null) {
-				arrayNode = nodeInfo.getKeyNode().putArray(lastKey);
-			} else {
-				if(currentNode.isArray()) {
-					arrayNode = ((ArrayNode) currentNode).removeAll();
-				} else {
-					return false;
-				}
-			}
-			
+		return writeArray(tableName, serverID, keys, arrayNode -> {
 			for(var bool : booleanArray) {
 				arrayNode.add(bool);
 			}
-			
-			objectMapper.writeTree(generator, nodeInfo.getRootNode());
-			return true;
-		} catch(IOException e) {
-			ErrorLogger.LogException(e);
-			return false;
-		}
+		});
 	}
 	
 	public static boolean writeToConfig(String tableName, long serverID, Object[] objectArray, String... keys) {
-		NodeInfo nodeInfo;
-		try {
-			nodeInfo = getKeyNode(tableName, serverID, true, keys);
-		} catch (IOException e1) {
-			ErrorLogger.LogException(e1);
-			return false;
-		}
-		
-		JsonGenerator generator = nodeInfo.getGenerator();
-		
-		try(generator) {
-			String lastKey = keys[keys.length - 1];
-			
-			JsonNode currentNode = nodeInfo.getKeyNode().get(lastKey);
-			ArrayNode arrayNode;
-			
-			if(currentNode == null) {
-				arrayNode = nodeInfo.getKeyNode().putArray(lastKey);
-			} else {
-				if(currentNode.isArray()) {
-					arrayNode = ((ArrayNode) currentNode).removeAll();
-				} else {
-					return false;
-				}
-			}
-			
+		return writeArray(tableName, serverID, keys, arrayNode -> {
 			for(var object : objectArray) {
 				arrayNode.addPOJO(object);
 			}
-			
-			objectMapper.writeTree(generator, nodeInfo.getRootNode());
-			return true;
-		} catch(IOException e) {
-			ErrorLogger.LogException(e);
-			return false;
-		}
+		});
 	}
 	
 	public static String getServerConfigNodeValueAsString(String tableName, long serverID, String... keys) throws IOException {
-		NodeInfo nodeInfo = getKeyNode(tableName, serverID, false, keys);
-		JsonNode node;
-		
-		if(nodeInfo != null) {
-			node = nodeInfo.getKeyNode().path(keys[keys.length - 1]);
-		} else {
-			return null;
-		}
-
-		if(node.isValueNode()) {
-			return node.asText();
-		} else {
-			return null;
-		}
+		return readValue(tableName, serverID, keys, node -> node.isValueNode() ? node.asText() : null);
 	}
 	
 	public static Long getServerConfigNodeValueAsNumber(String tableName, long serverID, String... keys) throws IOException {
-		NodeInfo nodeInfo = getKeyNode(tableName, serverID, false, keys);
-		JsonNode node;
-		
-		if(nodeInfo != null) {
-			node = nodeInfo.getKeyNode().path(keys[keys.length - 1]);
-		} else {
-			return null;
-		}
-
-		if(node.canConvertToLong()) {
-			return node.asLong();
-		} else {
-			return null;
-		}
+		return readValue(tableName, serverID, keys, node -> node.canConvertToLong() ? node.asLong() : null);
 	}
 	
 	public static Boolean getServerConfigNodeValueAsBoolean(String tableName, long serverID, String... keys) throws IOException {
-		NodeInfo nodeInfo = getKeyNode(tableName, serverID, false, keys);
-		JsonNode node;
-		
-		if(nodeInfo != null) {
-			node = nodeInfo.getKeyNode().path(keys[keys.length - 1]);
-		} else {
-			return null;
-		}
-
-		if(node.isBoolean()) {
-			return node.asBoolean();
-		} else {
-			return null;
-		}
+		return readValue(tableName, serverID, keys, node -> node.isBoolean() ? node.asBoolean() : null);
 	}
 	
 	public static Double getServerConfigNodeValueAsDecimal(String tableName, long serverID, String... keys) throws IOException {
-		NodeInfo nodeInfo = getKeyNode(tableName, serverID, false, keys);
-		JsonNode node;
-		
-		if(nodeInfo != null) {
-			node = nodeInfo.getKeyNode().path(keys[keys.length - 1]);
-		} else {
-			return null;
-		}
-
-		if(node.isFloatingPointNumber()) {
-			return node.asDouble();
-		} else {
-			return null;
-		}
+		return readValue(tableName, serverID, keys, node -> node.isFloatingPointNumber() ? node.asDouble() : null);
 	}
 	
 	public static <T> T getServerConfigNodeValueAsPOJO(String tableName, long serverID, Class<T> classObject, String... keys) throws IOException {
-		NodeInfo nodeInfo = getKeyNode(tableName, serverID, false, keys);
-		JsonNode node;
-		
-		if(nodeInfo != null) {
-			node = nodeInfo.getKeyNode().path(keys[keys.length - 1]);
-		} else {
-			return null;
-		}
+		JsonNode node = getNode(tableName, serverID, keys);
 
-		if(node.isPojo()) {
+		if(node != null && node.isPojo()) {
 			return objectMapper.treeToValue(node, classObject);
 		} else {
 			return null;
@@ -421,16 +218,11 @@ public class ServerConfig {
 	}
 	
 	public static String[] getServerConfigNodeValueAsArray(String tableName, long serverID, String... keys) throws IOException {
-		NodeInfo nodeInfo = getKeyNode(tableName, serverID, false, keys);
-		JsonNode node;
-		
-		if(nodeInfo != null) {
-			node = nodeInfo.getKeyNode().path(keys[keys.length - 1]);
-		} else {
-			return null;
-		}
-
-		if(node.isContainerNode()) {
+		return readValue(tableName, serverID, keys, node -> {
+			if(!node.isContainerNode()) {
+				return null;
+			}
+			
 			String[] values = new String[node.size()];
 			int position = 0;
 			
@@ -444,81 +236,227 @@ public class ServerConfig {
 			}
 			
 			return values;
-		} else {
-			return null;
-		}
+		});
 	}
 	
+	/**
+	 * Gets a node from a server's config
+	 * 
+	 * @param tableName The table the node is in
+	 * @param serverID The server's ID
+	 * @param keys The keys leading to the node
+	 * @return A copy of the node, so changes to it won't affect the config. Null if there is no node.
+	 * @throws IOException If the config couldn't be read
+	 */
 	public static JsonNode getNode(String tableName, long serverID, String... keys) throws IOException {
-		NodeInfo nodeInfo = getKeyNode(tableName, serverID, false, keys);
+		return readValue(tableName, serverID, keys, node -> node.isMissingNode() ? null : node.deepCopy());
+	}
+	
+	/**
+	 * Gets all of a table's data in a server's config
+	 * 
+	 * @param tableName The table
+	 * @param serverID The server's ID
+	 * @return A copy of the table's node, so changes to it won't affect the config. Null if the table has no data.
+	 * @throws IOException If the config couldn't be read
+	 */
+	public static JsonNode getTableData(String tableName, long serverID) throws IOException {
+		CachedConfig config = getConfig(tableName, serverID);
+		Lock readLock = getLock(serverID).readLock();
 		
-		if(nodeInfo == null) {
-			return null;
+		readLock.lock();
+		
+		try {
+			JsonNode tableNode = config.getRootNode().get(tableName);
+			
+			return tableNode == null ? null : tableNode.deepCopy();
+		} finally {
+			readLock.unlock();
 		}
+	}
+	
+	/**
+	 * Removes a node from a server's config
+	 * 
+	 * @param tableName The table the node is in
+	 * @param serverID The server's ID
+	 * @param keys The keys leading to the node
+	 * @return Whether there was a node to remove
+	 * @throws IOException If the config couldn't be read
+	 */
+	public static boolean removeNode(String tableName, long serverID, String... keys) throws IOException {
+		CachedConfig config = getConfig(tableName, serverID);
+		Lock writeLock = getLock(serverID).writeLock();
+		
+		writeLock.lock();
 		
-		JsonNode node = nodeInfo.getKeyNode().path(keys[keys.length - 1]);
+		try {
+			ObjectNode keyNode = getKeyNode(config.getRootNode(), tableName, false, keys);
+			
+			if(keyNode == null || keyNode.remove(keys[keys.length - 1]) == null) {
+				return false;
+			}
+			
+			markDirty(config);
+			return true;
+		} finally {
+			writeLock.unlock();
+		}
+	}
+	
+	/**
+	 * Makes several changes to a table in a server's config at once. The changes are applied to a copy of the table, 
+	 * which replaces the table once the mutator returns, so other threads see either all of the changes or none of them. 
+	 * Nothing is changed if the mutator throws.
+	 * 
+	 * @param tableName The table to change
+	 * @param serverID The server's ID
+	 * @param mutator Changes the table's node, which must not escape the mutator
+	 * @throws IOException If the config couldn't be read
+	 */
+	public static void update(String tableName, long serverID, Consumer<ObjectNode> mutator) throws IOException {
+		CachedConfig config = getConfig(tableName, serverID);
+		Lock writeLock = getLock(serverID).writeLock();
+		
+		writeLock.lock();
 		
-		if(node.isMissingNode()) {
-			return null;
-		} else {
-			return node;
+		try {
+			ObjectNode serverNode = config.getRootNode();
+			ObjectNode tableNode = getOrCreateObjectNode(serverNode, tableName, false);
+			ObjectNode tableCopy = tableNode == null ? objectMapper.createObjectNode() : tableNode.deepCopy();
+			
+			mutator.accept(tableCopy);
+			
+			if(tableNode == null ? tableCopy.size() != 0 : !tableCopy.equals(tableNode)) {
+				serverNode.set(tableName, tableCopy);
+				markDirty(config);
+			}
+		} finally {
+			writeLock.unlock();
 		}
 	}
 	
-	public static JsonNode getTableData(String tableName, long serverID) throws IOException {
-		File serverFile = getConfigFile(tableName, serverID);
+	/**
+	 * Writes every server config with changes that haven't been flushed yet to disk.
+	 * This is also done when the JVM shuts down.
+	 */
+	public static void flush() {
+		for(var config : serverConfigMap.values()) {
+			flush(config);
+		}
+	}
+	
+	/**
+	 * Writes a value into the node at the given keys, creating the nodes leading to it if necessary
+	 * 
+	 * @param tableName The table to write to
+	 * @param serverID The server's ID
+	 * @param keys The keys leading to the value
+	 * @param writer Puts the value into the node under the last key
+	 * @return Whether the value was written
+	 */
+	private static boolean writeValue(String tableName, long serverID, String[] keys, BiConsumer<ObjectNode, String> writer) {
+		CachedConfig config;
 		
-		if(!serverFile.exists()) {
-			return null;
+		try {
+			config = getConfig(tableName, serverID);
+		} catch (IOException e) {
+			ErrorLogger.LogException(e);
+			return false;
 		}
 		
-		JsonNode serverJsonNode = objectMapper.readTree(serverFile);
+		Lock writeLock = getLock(serverID).writeLock();
 		
-		if(serverJsonNode == null || serverJsonNode.isMissingNode()) {
-			return null;
+		writeLock.lock();
+		
+		try {
+			writer.accept(getKeyNode(config.getRootNode(), tableName, true, keys), keys[keys.length - 1]);
+			markDirty(config);
+		} finally {
+			writeLock.unlock();
 		}
 		
-		return serverJsonNode.get(tableName);
+		return true;
 	}
 	
-	public static void removeNode(String tableName, long serverID, String... keys) throws IOException {
-		NodeInfo nodeInfo = getKeyNode(tableName, serverID, true, keys);
+	/**
+	 * Replaces the contents of the array at the given keys, creating the nodes leading to it if necessary
+	 * 
+	 * @param tableName The table to write to
+	 * @param serverID The server's ID
+	 * @param keys The keys leading to the array
+	 * @param writer Adds the elements to the emptied array
+	 * @return Whether the array was written. False if a node that isn't an array already exists there.
+	 */
+	private static boolean writeArray(String tableName, long serverID, String[] keys, Consumer<ArrayNode> writer) {
+		CachedConfig config;
+		
+		try {
+			config = getConfig(tableName, serverID);
+		} catch (IOException e) {
+			ErrorLogger.LogException(e);
+			return false;
+		}
+		
+		Lock writeLock = getLock(serverID).writeLock();
 		
-		JsonGenerator generator = nodeInfo.getGenerator();
+		writeLock.lock();
 		
-		try(generator) {
-			JsonNode node = nodeInfo.getKeyNode();
-			String fieldName = keys[keys.length - 1];
+		try {
+			ObjectNode keyNode = getKeyNode(config.getRootNode(), tableName, true, keys);
+			String lastKey = keys[keys.length - 1];
+			JsonNode currentNode = keyNode.get(lastKey);
+			ArrayNode arrayNode;
 			
-			if(node.has(fieldName)) {
-				((ObjectNode) node).remove(fieldName);
-				generator.writeTree(nodeInfo.getRootNode());
+			if(currentNode == null) {
+				arrayNode = keyNode.putArray(lastKey);
+			} else if(currentNode.isArray()) {
+				arrayNode = ((ArrayNode) currentNode).removeAll();
+			} else {
+				return false;
 			}
+			
+			writer.accept(arrayNode);
+			markDirty(config);
+		} finally {
+			writeLock.unlock();
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Reads the node at the given keys
+	 * 
+	 * @param <T> The type of value read
+	 * @param tableName The table to read from
+	 * @param serverID The server's ID
+	 * @param keys The keys leading to the node
+	 * @param reader Reads the value from the node, which is a missing node if there is nothing under the last key.
+	 * The node must not escape the reader.
+	 * @return The value read. Null if the nodes leading to the last key don't exist.
+	 * @throws IOException If the config couldn't be read
+	 */
+	private static <T> T readValue(String tableName, long serverID, String[] keys, Function<JsonNode, T> reader) throws IOException {
+		CachedConfig config = getConfig(tableName, serverID);
+		Lock readLock = getLock(serverID).readLock();
+		
+		readLock.lock();
+		
+		try {
+			ObjectNode keyNode = getKeyNode(config.getRootNode(), tableName, false, keys);
+			
+			return keyNode == null ? null : reader.apply(keyNode.path(keys[keys.length - 1]));
+		} finally {
+			readLock.unlock();
 		}
 	}
 	
-	private static NodeInfo getKeyNode(String tableName, long serverID, boolean writable, String... keys) throws IOException {
+	private static ObjectNode getKeyNode(ObjectNode serverNode, String tableName, boolean writable, String... keys) {
 		if (keys == null || keys.length == 0) {
 			throw new IllegalArgumentException("The keys cannot be null or blank.");
 		}
 		
-		File serverFile = getConfigFile(tableName, serverID);
-		serverFile.getParentFile().mkdirs();
-		serverFile.createNewFile();
-		
-		JsonNode serverJsonNode = objectMapper.readTree(serverFile);
-		ObjectNode serverNode;
-		
-		if(serverJsonNode.isMissingNode()) {
-			if(writable) {
-				serverNode = objectMapper.createObjectNode();
-			} else {
-				return null;
-			}
-		} else {
-			serverNode = (ObjectNode) serverJsonNode;
-		}
-		
 		ObjectNode tableNode = getOrCreateObjectNode(serverNode, tableName, writable);
 		
 		if(tableNode == null) {
@@ -537,15 +475,7 @@ public class ServerConfig {
 			}
 		}
 		
-		JsonGenerator generator;
-		
-		if(writable) {
-			generator = objectMapper.getFactory().createGenerator(serverFile, JsonEncoding.UTF8);
-		} else {
-			generator = null;
-		}
-		
-		return new NodeInfo(generator, serverNode, tableNode);
+		return tableNode;
 	}
 	
 	private static ObjectNode getOrCreateObjectNode(ObjectNode parentNode, String field, boolean createIfMissing) {
@@ -567,47 +497,217 @@ public class ServerConfig {
 		return tableObjectNode;
 	}
 	
-	private static File getConfigFile(String tableName, long serverID) {
+	/**
+	 * Gets the cached config of a server, reading it from disk if it hasn't been cached yet
+	 * 
+	 * @param tableName The table being accessed, which must be registered
+	 * @param serverID The server's ID
+	 * @return The cached config
+	 * @throws IOException If the config couldn't be read
+	 */
+	private static CachedConfig getConfig(String tableName, long serverID) throws IOException {
 		if(!containsTable(tableName)) {
 			throw new IllegalArgumentException("The table '" + tableName + "' has not been registered yet.");
 		}
 		
-		File serverFile = serverFileMap.computeIfAbsent(serverID, (id) -> {
-			String filePath = new StringBuilder(Constant.CONFIG_PATH)
-					.append(serverID)
-					.append(".json")
-					.toString();
+		CachedConfig config = serverConfigMap.get(serverID);
+		
+		return config == null ? loadConfig(serverID) : config;
+	}
+	
+	/**
+	 * Reads a server's config from disk into the cache. If the config is only stored in a format other than the 
+	 * current one, it's read from there and converted to the current format on the next flush.
+	 * 
+	 * @param serverID The server's ID
+	 * @return The cached config
+	 * @throws IOException If the config couldn't be read
+	 */
+	private static CachedConfig loadConfig(long serverID) throws IOException {
+		ConfigFormat currentFormat = format;
+		ObjectNode serverNode = readConfigFile(currentFormat.getConfigFile(serverID), currentFormat);
+		boolean isConverting = false;
+		
+		if(serverNode == null) {
+			for(var otherFormat : ConfigFormat.values()) {
+				if(otherFormat != currentFormat) {
+					serverNode = readConfigFile(otherFormat.getConfigFile(serverID), otherFormat);
+				}
+				
+				if(serverNode != null) {
+					isConverting = true;
+					break;
+				}
+			}
+		}
+		
+		if(serverNode == null) {
+			serverNode = objectMapper.createObjectNode();
+		}
+		
+		CachedConfig newConfig = new CachedConfig(serverID, serverNode);
+		
+		// Another thread could have loaded it first
+		CachedConfig previousConfig = serverConfigMap.putIfAbsent(serverID, newConfig);
+		
+		if(previousConfig != null) {
+			return previousConfig;
+		} else if(isConverting) {
+			Lock writeLock = getLock(serverID).writeLock();
 			
-			return new File(filePath);
-		});
+			writeLock.lock();
+			
+			try {
+				newConfig.getConvertingFlag().set(true);
+				markDirty(newConfig);
+			} finally {
+				writeLock.unlock();
+			}
+		}
 		
-		return serverFile;
+		return newConfig;
 	}
 	
-	private static class NodeInfo {
-		private final JsonGenerator generator;
-		private final ObjectNode rootNode;
-		private final ObjectNode keyNode;
+	/**
+	 * Reads a config file
+	 * 
+	 * @param configFile The config file
+	 * @param fileFormat The format of the config file
+	 * @return The config's tree. Null if the file doesn't exist.
+	 * @throws IOException If the file couldn't be read or doesn't contain an object
+	 */
+	private static ObjectNode readConfigFile(File configFile, ConfigFormat fileFormat) throws IOException {
+		if(!configFile.exists()) {
+			return null;
+		}
 		
-		public NodeInfo(JsonGenerator generator, ObjectNode rootNode, ObjectNode keyNode) {
-			if(rootNode == null) {
-				throw new IllegalArgumentException("Root node can't be null.");
-			} else if(keyNode == null) {
-				throw new IllegalArgumentException("Key node can't be null.");
+		JsonNode serverJsonNode = fileFormat.getObjectMapper().readTree(configFile);
+		
+		if(serverJsonNode == null || serverJsonNode.isMissingNode()) {
+			return objectMapper.createObjectNode();
+		} else if(serverJsonNode.isObject()) {
+			return (ObjectNode) serverJsonNode;
+		} else {
+			throw new IOException("The config file " + configFile + " doesn't contain a JSON object.");
+		}
+	}
+	
+	/**
+	 * Gets the lock guarding a server's config tree. Servers share a fixed number of locks.
+	 * 
+	 * @param serverID The server's ID
+	 * @return The lock
+	 */
+	private static ReentrantReadWriteLock getLock(long serverID) {
+		return configLocks[Long.hashCode(serverID) & configLocks.length - 1];
+	}
+	
+	/**
+	 * Marks a config as changed and schedules a flush if one isn't scheduled already.
+	 * Changes made before the flush runs are written together.
+	 * 
+	 * @param config The config. The write lock for it must be held.
+	 */
+	private static void markDirty(CachedConfig config) {
+		config.getDirtyFlag().set(true);
+		
+		if(config.getFlushScheduledFlag().compareAndSet(false, true)) {
+			TaskScheduler.getScheduler().schedule(() -> flush(config), FLUSH_DELAY, TimeUnit.MILLISECONDS);
+		}
+	}
+	
+	/**
+	 * Writes a config to disk if it has changes that haven't been flushed. The tree is only locked while it's serialized.
+	 * The file is written to a temporary file first and then moved over the config file, so the config file is never
+	 * partially written.
+	 * 
+	 * @param config The config
+	 */
+	private static void flush(CachedConfig config) {
+		// Keeps flushes of the same config in order so an older tree can't overwrite a newer one
+		synchronized(config) {
+			config.getFlushScheduledFlag().set(false);
+			
+			ConfigFormat currentFormat = format;
+			byte[] serializedConfig;
+			Lock readLock = getLock(config.getServerID()).readLock();
+			
+			readLock.lock();
+			
+			try {
+				if(!config.getDirtyFlag().getAndSet(false)) {
+					return;
+				}
+				
+				serializedConfig = currentFormat.getObjectMapper().writeValueAsBytes(config.getRootNode());
+			} catch (IOException e) {
+				config.getDirtyFlag().set(true);
+				ErrorLogger.LogException(e);
+				return;
+			} finally {
+				readLock.unlock();
 			}
 			
-			this.generator = generator;
+			File configFile = currentFormat.getConfigFile(config.getServerID());
+			File tempFile = new File(configFile.getPath() + ".tmp");
+			
+			try {
+				configFile.getParentFile().mkdirs();
+				Files.write(tempFile.toPath(), serializedConfig);
+				Files.move(tempFile.toPath(), configFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} catch (IOException e) {
+				config.getDirtyFlag().set(true); // Retried on the next flush
+				ErrorLogger.LogException(e);
+				return;
+			}
+			
+			// The config has been converted, so the files in the other formats are stale
+			if(config.getConvertingFlag().getAndSet(false)) {
+				for(var otherFormat : ConfigFormat.values()) {
+					if(otherFormat != currentFormat) {
+						otherFormat.getConfigFile(config.getServerID()).delete();
+					}
+				}
+			}
+		}
+	}
+	
+	/**
+	 * A server's config tree cached in memory. The tree is guarded by the server's lock from getLock.
+	 */
+	private static class CachedConfig {
+		private final long serverID;
+		private final ObjectNode rootNode;
+		private final AtomicBoolean isDirty;
+		private final AtomicBoolean isFlushScheduled;
+		private final AtomicBoolean isConverting;
+		
+		public CachedConfig(long serverID, ObjectNode rootNode) {
+			this.serverID = serverID;
 			this.rootNode = rootNode;
-			this.keyNode = keyNode;
+			isDirty = new AtomicBoolean();
+			isFlushScheduled = new AtomicBoolean();
+			isConverting = new AtomicBoolean();
 		}
-		public JsonGenerator getGenerator() {
-			return generator;
+		
+		public long getServerID() {
+			return serverID;
 		}
+		
 		public ObjectNode getRootNode() {
 			return rootNode;
 		}
-		public ObjectNode getKeyNode() {
-			return keyNode;
+		
+		public AtomicBoolean getDirtyFlag() {
+			return isDirty;
+		}
+		
+		public AtomicBoolean getFlushScheduledFlag() {
+			return isFlushScheduled;
+		}
+		
+		public AtomicBoolean getConvertingFlag() {
+			return isConverting;
 		}
 	}
 }
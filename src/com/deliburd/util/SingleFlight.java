@@ -0,0 +1,73 @@
+package com.deliburd.util;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Makes sure only one call for a key is in flight at a time. Callers that ask for a key while a call for it
+ * is already running wait on that call's CompletableFuture and get the same result instead of making their own call.
+ *
+ * @author MelonShooter
+ *
+ * @param <K> The type of the keys
+ * @param <V> The type of the results
+ */
+public class SingleFlight<K, V> {
+	private final ConcurrentHashMap<K, CompletableFuture<V>> inFlightCalls;
+
+	/**
+	 * Creates a SingleFlight with no calls in flight
+	 */
+	public SingleFlight() {
+		inFlightCalls = new ConcurrentHashMap<K, CompletableFuture<V>>(8, .75f, 3);
+	}
+
+	/**
+	 * Gets the result for a key, running the loader on the current thread unless a call for the key is already in flight.
+	 * If one is, this blocks until that call finishes.
+	 *
+	 * @param key The key
+	 * @param loader Makes the call for the key
+	 * @return The result of the call, which can be null if the loader returned null
+	 * @throws RuntimeException If the loader threw, the same exception is thrown to every caller waiting on it
+	 */
+	public V get(K key, Function<K, V> loader) {
+		var newCall = new CompletableFuture<V>();
+		var inFlightCall = inFlightCalls.putIfAbsent(key, newCall);
+
+		if(inFlightCall != null) {
+			try {
+				return inFlightCall.join();
+			} catch (CompletionException e) {
+				if(e.getCause() instanceof RuntimeException) {
+					throw (RuntimeException) e.getCause();
+				}
+
+				throw e;
+			}
+		}
+
+		try {
+			V result = loader.apply(key);
+			newCall.complete(result);
+
+			return result;
+		} catch (RuntimeException | Error e) {
+			newCall.completeExceptionally(e);
+			throw e;
+		} finally {
+			inFlightCalls.remove(key, newCall);
+		}
+	}
+
+	/**
+	 * Gets the amount of calls in flight
+	 *
+	 * @return The amount of calls
+	 */
+	public int getInFlightCount() {
+		return inFlightCalls.size();
+	}
+}
@@ -0,0 +1,137 @@
+package com.deliburd.util;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * An immutable trie of the trigger messages of MessageResponses. Messages are matched ignoring case one character
+ * at a time, so a message that isn't a trigger is usually rejected after its first few characters without allocating.
+ * 
+ * @author MelonShooter
+ *
+ */
+final class TriggerMatcher {
+	private static final char[] NO_KEYS = new char[0];
+	private static final Node[] NO_CHILDREN = new Node[0];
+	private final Node root;
+	
+	/**
+	 * Compiles a matcher
+	 * 
+	 * @param triggers The trigger messages. The empty string matches every message that isn't another trigger.
+	 */
+	TriggerMatcher(Collection<String> triggers) {
+		String[] sortedTriggers = triggers.toArray(new String[0]);
+		Arrays.sort(sortedTriggers);
+		root = compile(sortedTriggers, 0, sortedTriggers.length, 0);
+	}
+	
+	/**
+	 * Finds the trigger a message is. The message is lowercased one character at a time,
+	 * so the triggers should be lowercase.
+	 * 
+	 * @param message The message
+	 * @return The trigger the message is. Null if the message isn't a trigger.
+	 */
+	String match(CharSequence message) {
+		Node node = root;
+		
+		for(int i = 0; i < message.length() && node != null; i++) {
+			node = node.getChild(Character.toLowerCase(message.charAt(i)));
+		}
+		
+		return node == null ? null : node.trigger;
+	}
+	
+	/**
+	 * Checks whether the matcher was compiled with the trigger
+	 * 
+	 * @param trigger The trigger, which is matched exactly
+	 * @return Whether the matcher has the trigger
+	 */
+	boolean contains(String trigger) {
+		Node node = root;
+		
+		for(int i = 0; i < trigger.length() && node != null; i++) {
+			node = node.getChild(trigger.charAt(i));
+		}
+		
+		return node != null && node.trigger != null;
+	}
+	
+	/**
+	 * Checks whether the empty string is a trigger, which means any message can trigger a MessageResponse
+	 * 
+	 * @return Whether the empty string is a trigger
+	 */
+	boolean hasWildcard() {
+		return root.trigger != null;
+	}
+	
+	/**
+	 * Compiles the node for a range of sorted triggers that all share the same first depth characters
+	 * 
+	 * @param triggers The sorted triggers
+	 * @param start The start of the range, inclusive
+	 * @param end The end of the range, exclusive
+	 * @param depth The amount of characters the triggers in the range share
+	 * @return The node
+	 */
+	private static Node compile(String[] triggers, int start, int end, int depth) {
+		String trigger = null;
+		
+		// The trigger that ends at this node sorts before the triggers that continue past it
+		if(start < end && triggers[start].length() == depth) {
+			trigger = triggers[start++];
+		}
+		
+		if(start == end) {
+			return new Node(trigger, NO_KEYS, NO_CHILDREN);
+		}
+		
+		int childCount = 1;
+		
+		for(int i = start + 1; i < end; i++) {
+			if(triggers[i].charAt(depth) != triggers[i - 1].charAt(depth)) {
+				childCount++;
+			}
+		}
+		
+		char[] keys = new char[childCount];
+		Node[] children = new Node[childCount];
+		int childStart = start;
+		
+		for(int child = 0; child < childCount; child++) {
+			char key = triggers[childStart].charAt(depth);
+			int childEnd = childStart + 1;
+			
+			while(childEnd < end && triggers[childEnd].charAt(depth) == key) {
+				childEnd++;
+			}
+			
+			keys[child] = key;
+			children[child] = compile(triggers, childStart, childEnd, depth + 1);
+			childStart = childEnd;
+		}
+		
+		return new Node(trigger, keys, children);
+	}
+	
+	private static final class Node {
+		private final String trigger;
+		private final char[] keys;
+		private final Node[] children;
+		
+		private Node(String trigger, char[] keys, Node[] children) {
+			this.trigger = trigger;
+			this.keys = keys;
+			this.children = children;
+		}
+		
+		private Node getChild(char key) {
+			int index = Arrays.binarySearch(keys, key);
+			
+			return index < 0 ? null : children[index];
+		}
+	}
+}
@@ -0,0 +1,275 @@
+package com.deliburd.util;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToIntFunction;
+
+/**
+ * A cache bounded by the total weight of its values rather than the amount of them. Entries are kept in LRU order,
+ * but a new entry can't push out entries whose keys have been asked for more often than its own, which is tracked
+ * with a small count-min sketch. That way, a burst of one-off lookups can't flush out the popular entries.
+ * Entries expire a fixed time after they're written and are removed when they're next looked at or evicted.
+ *
+ * @author MelonShooter
+ *
+ * @param <K> The type of the keys
+ * @param <V> The type of the values
+ */
+public class WeightedCache<K, V> {
+	private static final int SKETCH_DEPTH = 4;
+	private static final int SKETCH_WIDTH = 4096;
+	private static final int MAX_FREQUENCY = 15;
+
+	/**
+	 * The amount of lookups after which every frequency is halved so old popularity fades
+	 */
+	private static final int SKETCH_RESET_SIZE = SKETCH_WIDTH * 10;
+	private static final int[] SKETCH_SEEDS = { 0x97CB3127, 0xB4B82E39, 0x8F6C2F1B, 0xC2B2AE35 };
+
+	private final LinkedHashMap<K, CacheEntry<V>> entries;
+	private final ToIntFunction<V> weigher;
+	private final long maxWeight;
+	private final long expiryTime;
+	private final byte[][] frequencySketch;
+	private final LongAdder hitCount;
+	private final LongAdder missCount;
+	private final LongAdder evictionCount;
+	private long totalWeight;
+	private int sketchSize;
+
+	/**
+	 * Creates an empty cache
+	 *
+	 * @param maxWeight The most total weight the values can have
+	 * @param expiryTime How long an entry is kept after it's written
+	 * @param unit The unit of the expiry time
+	 * @param weigher Gets the weight of a value, such as its approximate size in bytes
+	 */
+	public WeightedCache(long maxWeight, long expiryTime, TimeUnit unit, ToIntFunction<V> weigher) {
+		if(maxWeight <= 0) {
+			throw new IllegalArgumentException("The max weight must be more than 0.");
+		}
+
+		entries = new LinkedHashMap<K, CacheEntry<V>>(16, .75f, true);
+		this.weigher = weigher;
+		this.maxWeight = maxWeight;
+		this.expiryTime = unit.toNanos(expiryTime);
+		frequencySketch = new byte[SKETCH_DEPTH][SKETCH_WIDTH];
+		hitCount = new LongAdder();
+		missCount = new LongAdder();
+		evictionCount = new LongAdder();
+	}
+
+	/**
+	 * Gets a value from the cache
+	 *
+	 * @param key The key
+	 * @return The value. Null if it isn't cached or has expired.
+	 */
+	public synchronized V get(K key) {
+		recordLookup(key);
+
+		var entry = entries.get(key);
+
+		if(entry != null && entry.isExpired(System.nanoTime())) {
+			removeEntry(key, entry);
+			entry = null;
+		}
+
+		if(entry == null) {
+			missCount.increment();
+			return null;
+		}
+
+		hitCount.increment();
+
+		return entry.value;
+	}
+
+	/**
+	 * Gets a value from the cache without counting it as a lookup
+	 *
+	 * @param key The key
+	 * @return The value. Null if it isn't cached or has expired.
+	 */
+	public synchronized V peek(K key) {
+		var entry = entries.get(key);
+
+		return entry == null || entry.isExpired(System.nanoTime()) ? null : entry.value;
+	}
+
+	/**
+	 * Puts a value in the cache if there isn't one for the key already. If the cache is full, the least recently used
+	 * entries that aren't more popular than the key are pushed out. If that wouldn't make enough room, the value isn't cached.
+	 *
+	 * @param key The key
+	 * @param value The value
+	 * @return The value already cached for the key. Null if there wasn't one.
+	 */
+	public synchronized V putIfAbsent(K key, V value) {
+		long currentTime = System.nanoTime();
+		var existingEntry = entries.get(key);
+
+		if(existingEntry != null) {
+			if(!existingEntry.isExpired(currentTime)) {
+				return existingEntry.value;
+			}
+
+			removeEntry(key, existingEntry);
+		}
+
+		int weight = weigher.applyAsInt(value);
+
+		if(weight > maxWeight) {
+			return null;
+		}
+
+		int frequency = getFrequency(key);
+		long freedWeight = 0;
+		var victims = new ArrayList<K>();
+
+		// Entries more popular than the new key are passed over, and the least recently used of the rest are pushed out
+		for(var entry : entries.entrySet()) {
+			if(totalWeight - freedWeight + weight <= maxWeight) {
+				break;
+			} else if(entry.getValue().isExpired(currentTime) || getFrequency(entry.getKey()) <= frequency) {
+				freedWeight += entry.getValue().weight;
+				victims.add(entry.getKey());
+			}
+		}
+
+		if(totalWeight - freedWeight + weight > maxWeight) {
+			return null;
+		}
+
+		for(var victim : victims) {
+			removeEntry(victim, entries.get(victim));
+			evictionCount.increment();
+		}
+
+		entries.put(key, new CacheEntry<V>(value, weight, currentTime + expiryTime));
+		totalWeight += weight;
+
+		return null;
+	}
+
+	/**
+	 * Gets the amount of entries in the cache, including expired ones that haven't been removed yet
+	 *
+	 * @return The amount of entries
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Gets the total weight of the entries in the cache
+	 *
+	 * @return The total weight
+	 */
+	public synchronized long getWeight() {
+		return totalWeight;
+	}
+
+	/**
+	 * Gets the amount of lookups that found a value
+	 *
+	 * @return The amount of hits
+	 */
+	public long getHitCount() {
+		return hitCount.sum();
+	}
+
+	/**
+	 * Gets the amount of lookups that didn't find a value
+	 *
+	 * @return The amount of misses
+	 */
+	public long getMissCount() {
+		return missCount.sum();
+	}
+
+	/**
+	 * Gets the amount of entries removed to make room for new ones
+	 *
+	 * @return The amount of evictions
+	 */
+	public long getEvictionCount() {
+		return evictionCount.sum();
+	}
+
+	private void removeEntry(K key, CacheEntry<V> entry) {
+		entries.remove(key);
+		totalWeight -= entry.weight;
+	}
+
+	/**
+	 * Counts a lookup of a key in the frequency sketch
+	 *
+	 * @param key The key
+	 */
+	private void recordLookup(K key) {
+		int hash = spread(key.hashCode());
+
+		for(int i = 0; i < SKETCH_DEPTH; i++) {
+			int index = getSketchIndex(hash, i);
+
+			if(frequencySketch[i][index] < MAX_FREQUENCY) {
+				frequencySketch[i][index]++;
+			}
+		}
+
+		if(++sketchSize == SKETCH_RESET_SIZE) {
+			for(var row : frequencySketch) {
+				for(int i = 0; i < row.length; i++) {
+					row[i] >>>= 1;
+				}
+			}
+
+			sketchSize /= 2;
+		}
+	}
+
+	/**
+	 * Estimates how often a key has been looked up recently
+	 *
+	 * @param key The key
+	 * @return The estimated frequency
+	 */
+	private int getFrequency(K key) {
+		int hash = spread(key.hashCode());
+		int frequency = MAX_FREQUENCY;
+
+		for(int i = 0; i < SKETCH_DEPTH; i++) {
+			frequency = Math.min(frequency, frequencySketch[i][getSketchIndex(hash, i)]);
+		}
+
+		return frequency;
+	}
+
+	private static int getSketchIndex(int hash, int row) {
+		return spread(hash * SKETCH_SEEDS[row]) & (SKETCH_WIDTH - 1);
+	}
+
+	private static int spread(int hash) {
+		return hash ^ (hash >>> 16);
+	}
+
+	private static class CacheEntry<V> {
+		private final V value;
+		private final int weight;
+		private final long expirationTime;
+
+		private CacheEntry(V value, int weight, long expirationTime) {
+			this.value = value;
+			this.weight = weight;
+			this.expirationTime = expirationTime;
+		}
+
+		private boolean isExpired(long currentTime) {
+			return currentTime - expirationTime >= 0;
+		}
+	}
+}
@@ -0,0 +1,253 @@
+package com.deliburd.util.ratelimit;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.deliburd.bot.burdbot.Constant;
+import com.deliburd.util.ErrorLogger;
+import com.deliburd.util.scheduling.TaskScheduler;
+
+/**
+ * Limits how often an expensive action can run. Every action takes a token from its own budget, a budget shared by
+ * every RateLimiter in the guild it came from and a budget shared by the whole bot. Actions that can't get a token
+ * are queued and run in order once the budgets refill. Once the queue is full, new actions are rejected instead.
+ *
+ * @author MelonShooter
+ *
+ */
+public class RateLimiter {
+	/**
+	 * The budget shared by every RateLimiter
+	 */
+	private static final TokenBucket globalBudget = new TokenBucket(Constant.GLOBAL_RATE_LIMIT, Constant.GLOBAL_RATE_LIMIT_REFILL);
+
+	/**
+	 * The budgets shared by every RateLimiter for each guild
+	 */
+	private static final ConcurrentHashMap<Long, TokenBucket> guildBudgets = new ConcurrentHashMap<>(8, .75f, 3);
+
+	static {
+		TaskScheduler.getScheduler().scheduleAtFixedRate(RateLimiter::pruneGuildBudgets, Constant.GUILD_RATE_LIMIT_PRUNE_PERIOD,
+				Constant.GUILD_RATE_LIMIT_PRUNE_PERIOD, TimeUnit.MILLISECONDS);
+	}
+
+	private final TokenBucket budget;
+	private final LinkedList<PendingAction> pendingActions;
+	private final int maxQueuedActions;
+	private final AtomicBoolean drainScheduled;
+
+	/**
+	 * Creates a RateLimiter with its own budget that queues up to Constant.RATE_LIMIT_QUEUE_CAPACITY actions
+	 *
+	 * @param capacity The most actions that can run in a burst
+	 * @param actionsPerSecond The amount of actions that can run per second after a burst
+	 */
+	public RateLimiter(int capacity, double actionsPerSecond) {
+		this(capacity, actionsPerSecond, Constant.RATE_LIMIT_QUEUE_CAPACITY);
+	}
+
+	/**
+	 * Creates a RateLimiter with its own budget
+	 *
+	 * @param capacity The most actions that can run in a burst
+	 * @param actionsPerSecond The amount of actions that can run per second after a burst
+	 * @param maxQueuedActions The most actions that can wait for budget at once
+	 */
+	public RateLimiter(int capacity, double actionsPerSecond, int maxQueuedActions) {
+		if(maxQueuedActions < 1) {
+			throw new IllegalArgumentException("The max amount of queued actions must be at least 1.");
+		}
+
+		budget = new TokenBucket(capacity, actionsPerSecond);
+		pendingActions = new LinkedList<PendingAction>();
+		this.maxQueuedActions = maxQueuedActions;
+		drainScheduled = new AtomicBoolean();
+	}
+
+	/**
+	 * Runs an action on the current thread if there's enough budget for it. Otherwise, queues it to run on the
+	 * TaskScheduler once there is, unless the queue is full.
+	 *
+	 * @param guildID The ID of the guild the action is for
+	 * @param action The action
+	 * @return Whether the action ran, was queued or was rejected
+	 */
+	public SubmissionResult submit(long guildID, Runnable action) {
+		var pendingAction = new PendingAction(guildID, action);
+		List<PendingAction> readyActions;
+		boolean isAdded = false;
+
+		synchronized(pendingActions) {
+			// Anything still queued at this point is waiting for budget, so the action would have to wait too
+			if(pendingActions.size() < maxQueuedActions) {
+				pendingActions.add(pendingAction);
+				isAdded = true;
+			}
+
+			readyActions = takeReadyActions();
+		}
+
+		runActions(readyActions);
+
+		if(!isAdded) {
+			return SubmissionResult.REJECTED;
+		}
+
+		return readyActions.contains(pendingAction) ? SubmissionResult.RAN : SubmissionResult.QUEUED;
+	}
+
+	/**
+	 * Gets the amount of actions waiting for budget
+	 *
+	 * @return The amount of actions queued
+	 */
+	public int getQueuedActionCount() {
+		synchronized(pendingActions) {
+			return pendingActions.size();
+		}
+	}
+
+	/**
+	 * Gets this RateLimiter's own budget
+	 *
+	 * @return The budget
+	 */
+	public TokenBucket getBudget() {
+		return budget;
+	}
+
+	/**
+	 * Gets the budget shared by every RateLimiter
+	 *
+	 * @return The global budget
+	 */
+	public static TokenBucket getGlobalBudget() {
+		return globalBudget;
+	}
+
+	/**
+	 * Gets the budget shared by every RateLimiter for a guild
+	 *
+	 * @param guildID The guild's ID
+	 * @return The guild's budget
+	 */
+	public static TokenBucket getGuildBudget(long guildID) {
+		return guildBudgets.computeIfAbsent(guildID,
+				key -> new TokenBucket(Constant.GUILD_RATE_LIMIT, Constant.GUILD_RATE_LIMIT_REFILL));
+	}
+
+	/**
+	 * Removes the guild budgets that are full. A full budget is the same as a new one, so guilds that haven't
+	 * used their budget in a while don't keep an entry. An action taking a token from a budget as it's removed
+	 * can at most let the guild run one extra action.
+	 */
+	private static void pruneGuildBudgets() {
+		guildBudgets.values().removeIf(guildBudget -> guildBudget.getAvailableTokens() >= guildBudget.getCapacity());
+	}
+
+	/**
+	 * Takes the queued actions that there's enough budget for out of the queue. Actions from the same guild stay in order.
+	 * If any actions are left, a drain is scheduled for when the next one might be able to run.
+	 * Must be called while synchronized on pendingActions.
+	 *
+	 * @return The actions to run
+	 */
+	private List<PendingAction> takeReadyActions() {
+		var readyActions = new ArrayList<PendingAction>();
+		var blockedGuilds = new HashSet<Long>();
+		long currentTime = System.nanoTime();
+		long nextDrainDelay = Long.MAX_VALUE;
+		var pendingActionIterator = pendingActions.iterator();
+
+		while(pendingActionIterator.hasNext()) {
+			var pendingAction = pendingActionIterator.next();
+
+			if(blockedGuilds.contains(pendingAction.guildID)) {
+				continue;
+			}
+
+			var guildBudget = getGuildBudget(pendingAction.guildID);
+			long waitTime = guildBudget.tryConsume(currentTime);
+
+			if(waitTime != 0) {
+				// Only this guild is out of budget, so other guilds can still go
+				blockedGuilds.add(pendingAction.guildID);
+				nextDrainDelay = Math.min(nextDrainDelay, waitTime);
+				continue;
+			}
+
+			waitTime = budget.tryConsume(currentTime);
+
+			if(waitTime == 0) {
+				waitTime = globalBudget.tryConsume(currentTime);
+
+				if(waitTime != 0) {
+					budget.refund();
+				}
+			}
+
+			if(waitTime != 0) {
+				// Nothing else can run until the shared budgets refill
+				guildBudget.refund();
+				nextDrainDelay = Math.min(nextDrainDelay, waitTime);
+				break;
+			}
+
+			pendingActionIterator.remove();
+			readyActions.add(pendingAction);
+		}
+
+		if(!pendingActions.isEmpty() && drainScheduled.compareAndSet(false, true)) {
+			TaskScheduler.getScheduler().schedule(this::drain, nextDrainDelay, TimeUnit.NANOSECONDS);
+		}
+
+		return readyActions;
+	}
+
+	/**
+	 * Runs the queued actions that there's now enough budget for
+	 */
+	private void drain() {
+		List<PendingAction> readyActions;
+		drainScheduled.set(false);
+
+		synchronized(pendingActions) {
+			readyActions = takeReadyActions();
+		}
+
+		runActions(readyActions);
+	}
+
+	/**
+	 * Runs actions, logging any that fail so the rest still run
+	 *
+	 * @param actions The actions
+	 */
+	private static void runActions(List<PendingAction> actions) {
+		for(var pendingAction : actions) {
+			try {
+				pendingAction.action.run();
+			} catch (RuntimeException e) {
+				ErrorLogger.LogException(e);
+			}
+		}
+	}
+
+	/**
+	 * An action waiting for budget
+	 */
+	private static class PendingAction {
+		private final long guildID;
+		private final Runnable action;
+
+		private PendingAction(long guildID, Runnable action) {
+			this.guildID = guildID;
+			this.action = action;
+		}
+	}
+}
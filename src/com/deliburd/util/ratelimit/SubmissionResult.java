@@ -0,0 +1,24 @@
+package com.deliburd.util.ratelimit;
+
+/**
+ * What happened to an action given to a RateLimiter
+ *
+ * @author MelonShooter
+ *
+ */
+public enum SubmissionResult {
+	/**
+	 * There was enough budget, so the action ran right away
+	 */
+	RAN,
+
+	/**
+	 * The action was queued to run once there's enough budget
+	 */
+	QUEUED,
+
+	/**
+	 * The queue was full, so the action was dropped
+	 */
+	REJECTED
+}
@@ -0,0 +1,94 @@
+package com.deliburd.util.ratelimit;
+
+/**
+ * A token bucket that refills continuously. Each action takes one token, and the bucket can hold enough tokens
+ * for a burst of actions up to its capacity.
+ *
+ * @author MelonShooter
+ *
+ */
+public class TokenBucket {
+	private final int capacity;
+
+	/**
+	 * The amount of tokens added per nanosecond
+	 */
+	private final double refillRate;
+	private double tokens;
+	private long lastRefillTime;
+
+	/**
+	 * Creates a full token bucket
+	 *
+	 * @param capacity The most tokens the bucket can hold
+	 * @param tokensPerSecond The amount of tokens added back per second
+	 */
+	public TokenBucket(int capacity, double tokensPerSecond) {
+		if(capacity < 1) {
+			throw new IllegalArgumentException("The capacity must be at least 1.");
+		} else if(tokensPerSecond <= 0) {
+			throw new IllegalArgumentException("The refill rate must be positive.");
+		}
+
+		this.capacity = capacity;
+		refillRate = tokensPerSecond / 1_000_000_000;
+		tokens = capacity;
+		lastRefillTime = System.nanoTime();
+	}
+
+	/**
+	 * Takes a token from the bucket if there is one
+	 *
+	 * @param currentTime The current time from System.nanoTime()
+	 * @return 0 if a token was taken. Otherwise, the time in nanoseconds until there will be a token.
+	 */
+	synchronized long tryConsume(long currentTime) {
+		refill(currentTime);
+
+		if(tokens >= 1) {
+			tokens--;
+			return 0;
+		}
+
+		return Math.max(1, (long) Math.ceil((1 - tokens) / refillRate));
+	}
+
+	/**
+	 * Gives back a token that was taken but not used
+	 */
+	synchronized void refund() {
+		tokens = Math.min(capacity, tokens + 1);
+	}
+
+	/**
+	 * Gets the amount of tokens in the bucket
+	 *
+	 * @return The amount of tokens, which can be fractional
+	 */
+	public synchronized double getAvailableTokens() {
+		refill(System.nanoTime());
+
+		return tokens;
+	}
+
+	/**
+	 * Gets the most tokens the bucket can hold
+	 *
+	 * @return The capacity
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Adds the tokens that have accumulated since the last refill
+	 *
+	 * @param currentTime The current time from System.nanoTime()
+	 */
+	private void refill(long currentTime) {
+		if(currentTime > lastRefillTime) {
+			tokens = Math.min(capacity, tokens + (currentTime - lastRefillTime) * refillRate);
+			lastRefillTime = currentTime;
+		}
+	}
+}
@@ -0,0 +1,128 @@
+package com.deliburd.util.scheduling;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.deliburd.util.ErrorLogger;
+
+/**
+ * A task scheduled on the TaskScheduler, which can be used to cancel it.
+ * 
+ * @author MelonShooter
+ *
+ */
+public class ScheduledTask {
+	static final int WAITING = 0;
+	static final int EXPIRED = 1;
+	static final int CANCELLED = 2;
+	
+	private final TaskScheduler scheduler;
+	private final Runnable task;
+	private final long period;
+	private final AtomicInteger state;
+	
+	/**
+	 * The time in nanoseconds relative to the scheduler's start time that the task should run at
+	 */
+	long deadline;
+	
+	/**
+	 * The amount of times the wheel has to go around before the task expires. Only used by the ticker thread.
+	 */
+	long remainingRounds;
+	
+	/**
+	 * The bucket the task is in and its neighbors in that bucket. Only used by the ticker thread.
+	 */
+	TaskScheduler.Bucket bucket;
+	ScheduledTask next;
+	ScheduledTask previous;
+	
+	ScheduledTask(TaskScheduler scheduler, Runnable task, long deadline, long period) {
+		this.scheduler = scheduler;
+		this.task = task;
+		this.deadline = deadline;
+		this.period = period;
+		state = new AtomicInteger(WAITING);
+	}
+	
+	/**
+	 * Cancels the task. If the task repeats, it won't run again.
+	 * 
+	 * @return Whether the task was cancelled. This is false if the task was already cancelled or the task doesn't repeat
+	 * and has already started running.
+	 */
+	public boolean cancel() {
+		while(true) {
+			int currentState = state.get();
+			
+			if(currentState == CANCELLED || currentState == EXPIRED && !isPeriodic()) {
+				return false;
+			} else if(state.compareAndSet(currentState, CANCELLED)) {
+				if(currentState == WAITING) {
+					scheduler.removeCancelledTask(this);
+				}
+				
+				return true;
+			}
+		}
+	}
+	
+	/**
+	 * Gets whether the task was cancelled
+	 * 
+	 * @return Whether the task was cancelled
+	 */
+	public boolean isCancelled() {
+		return state.get() == CANCELLED;
+	}
+	
+	/**
+	 * Gets the time left until the task runs next
+	 * 
+	 * @param unit The unit to return the delay in
+	 * @return The delay. Negative if the task is late.
+	 */
+	public long getDelay(TimeUnit unit) {
+		return unit.convert(deadline - scheduler.getCurrentTime(), TimeUnit.NANOSECONDS);
+	}
+	
+	/**
+	 * Gets whether the task runs repeatedly
+	 * 
+	 * @return Whether the task runs repeatedly
+	 */
+	public boolean isPeriodic() {
+		return period > 0;
+	}
+	
+	/**
+	 * Marks the task as handed off to a worker
+	 * 
+	 * @return Whether the task was still waiting and wasn't cancelled
+	 */
+	boolean expire() {
+		return state.compareAndSet(WAITING, EXPIRED);
+	}
+	
+	/**
+	 * Runs the task on a worker thread and schedules its next run if it repeats
+	 */
+	void run() {
+		scheduler.recordLag(scheduler.getCurrentTime() - deadline);
+		
+		try {
+			task.run();
+		} catch(Exception e) {
+			ErrorLogger.LogException(e);
+		}
+		
+		if(isPeriodic()) {
+			deadline += period;
+			
+			if(state.compareAndSet(EXPIRED, WAITING)) {
+				scheduler.addTask(this);
+			}
+		}
+	}
+}
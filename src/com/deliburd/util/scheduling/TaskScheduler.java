@@ -0,0 +1,346 @@
+package com.deliburd.util.scheduling;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.deliburd.util.ErrorLogger;
+
+/**
+ * Schedules tasks for the whole bot on a hashed timing wheel. Scheduling and cancelling a task doesn't depend on the
+ * amount of tasks pending. A single ticker thread moves the wheel forward and hands tasks that are due to a pool of 
+ * worker threads, so a slow task doesn't delay any of the others. Tasks run up to 1 tick late.
+ * 
+ * @author MelonShooter
+ *
+ */
+public class TaskScheduler {
+	/**
+	 * The singleton instance of this class
+	 */
+	private static final TaskScheduler scheduler = new TaskScheduler(TimeUnit.MILLISECONDS.toNanos(50), 512, 
+			Math.max(2, Runtime.getRuntime().availableProcessors()));
+	
+	/**
+	 * The maximum amount of new tasks moved into the wheel per tick so a burst of tasks can't stall the wheel
+	 */
+	private static final int MAX_TASKS_ADDED_PER_TICK = 100000;
+	
+	private final long tickDuration;
+	private final Bucket[] wheel;
+	private final int wheelMask;
+	private final Queue<ScheduledTask> newTasks;
+	private final Queue<ScheduledTask> cancelledTasks;
+	private final ExecutorService workerPool;
+	private final long startTime;
+	private final AtomicInteger pendingTaskCount;
+	private final LongAdder executedTaskCount;
+	private final LongAdder totalLag;
+	private final AtomicLong maxLag;
+	
+	/**
+	 * The amount of ticks that have passed. Only used by the ticker thread.
+	 */
+	private long tick;
+	
+	/**
+	 * Creates a task scheduler
+	 * 
+	 * @param tickDuration The length of a tick in nanoseconds
+	 * @param bucketCount The amount of buckets in the wheel. Rounded up to a power of 2.
+	 * @param workerCount The amount of threads to run tasks on
+	 */
+	private TaskScheduler(long tickDuration, int bucketCount, int workerCount) {
+		int wheelSize = Integer.highestOneBit(bucketCount - 1) << 1;
+		
+		this.tickDuration = tickDuration;
+		wheel = new Bucket[wheelSize];
+		wheelMask = wheelSize - 1;
+		newTasks = new ConcurrentLinkedQueue<ScheduledTask>();
+		cancelledTasks = new ConcurrentLinkedQueue<ScheduledTask>();
+		pendingTaskCount = new AtomicInteger();
+		executedTaskCount = new LongAdder();
+		totalLag = new LongAdder();
+		maxLag = new AtomicLong();
+		
+		for(int i = 0; i < wheelSize; i++) {
+			wheel[i] = new Bucket();
+		}
+		
+		AtomicInteger workerNumber = new AtomicInteger();
+		
+		workerPool = new ThreadPoolExecutor(workerCount, workerCount, 0, TimeUnit.MILLISECONDS, 
+				new LinkedBlockingQueue<Runnable>(), runnable -> {
+			var thread = new Thread(runnable, "Scheduled task worker " + workerNumber.getAndIncrement());
+			thread.setDaemon(true);
+			return thread;
+		});
+		
+		startTime = System.nanoTime();
+		
+		var tickerThread = new Thread(this::runTicker, "Task scheduler ticker");
+		tickerThread.setDaemon(true);
+		tickerThread.start();
+	}
+	
+	/**
+	 * Returns the singleton instance of this class
+	 * 
+	 * @return The singleton instance of this class
+	 */
+	public static TaskScheduler getScheduler() {
+		return scheduler;
+	}
+	
+	/**
+	 * Schedules a task to run once after a delay
+	 * 
+	 * @param task The task to run
+	 * @param delay The delay before the task runs
+	 * @param unit The unit of the delay
+	 * @return The ScheduledTask, which can be used to cancel the task
+	 */
+	public ScheduledTask schedule(Runnable task, long delay, TimeUnit unit) {
+		return schedule(task, delay, 0, unit);
+	}
+	
+	/**
+	 * Schedules a task to run repeatedly at a fixed rate. If a run is late, the next run isn't delayed because of it.
+	 * 
+	 * @param task The task to run
+	 * @param initialDelay The delay before the task runs for the first time
+	 * @param period The time between each run of the task
+	 * @param unit The unit of the delay and period
+	 * @return The ScheduledTask, which can be used to cancel the task
+	 * @throws IllegalArgumentException If the period isn't more than 0
+	 */
+	public ScheduledTask scheduleAtFixedRate(Runnable task, long initialDelay, long period, TimeUnit unit) {
+		if(period <= 0) {
+			throw new IllegalArgumentException("The period must be more than 0.");
+		}
+		
+		return schedule(task, initialDelay, period, unit);
+	}
+	
+	/**
+	 * Gets the amount of tasks waiting to run
+	 * 
+	 * @return The amount of tasks
+	 */
+	public int getPendingTaskCount() {
+		return pendingTaskCount.get();
+	}
+	
+	/**
+	 * Gets the amount of times tasks have been run
+	 * 
+	 * @return The amount of runs
+	 */
+	public long getExecutedTaskCount() {
+		return executedTaskCount.sum();
+	}
+	
+	/**
+	 * Gets the average time tasks started running after they were scheduled to
+	 * 
+	 * @param unit The unit to return the lag in
+	 * @return The average lag
+	 */
+	public long getAverageLag(TimeUnit unit) {
+		long executedTasks = executedTaskCount.sum();
+		
+		return executedTasks == 0 ? 0 : unit.convert(totalLag.sum() / executedTasks, TimeUnit.NANOSECONDS);
+	}
+	
+	/**
+	 * Gets the longest time a task started running after it was scheduled to
+	 * 
+	 * @param unit The unit to return the lag in
+	 * @return The maximum lag
+	 */
+	public long getMaxLag(TimeUnit unit) {
+		return unit.convert(maxLag.get(), TimeUnit.NANOSECONDS);
+	}
+	
+	/**
+	 * Gets the current time relative to the start of the scheduler
+	 * 
+	 * @return The time in nanoseconds
+	 */
+	long getCurrentTime() {
+		return System.nanoTime() - startTime;
+	}
+	
+	/**
+	 * Queues a task to be put into the wheel by the ticker thread
+	 * 
+	 * @param task The task
+	 */
+	void addTask(ScheduledTask task) {
+		pendingTaskCount.incrementAndGet();
+		newTasks.add(task);
+	}
+	
+	/**
+	 * Queues a cancelled task to be taken out of the wheel by the ticker thread
+	 * 
+	 * @param task The task
+	 */
+	void removeCancelledTask(ScheduledTask task) {
+		cancelledTasks.add(task);
+	}
+	
+	/**
+	 * Records how late a task started running
+	 * 
+	 * @param lag The lag in nanoseconds
+	 */
+	void recordLag(long lag) {
+		lag = Math.max(lag, 0);
+		executedTaskCount.increment();
+		totalLag.add(lag);
+		maxLag.accumulateAndGet(lag, Math::max);
+	}
+	
+	private ScheduledTask schedule(Runnable task, long delay, long period, TimeUnit unit) {
+		long deadline = getCurrentTime() + unit.toNanos(Math.max(delay, 0));
+		var scheduledTask = new ScheduledTask(this, task, deadline, unit.toNanos(period));
+		
+		addTask(scheduledTask);
+		
+		return scheduledTask;
+	}
+	
+	/**
+	 * Moves the wheel forward every tick and hands the tasks that are due to the worker pool
+	 */
+	private void runTicker() {
+		while(true) {
+			long tickDeadline = (tick + 1) * tickDuration;
+			long sleepTime = tickDeadline - getCurrentTime();
+			
+			if(sleepTime > 0) {
+				try {
+					TimeUnit.NANOSECONDS.sleep(sleepTime);
+				} catch (InterruptedException e) {
+					continue;
+				}
+			}
+			
+			try {
+				removeCancelledTasks();
+				addNewTasks();
+				wheel[(int) (tick & wheelMask)].expireTasks(tickDeadline);
+			} catch(Exception e) {
+				ErrorLogger.LogException(e);
+			}
+			
+			tick++;
+		}
+	}
+	
+	private void removeCancelledTasks() {
+		ScheduledTask task;
+		
+		while((task = cancelledTasks.poll()) != null) {
+			if(task.bucket != null) {
+				task.bucket.remove(task);
+				pendingTaskCount.decrementAndGet();
+			}
+		}
+	}
+	
+	private void addNewTasks() {
+		for(int i = 0; i < MAX_TASKS_ADDED_PER_TICK; i++) {
+			ScheduledTask task = newTasks.poll();
+			
+			if(task == null) {
+				return;
+			} else if(task.isCancelled()) {
+				pendingTaskCount.decrementAndGet();
+				continue;
+			}
+			
+			long taskTick = Math.max(task.deadline / tickDuration, tick); // Tasks that are already due go in this tick
+			task.remainingRounds = (taskTick - tick) / wheel.length;
+			wheel[(int) (taskTick & wheelMask)].add(task);
+			
+			// The task might have been cancelled before it was in a bucket, so the ticker wouldn't have removed it
+			if(task.isCancelled()) {
+				task.bucket.remove(task);
+				pendingTaskCount.decrementAndGet();
+			}
+		}
+	}
+	
+	/**
+	 * A doubly linked list of tasks in a slot of the wheel. Only used by the ticker thread.
+	 */
+	class Bucket {
+		private ScheduledTask head;
+		private ScheduledTask tail;
+		
+		private void add(ScheduledTask task) {
+			task.bucket = this;
+			
+			if(head == null) {
+				head = task;
+				tail = task;
+			} else {
+				tail.next = task;
+				task.previous = tail;
+				tail = task;
+			}
+		}
+		
+		private void remove(ScheduledTask task) {
+			if(task.previous != null) {
+				task.previous.next = task.next;
+			} else {
+				head = task.next;
+			}
+			
+			if(task.next != null) {
+				task.next.previous = task.previous;
+			} else {
+				tail = task.previous;
+			}
+			
+			task.next = null;
+			task.previous = null;
+			task.bucket = null;
+		}
+		
+		/**
+		 * Hands the tasks that are due by the end of this tick to the worker pool
+		 * 
+		 * @param tickDeadline The end of the tick in nanoseconds relative to the start of the scheduler
+		 */
+		private void expireTasks(long tickDeadline) {
+			ScheduledTask task = head;
+			
+			while(task != null) {
+				ScheduledTask nextTask = task.next;
+				
+				if(task.remainingRounds <= 0 && task.deadline <= tickDeadline) {
+					remove(task);
+					pendingTaskCount.decrementAndGet();
+					
+					if(task.expire()) {
+						workerPool.execute(task::run);
+					}
+				} else {
+					task.remainingRounds--;
+				}
+				
+				task = nextTask;
+			}
+		}
+	}
+}